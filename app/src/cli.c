@@ -3,6 +3,7 @@
 #include <assert.h>
 #include <getopt.h>
 #include <stdint.h>
+#include <string.h>
 #include <unistd.h>
 
 #include "config.h"
@@ -30,6 +31,12 @@ scrcpy_print_usage(const char *arg0) {
         "        Unit suffixes are supported: 'K' (x1000) and 'M' (x1000000).\n"
         "        Default is %d.\n"
         "\n"
+        "    --bit-rate-step value\n"
+        "        Set the increment used to raise the bit-rate back when the\n"
+        "        connection recovers (only with --min-bit-rate).\n"
+        "        Unit suffixes are supported: 'K' (x1000) and 'M' (x1000000).\n"
+        "        Default is %d.\n"
+        "\n"
         "    --codec-options key[:type]=value[,...]\n"
         "        Set a list of comma-separated key:type=value options for the\n"
         "        device encoder.\n"
@@ -45,6 +52,12 @@ scrcpy_print_usage(const char *arg0) {
         "        (typically, portrait for a phone, landscape for a tablet).\n"
         "        Any --max-size value is computed on the cropped size.\n"
         "\n"
+        "    --device-record file\n"
+        "        Record the video stream on the device, along with mirroring,\n"
+        "        into a raw H.264/H.265 file (at the given path on the\n"
+        "        device), with an index of the key frames in \"file.idx\".\n"
+        "        The path must not contain spaces.\n"
+        "\n"
         "    --display id\n"
         "        Specify the display id to mirror.\n"
         "\n"
@@ -54,6 +67,13 @@ scrcpy_print_usage(const char *arg0) {
         "\n"
         "        Default is 0.\n"
         "\n"
+        "    --encoder name\n"
+        "        Use a specific MediaCodec encoder (depending on the codec\n"
+        "        provided by --video-codec).\n"
+        "        By default, the encoder is selected according to its\n"
+        "        capabilities. The available encoders are listed in the\n"
+        "        server logs if an invalid name is given.\n"
+        "\n"
         "    --force-adb-forward\n"
         "        Do not attempt to use \"adb reverse\" to connect to the\n"
         "        the device.\n"
@@ -64,6 +84,21 @@ scrcpy_print_usage(const char *arg0) {
         "    -h, --help\n"
         "        Print this help.\n"
         "\n"
+        "    --idle-timeout ms\n"
+        "        Stop sending video packets when the device screen has not\n"
+        "        changed for the given delay (in milliseconds). The stream is\n"
+        "        resumed with a key frame as soon as the content changes or\n"
+        "        an input event is injected.\n"
+        "        Default is 0 (disabled).\n"
+        "\n"
+        "    --late-join-cache-size value\n"
+        "        Keep the video packets since the last key frame on the\n"
+        "        device (up to value bytes), so that a video subscriber (see\n"
+        "        --max-subscribers) may start immediately instead of waiting\n"
+        "        for the next key frame. 0 disables the cache.\n"
+        "        Unit suffixes are supported: 'K' (x1000) and 'M' (x1000000).\n"
+        "        Default is %d.\n"
+        "\n"
         "    --lock-video-orientation value\n"
         "        Lock video orientation to value.\n"
         "        Possible values are -1 (unlocked), 0, 1, 2 and 3.\n"
@@ -71,6 +106,13 @@ scrcpy_print_usage(const char *arg0) {
         "        90 degrees rotation counterclockwise.\n"
         "        Default is %d%s.\n"
         "\n"
+        "    --low-latency\n"
+        "        Configure the device encoder for low latency (realtime\n"
+        "        priority, gradual intra refresh instead of periodic key\n"
+        "        frames), for the knobs supported by the device.\n"
+        "        The H.264 stream is also tagged so that the decoder does\n"
+        "        not buffer any frame.\n"
+        "\n"
         "    --max-fps value\n"
         "        Limit the frame rate of screen capture (officially supported\n"
         "        since Android 10, but may work on earlier versions).\n"
@@ -81,6 +123,20 @@ scrcpy_print_usage(const char *arg0) {
         "        is preserved.\n"
         "        Default is %d%s.\n"
         "\n"
+        "    --max-subscribers value\n"
+        "        Accept up to value additional video-only clients on the\n"
+        "        device socket \"scrcpy_video\" (to be forwarded with\n"
+        "        \"adb forward\"). They receive the same stream as the main\n"
+        "        client, without encoding it again.\n"
+        "        Default is 0 (disabled).\n"
+        "\n"
+        "    --min-bit-rate value\n"
+        "        Enable the adaptive bit-rate: the bit-rate is lowered (down\n"
+        "        to value) when the connection is congested, and raised back\n"
+        "        (up to --bit-rate) when it recovers.\n"
+        "        Unit suffixes are supported: 'K' (x1000) and 'M' (x1000000).\n"
+        "        Default is 0 (disabled).\n"
+        "\n"
         "    -n, --no-control\n"
         "        Disable device control (mirror the device in read-only).\n"
         "\n"
@@ -117,6 +173,11 @@ scrcpy_print_usage(const char *arg0) {
         "    --record-format format\n"
         "        Force recording format (either mp4 or mkv).\n"
         "\n"
+        "    --refine\n"
+        "        Once the device screen content stops moving (typically after\n"
+        "        scrolling), briefly boost the bit-rate and request a key frame,\n"
+        "        so that the last frame is sharp.\n"
+        "\n"
         "    --render-driver name\n"
         "        Request SDL to use the given render driver (this is just a\n"
         "        hint).\n"
@@ -130,6 +191,13 @@ scrcpy_print_usage(const char *arg0) {
         "        This flag forces to render all frames, at a cost of a\n"
         "        possible increased latency.\n"
         "\n"
+        "    --replay-buffer-size value\n"
+        "        Keep the most recent video packets on the device (up to value\n"
+        "        bytes), so that the last seconds may be saved into an MP4\n"
+        "        file on the device on request. 0 disables the replay buffer.\n"
+        "        Unit suffixes are supported: 'K' (x1000) and 'M' (x1000000).\n"
+        "        Default is 0 (disabled).\n"
+        "\n"
         "    --rotation value\n"
         "        Set the initial display rotation.\n"
         "        Possibles values are 0, 1, 2 and 3. Each increment adds a 90\n"
@@ -147,6 +215,11 @@ scrcpy_print_usage(const char *arg0) {
         "        on exit.\n"
         "        It only shows physical touches (not clicks from scrcpy).\n"
         "\n"
+        "    --timing-sei\n"
+        "        Insert a SEI before each frame, carrying the capture, encoding\n"
+        "        and sending timestamps on the device clock, to measure the\n"
+        "        latency of each stage.\n"
+        "\n"
         "    -v, --version\n"
         "        Print the version of scrcpy.\n"
         "\n"
@@ -157,6 +230,23 @@ scrcpy_print_usage(const char *arg0) {
 #else
         "        Default is info.\n"
 #endif
+        "\n"
+        "    --video-codec name\n"
+        "        Select a video codec (h264 or h265).\n"
+        "        Default is h264.\n"
+        "\n"
+        "    --video-queue-policy value\n"
+        "        Select what the device does with new encoded packets when\n"
+        "        its video queue is full (typically on a slow connection).\n"
+        "        Possible values are \"block\" (wait, the encoder is\n"
+        "        stalled), \"drop-until-key-frame\" and\n"
+        "        \"drop-oldest-non-reference\".\n"
+        "        Default is block.\n"
+        "\n"
+        "    --video-queue-size value\n"
+        "        Set the maximum number of encoded packets buffered on the\n"
+        "        device before being sent.\n"
+        "        Default is %d.\n"
         "\n"
         "    -w, --stay-awake\n"
         "        Keep the device on while scrcpy is running, when the device\n"
@@ -238,6 +328,10 @@ scrcpy_print_usage(const char *arg0) {
         "    " CTRL_OR_CMD "+r\n"
         "        Rotate device screen\n"
         "\n"
+        "    " CTRL_OR_CMD "+Shift+r\n"
+        "        Save the last 30 seconds on the device (instant replay, see\n"
+        "        --replay-buffer-size)\n"
+        "\n"
         "    " CTRL_OR_CMD "+n\n"
         "        Expand notification panel\n"
         "\n"
@@ -262,9 +356,12 @@ scrcpy_print_usage(const char *arg0) {
         "\n",
         arg0,
         DEFAULT_BIT_RATE,
+        DEFAULT_BIT_RATE_STEP,
+        DEFAULT_LATE_JOIN_CACHE_SIZE,
         DEFAULT_LOCK_VIDEO_ORIENTATION, DEFAULT_LOCK_VIDEO_ORIENTATION >= 0 ? "" : " (unlocked)",
         DEFAULT_MAX_SIZE, DEFAULT_MAX_SIZE ? "" : " (unlimited)",
-        DEFAULT_LOCAL_PORT_RANGE_FIRST, DEFAULT_LOCAL_PORT_RANGE_LAST);
+        DEFAULT_LOCAL_PORT_RANGE_FIRST, DEFAULT_LOCAL_PORT_RANGE_LAST,
+        DEFAULT_VIDEO_QUEUE_SIZE);
 }
 
 static bool
@@ -327,6 +424,82 @@ parse_bit_rate(const char *s, uint32_t *bit_rate) {
     return true;
 }
 
+static bool
+parse_min_bit_rate(const char *s, uint32_t *min_bit_rate) {
+    long value;
+    bool ok = parse_integer_arg(s, &value, true, 0, 0x7FFFFFFF, "min bit-rate");
+    if (!ok) {
+        return false;
+    }
+
+    *min_bit_rate = (uint32_t) value;
+    return true;
+}
+
+static bool
+parse_bit_rate_step(const char *s, uint32_t *bit_rate_step) {
+    long value;
+    bool ok = parse_integer_arg(s, &value, true, 1, 0x7FFFFFFF,
+                                "bit-rate step");
+    if (!ok) {
+        return false;
+    }
+
+    *bit_rate_step = (uint32_t) value;
+    return true;
+}
+
+static bool
+parse_idle_timeout(const char *s, uint32_t *idle_timeout) {
+    long value;
+    bool ok = parse_integer_arg(s, &value, false, 0, 0x7FFFFFFF,
+                                "idle timeout");
+    if (!ok) {
+        return false;
+    }
+
+    *idle_timeout = (uint32_t) value;
+    return true;
+}
+
+static bool
+parse_max_subscribers(const char *s, uint8_t *max_subscribers) {
+    long value;
+    bool ok = parse_integer_arg(s, &value, false, 0, 16, "max subscribers");
+    if (!ok) {
+        return false;
+    }
+
+    *max_subscribers = (uint8_t) value;
+    return true;
+}
+
+static bool
+parse_late_join_cache_size(const char *s, uint32_t *late_join_cache_size) {
+    long value;
+    bool ok = parse_integer_arg(s, &value, true, 0, 0x7FFFFFFF,
+                                "late join cache size");
+    if (!ok) {
+        return false;
+    }
+
+    *late_join_cache_size = (uint32_t) value;
+    return true;
+}
+
+static bool
+parse_replay_buffer_size(const char *s, uint32_t *replay_buffer_size) {
+    long value;
+    bool ok = parse_integer_arg(s, &value, true, 0, 0x7FFFFFFF,
+                                "replay buffer size");
+    if (!ok) {
+        return false;
+    }
+
+    *replay_buffer_size = (uint32_t) value;
+    return true;
+}
+
 static bool
 parse_max_size(const char *s, uint16_t *max_size) {
     long value;
@@ -476,6 +649,55 @@ parse_log_level(const char *s, enum sc_log_level *log_level) {
     return false;
 }
 
+static bool
+parse_video_queue_size(const char *s, uint16_t *video_queue_size) {
+    long value;
+    bool ok = parse_integer_arg(s, &value, false, 1, 1000, "video queue size");
+    if (!ok) {
+        return false;
+    }
+
+    *video_queue_size = (uint16_t) value;
+    return true;
+}
+
+static bool
+parse_video_codec(const char *s, enum video_codec *codec) {
+    if (!strcmp(s, "h264")) {
+        *codec = VIDEO_CODEC_H264;
+        return true;
+    }
+
+    if (!strcmp(s, "h265")) {
+        *codec = VIDEO_CODEC_H265;
+        return true;
+    }
+
+    LOGE("Unsupported video codec: %s (expected h264 or h265)", s);
+    return false;
+}
+
+static bool
+parse_video_queue_policy(const char *s, enum video_queue_policy *policy) {
+    if (!strcmp(s, "block")) {
+        *policy = VIDEO_QUEUE_POLICY_BLOCK;
+        return true;
+    }
+
+    if (!strcmp(s, "drop-until-key-frame")) {
+        *policy = VIDEO_QUEUE_POLICY_DROP_UNTIL_KEY_FRAME;
+        return true;
+    }
+
+    if (!strcmp(s, "drop-oldest-non-reference")) {
+        *policy = VIDEO_QUEUE_POLICY_DROP_OLDEST_NON_REFERENCE;
+        return true;
+    }
+
+    LOGE("Could not parse video queue policy: %s", s);
+    return false;
+}
+
 static bool
 parse_record_format(const char *optarg, enum recorder_format *format) {
     if (!strcmp(optarg, "mp4")) {
@@ -526,23 +748,47 @@ guess_record_format(const char *filename) {
 #define OPT_NO_MIPMAPS             1017
 #define OPT_CODEC_OPTIONS          1018
 #define OPT_FORCE_ADB_FORWARD      1019
+#define OPT_VIDEO_QUEUE_SIZE       1020
+#define OPT_VIDEO_QUEUE_POLICY     1021
+#define OPT_MIN_BIT_RATE           1022
+#define OPT_BIT_RATE_STEP          1023
+#define OPT_VIDEO_CODEC            1024
+#define OPT_ENCODER_NAME           1025
+#define OPT_LOW_LATENCY            1026
+#define OPT_IDLE_TIMEOUT           1027
+#define OPT_REFINE                 1028
+#define OPT_TIMING_SEI             1029
+#define OPT_MAX_SUBSCRIBERS        1030
+#define OPT_LATE_JOIN_CACHE_SIZE   1031
+#define OPT_REPLAY_BUFFER_SIZE     1032
+#define OPT_DEVICE_RECORD          1033
 
 bool
 scrcpy_parse_args(struct scrcpy_cli_args *args, int argc, char *argv[]) {
     static const struct option long_options[] = {
         {"always-on-top",          no_argument,       NULL, OPT_ALWAYS_ON_TOP},
         {"bit-rate",               required_argument, NULL, 'b'},
+        {"bit-rate-step",          required_argument, NULL, OPT_BIT_RATE_STEP},
         {"codec-options",          required_argument, NULL, OPT_CODEC_OPTIONS},
         {"crop",                   required_argument, NULL, OPT_CROP},
+        {"device-record",          required_argument, NULL, OPT_DEVICE_RECORD},
         {"display",                required_argument, NULL, OPT_DISPLAY_ID},
+        {"encoder",                required_argument, NULL, OPT_ENCODER_NAME},
         {"force-adb-forward",      no_argument,       NULL,
                                                   OPT_FORCE_ADB_FORWARD},
         {"fullscreen",             no_argument,       NULL, 'f'},
         {"help",                   no_argument,       NULL, 'h'},
+        {"idle-timeout",           required_argument, NULL, OPT_IDLE_TIMEOUT},
+        {"late-join-cache-size",   required_argument, NULL,
+                                                  OPT_LATE_JOIN_CACHE_SIZE},
         {"lock-video-orientation", required_argument, NULL,
                                                   OPT_LOCK_VIDEO_ORIENTATION},
+        {"low-latency",            no_argument,       NULL, OPT_LOW_LATENCY},
         {"max-fps",                required_argument, NULL, OPT_MAX_FPS},
         {"max-size",               required_argument, NULL, 'm'},
+        {"max-subscribers",        required_argument, NULL,
+                                                  OPT_MAX_SUBSCRIBERS},
+        {"min-bit-rate",           required_argument, NULL, OPT_MIN_BIT_RATE},
         {"no-control",             no_argument,       NULL, 'n'},
         {"no-display",             no_argument,       NULL, 'N'},
         {"no-mipmaps",             no_argument,       NULL, OPT_NO_MIPMAPS},
@@ -551,16 +797,25 @@ scrcpy_parse_args(struct scrcpy_cli_args *args, int argc, char *argv[]) {
         {"push-target",            required_argument, NULL, OPT_PUSH_TARGET},
         {"record",                 required_argument, NULL, 'r'},
         {"record-format",          required_argument, NULL, OPT_RECORD_FORMAT},
+        {"refine",                 no_argument,       NULL, OPT_REFINE},
         {"render-driver",          required_argument, NULL, OPT_RENDER_DRIVER},
         {"render-expired-frames",  no_argument,       NULL,
                                                   OPT_RENDER_EXPIRED_FRAMES},
+        {"replay-buffer-size",     required_argument, NULL,
+                                                  OPT_REPLAY_BUFFER_SIZE},
         {"rotation",               required_argument, NULL, OPT_ROTATION},
         {"serial",                 required_argument, NULL, 's'},
         {"show-touches",           no_argument,       NULL, 't'},
         {"stay-awake",             no_argument,       NULL, 'w'},
+        {"timing-sei",             no_argument,       NULL, OPT_TIMING_SEI},
         {"turn-screen-off",        no_argument,       NULL, 'S'},
         {"verbosity",              required_argument, NULL, 'V'},
         {"version",                no_argument,       NULL, 'v'},
+        {"video-codec",            required_argument, NULL, OPT_VIDEO_CODEC},
+        {"video-queue-policy",     required_argument, NULL,
+                                                  OPT_VIDEO_QUEUE_POLICY},
+        {"video-queue-size",       required_argument, NULL,
+                                                  OPT_VIDEO_QUEUE_SIZE},
         {"window-title",           required_argument, NULL, OPT_WINDOW_TITLE},
         {"window-x",               required_argument, NULL, OPT_WINDOW_X},
         {"window-y",               required_argument, NULL, OPT_WINDOW_Y},
@@ -716,6 +971,76 @@ scrcpy_parse_args(struct scrcpy_cli_args *args, int argc, char *argv[]) {
             case OPT_FORCE_ADB_FORWARD:
                 opts->force_adb_forward = true;
                 break;
+            case OPT_VIDEO_QUEUE_SIZE:
+                if (!parse_video_queue_size(optarg, &opts->video_queue_size)) {
+                    return false;
+                }
+                break;
+            case OPT_VIDEO_QUEUE_POLICY:
+                if (!parse_video_queue_policy(optarg,
+                                              &opts->video_queue_policy)) {
+                    return false;
+                }
+                break;
+            case OPT_MIN_BIT_RATE:
+                if (!parse_min_bit_rate(optarg, &opts->min_bit_rate)) {
+                    return false;
+                }
+                break;
+            case OPT_BIT_RATE_STEP:
+                if (!parse_bit_rate_step(optarg, &opts->bit_rate_step)) {
+                    return false;
+                }
+                break;
+            case OPT_VIDEO_CODEC:
+                if (!parse_video_codec(optarg, &opts->video_codec)) {
+                    return false;
+                }
+                break;
+            case OPT_ENCODER_NAME:
+                opts->encoder_name = optarg;
+                break;
+            case OPT_LOW_LATENCY:
+                opts->low_latency = true;
+                break;
+            case OPT_IDLE_TIMEOUT:
+                if (!parse_idle_timeout(optarg, &opts->idle_timeout)) {
+                    return false;
+                }
+                break;
+            case OPT_REFINE:
+                opts->refine = true;
+                break;
+            case OPT_TIMING_SEI:
+                opts->timing_sei = true;
+                break;
+            case OPT_MAX_SUBSCRIBERS:
+                if (!parse_max_subscribers(optarg,
+                                           &opts->max_subscribers)) {
+                    return false;
+                }
+                break;
+            case OPT_LATE_JOIN_CACHE_SIZE:
+                if (!parse_late_join_cache_size(optarg,
+                                                &opts->late_join_cache_size)) {
+                    return false;
+                }
+                break;
+            case OPT_REPLAY_BUFFER_SIZE:
+                if (!parse_replay_buffer_size(optarg,
+                                              &opts->replay_buffer_size)) {
+                    return false;
+                }
+                break;
+            case OPT_DEVICE_RECORD:
+                if (strchr(optarg, ' ')) {
+                    // the server arguments are split on spaces by adb shell
+                    LOGE("Device record path must not contain spaces: %s",
+                         optarg);
+                    return false;
+                }
+                opts->device_record = optarg;
+                break;
             default:
                 // getopt prints the error message on stderr
                 return false;
@@ -747,6 +1072,13 @@ scrcpy_parse_args(struct scrcpy_cli_args *args, int argc, char *argv[]) {
         }
     }
 
+    if (opts->min_bit_rate > opts->bit_rate) {
+        LOGE("The min bit-rate must not exceed the bit-rate (%lu > %lu)",
+             (unsigned long) opts->min_bit_rate,
+             (unsigned long) opts->bit_rate);
+        return false;
+    }
+
     if (!opts->control && opts->turn_screen_off) {
         LOGE("Could not request to turn screen off if control is disabled");
         return false;
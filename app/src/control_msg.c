@@ -76,11 +76,32 @@ control_msg_serialize(const struct control_msg *msg, unsigned char *buf) {
         case CONTROL_MSG_TYPE_SET_SCREEN_POWER_MODE:
             buf[1] = msg->set_screen_power_mode.mode;
             return 2;
+        case CONTROL_MSG_TYPE_SET_MAX_FPS:
+            buffer_write16be(&buf[1], msg->set_max_fps.max_fps);
+            return 3;
+        case CONTROL_MSG_TYPE_SET_BIT_RATE:
+            buffer_write32be(&buf[1], msg->set_bit_rate.bit_rate);
+            return 5;
+        case CONTROL_MSG_TYPE_SET_MAX_SIZE:
+            buffer_write16be(&buf[1], msg->set_max_size.max_size);
+            return 3;
+        case CONTROL_MSG_TYPE_SET_CROP:
+            buffer_write16be(&buf[1], msg->set_crop.left);
+            buffer_write16be(&buf[3], msg->set_crop.top);
+            buffer_write16be(&buf[5], msg->set_crop.width);
+            buffer_write16be(&buf[7], msg->set_crop.height);
+            return 9;
+        case CONTROL_MSG_TYPE_SAVE_REPLAY:
+            buffer_write16be(&buf[1], msg->save_replay.duration);
+            return 3;
         case CONTROL_MSG_TYPE_BACK_OR_SCREEN_ON:
         case CONTROL_MSG_TYPE_EXPAND_NOTIFICATION_PANEL:
         case CONTROL_MSG_TYPE_COLLAPSE_NOTIFICATION_PANEL:
         case CONTROL_MSG_TYPE_GET_CLIPBOARD:
         case CONTROL_MSG_TYPE_ROTATE_DEVICE:
+        case CONTROL_MSG_TYPE_REQUEST_KEY_FRAME:
+        case CONTROL_MSG_TYPE_PAUSE_VIDEO:
+        case CONTROL_MSG_TYPE_RESUME_VIDEO:
             // no additional data
             return 1;
         default:
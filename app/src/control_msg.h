@@ -29,6 +29,14 @@ enum control_msg_type {
     CONTROL_MSG_TYPE_SET_CLIPBOARD,
     CONTROL_MSG_TYPE_SET_SCREEN_POWER_MODE,
     CONTROL_MSG_TYPE_ROTATE_DEVICE,
+    CONTROL_MSG_TYPE_REQUEST_KEY_FRAME,
+    CONTROL_MSG_TYPE_SET_MAX_FPS,
+    CONTROL_MSG_TYPE_SET_BIT_RATE,
+    CONTROL_MSG_TYPE_SET_MAX_SIZE,
+    CONTROL_MSG_TYPE_SET_CROP,
+    CONTROL_MSG_TYPE_PAUSE_VIDEO,
+    CONTROL_MSG_TYPE_RESUME_VIDEO,
+    CONTROL_MSG_TYPE_SAVE_REPLAY,
 };
 
 enum screen_power_mode {
@@ -67,6 +75,25 @@ struct control_msg {
         struct {
             enum screen_power_mode mode;
         } set_screen_power_mode;
+        struct {
+            uint16_t max_fps; // 0 for no limit
+        } set_max_fps;
+        struct {
+            uint32_t bit_rate;
+        } set_bit_rate;
+        struct {
+            uint16_t max_size; // 0 for no limit
+        } set_max_size;
+        struct {
+            // in the natural device orientation, an empty rect disables cropping
+            uint16_t left;
+            uint16_t top;
+            uint16_t width;
+            uint16_t height;
+        } set_crop;
+        struct {
+            uint16_t duration; // in seconds, 0 for the whole replay buffer
+        } save_replay;
     };
 };
 
@@ -16,24 +16,36 @@ device_msg_deserialize(const unsigned char *buf, size_t len,
 
     msg->type = buf[0];
     switch (msg->type) {
-        case DEVICE_MSG_TYPE_CLIPBOARD: {
-            uint16_t clipboard_len = buffer_read16be(&buf[1]);
-            if (clipboard_len > len - 3) {
+        case DEVICE_MSG_TYPE_CLIPBOARD:
+        case DEVICE_MSG_TYPE_REPLAY_SAVED: {
+            uint16_t text_len = buffer_read16be(&buf[1]);
+            if (text_len > len - 3) {
                 return 0; // not available
             }
-            char *text = SDL_malloc(clipboard_len + 1);
+            char *text = SDL_malloc(text_len + 1);
             if (!text) {
-                LOGW("Could not allocate text for clipboard");
+                LOGW("Could not allocate text for device message");
                 return -1;
             }
-            if (clipboard_len) {
-                memcpy(text, &buf[3], clipboard_len);
+            if (text_len) {
+                memcpy(text, &buf[3], text_len);
             }
-            text[clipboard_len] = '\0';
+            text[text_len] = '\0';
 
-            msg->clipboard.text = text;
-            return 3 + clipboard_len;
+            if (msg->type == DEVICE_MSG_TYPE_CLIPBOARD) {
+                msg->clipboard.text = text;
+            } else {
+                msg->replay_saved.path = text;
+            }
+            return 3 + text_len;
         }
+        case DEVICE_MSG_TYPE_VIDEO_SIZE:
+            if (len < 5) {
+                return 0; // not available
+            }
+            msg->video_size.width = buffer_read16be(&buf[1]);
+            msg->video_size.height = buffer_read16be(&buf[3]);
+            return 5;
         default:
             LOGW("Unknown device message type: %d", (int) msg->type);
             return -1; // error, we cannot recover
@@ -44,5 +56,7 @@ void
 device_msg_destroy(struct device_msg *msg) {
     if (msg->type == DEVICE_MSG_TYPE_CLIPBOARD) {
         SDL_free(msg->clipboard.text);
+    } else if (msg->type == DEVICE_MSG_TYPE_REPLAY_SAVED) {
+        SDL_free(msg->replay_saved.path);
     }
 }
@@ -12,6 +12,8 @@
 
 enum device_msg_type {
     DEVICE_MSG_TYPE_CLIPBOARD,
+    DEVICE_MSG_TYPE_VIDEO_SIZE,
+    DEVICE_MSG_TYPE_REPLAY_SAVED,
 };
 
 struct device_msg {
@@ -20,6 +22,13 @@ struct device_msg {
         struct {
             char *text; // owned, to be freed by SDL_free()
         } clipboard;
+        struct {
+            uint16_t width;
+            uint16_t height;
+        } video_size;
+        struct {
+            char *path; // owned, to be freed by SDL_free(), empty on failure
+        } replay_saved;
     };
 };
 
@@ -195,6 +195,17 @@ rotate_device(struct controller *controller) {
     }
 }
 
+static void
+save_replay(struct controller *controller) {
+    struct control_msg msg;
+    msg.type = CONTROL_MSG_TYPE_SAVE_REPLAY;
+    msg.save_replay.duration = 30; // seconds
+
+    if (!controller_push_msg(controller, &msg)) {
+        LOGW("Could not request 'save replay'");
+    }
+}
+
 static void
 rotate_client_left(struct screen *screen) {
     unsigned new_rotation = (screen->rotation + 1) % 4;
@@ -398,8 +409,12 @@ input_manager_process_key(struct input_manager *im,
                 }
                 return;
             case SDLK_r:
-                if (control && cmd && !shift && !repeat && down) {
-                    rotate_device(controller);
+                if (control && cmd && !repeat && down) {
+                    if (shift) {
+                        save_replay(controller);
+                    } else {
+                        rotate_device(controller);
+                    }
                 }
                 return;
         }
@@ -29,6 +29,19 @@ process_msg(struct device_msg *msg) {
             LOGI("Device clipboard copied");
             SDL_SetClipboardText(msg->clipboard.text);
             break;
+        case DEVICE_MSG_TYPE_VIDEO_SIZE:
+            // the screen is resized on the first frame with the new size
+            LOGI("Device video size changed to %ux%u",
+                 (unsigned) msg->video_size.width,
+                 (unsigned) msg->video_size.height);
+            break;
+        case DEVICE_MSG_TYPE_REPLAY_SAVED:
+            if (*msg->replay_saved.path) {
+                LOGI("Replay saved on the device: %s", msg->replay_saved.path);
+            } else {
+                LOGW("Could not save replay on the device");
+            }
+            break;
     }
 }
 
@@ -305,7 +305,21 @@ scrcpy(const struct scrcpy_options *options) {
         .show_touches = options->show_touches,
         .stay_awake = options->stay_awake,
         .codec_options = options->codec_options,
+        .encoder_name = options->encoder_name,
         .force_adb_forward = options->force_adb_forward,
+        .video_queue_size = options->video_queue_size,
+        .video_queue_policy = options->video_queue_policy,
+        .min_bit_rate = options->min_bit_rate,
+        .bit_rate_step = options->bit_rate_step,
+        .video_codec = options->video_codec,
+        .low_latency = options->low_latency,
+        .idle_timeout = options->idle_timeout,
+        .refine = options->refine,
+        .timing_sei = options->timing_sei,
+        .max_subscribers = options->max_subscribers,
+        .late_join_cache_size = options->late_join_cache_size,
+        .replay_buffer_size = options->replay_buffer_size,
+        .device_record = options->device_record,
     };
     if (!server_start(&server, options->serial, &params)) {
         return false;
@@ -378,7 +392,9 @@ scrcpy(const struct scrcpy_options *options) {
 
     av_log_set_callback(av_log_callback);
 
-    stream_init(&stream, server.video_socket, dec, rec);
+    enum AVCodecID codec_id = options->video_codec == VIDEO_CODEC_H265
+                            ? AV_CODEC_ID_HEVC : AV_CODEC_ID_H264;
+    stream_init(&stream, server.video_socket, codec_id, dec, rec);
 
     // now we consumed the header values, the socket receives the video stream
     // start the stream
@@ -8,6 +8,7 @@
 #include "common.h"
 #include "input_manager.h"
 #include "recorder.h"
+#include "server.h"
 #include "util/log.h"
 
 struct scrcpy_options {
@@ -18,6 +19,7 @@ struct scrcpy_options {
     const char *push_target;
     const char *render_driver;
     const char *codec_options;
+    const char *encoder_name;
     enum sc_log_level log_level;
     enum recorder_format record_format;
     struct port_range port_range;
@@ -43,6 +45,19 @@ struct scrcpy_options {
     bool mipmaps;
     bool stay_awake;
     bool force_adb_forward;
+    uint16_t video_queue_size;
+    enum video_queue_policy video_queue_policy;
+    uint32_t min_bit_rate;
+    uint32_t bit_rate_step;
+    enum video_codec video_codec;
+    bool low_latency;
+    uint32_t idle_timeout;
+    bool refine;
+    bool timing_sei;
+    uint8_t max_subscribers;
+    uint32_t late_join_cache_size;
+    uint32_t replay_buffer_size;
+    const char *device_record;
 };
 
 #define SCRCPY_OPTIONS_DEFAULT { \
@@ -53,6 +68,7 @@ struct scrcpy_options {
     .push_target = NULL, \
     .render_driver = NULL, \
     .codec_options = NULL, \
+    .encoder_name = NULL, \
     .log_level = SC_LOG_LEVEL_INFO, \
     .record_format = RECORDER_FORMAT_AUTO, \
     .port_range = { \
@@ -81,6 +97,19 @@ struct scrcpy_options {
     .mipmaps = true, \
     .stay_awake = false, \
     .force_adb_forward = false, \
+    .video_queue_size = DEFAULT_VIDEO_QUEUE_SIZE, \
+    .video_queue_policy = VIDEO_QUEUE_POLICY_BLOCK, \
+    .min_bit_rate = 0, \
+    .bit_rate_step = DEFAULT_BIT_RATE_STEP, \
+    .video_codec = VIDEO_CODEC_H264, \
+    .low_latency = false, \
+    .idle_timeout = 0, \
+    .refine = false, \
+    .timing_sei = false, \
+    .max_subscribers = 0, \
+    .late_join_cache_size = DEFAULT_LATE_JOIN_CACHE_SIZE, \
+    .replay_buffer_size = 0, \
+    .device_record = NULL, \
 }
 
 bool
@@ -251,6 +251,34 @@ log_level_to_server_string(enum sc_log_level level) {
     }
 }
 
+static const char *
+video_codec_to_server_string(enum video_codec codec) {
+    switch (codec) {
+        case VIDEO_CODEC_H264:
+            return "h264";
+        case VIDEO_CODEC_H265:
+            return "h265";
+        default:
+            assert(!"unexpected video codec");
+            return "(unknown)";
+    }
+}
+
+static const char *
+video_queue_policy_to_server_string(enum video_queue_policy policy) {
+    switch (policy) {
+        case VIDEO_QUEUE_POLICY_BLOCK:
+            return "block";
+        case VIDEO_QUEUE_POLICY_DROP_UNTIL_KEY_FRAME:
+            return "drop-until-key-frame";
+        case VIDEO_QUEUE_POLICY_DROP_OLDEST_NON_REFERENCE:
+            return "drop-oldest-non-reference";
+        default:
+            assert(!"unexpected video queue policy");
+            return "(unknown)";
+    }
+}
+
 static process_t
 execute_server(struct server *server, const struct server_params *params) {
     char max_size_string[6];
@@ -258,11 +286,26 @@ execute_server(struct server *server, const struct server_params *params) {
     char max_fps_string[6];
     char lock_video_orientation_string[5];
     char display_id_string[6];
+    char video_queue_size_string[6];
+    char min_bit_rate_string[11];
+    char bit_rate_step_string[11];
+    char idle_timeout_string[11];
+    char max_subscribers_string[4];
+    char late_join_cache_size_string[11];
+    char replay_buffer_size_string[11];
     sprintf(max_size_string, "%"PRIu16, params->max_size);
     sprintf(bit_rate_string, "%"PRIu32, params->bit_rate);
     sprintf(max_fps_string, "%"PRIu16, params->max_fps);
     sprintf(lock_video_orientation_string, "%"PRIi8, params->lock_video_orientation);
     sprintf(display_id_string, "%"PRIu16, params->display_id);
+    sprintf(video_queue_size_string, "%"PRIu16, params->video_queue_size);
+    sprintf(min_bit_rate_string, "%"PRIu32, params->min_bit_rate);
+    sprintf(bit_rate_step_string, "%"PRIu32, params->bit_rate_step);
+    sprintf(idle_timeout_string, "%"PRIu32, params->idle_timeout);
+    sprintf(max_subscribers_string, "%"PRIu8, params->max_subscribers);
+    sprintf(late_join_cache_size_string, "%"PRIu32,
+            params->late_join_cache_size);
+    sprintf(replay_buffer_size_string, "%"PRIu32, params->replay_buffer_size);
     const char *const cmd[] = {
         "shell",
         "CLASSPATH=" DEVICE_SERVER_PATH,
@@ -294,6 +337,20 @@ execute_server(struct server *server, const struct server_params *params) {
         params->show_touches ? "true" : "false",
         params->stay_awake ? "true" : "false",
         params->codec_options ? params->codec_options : "-",
+        video_queue_size_string,
+        video_queue_policy_to_server_string(params->video_queue_policy),
+        min_bit_rate_string,
+        bit_rate_step_string,
+        video_codec_to_server_string(params->video_codec),
+        params->encoder_name ? params->encoder_name : "-",
+        params->low_latency ? "true" : "false",
+        idle_timeout_string,
+        params->refine ? "true" : "false",
+        params->timing_sei ? "true" : "false",
+        max_subscribers_string,
+        late_join_cache_size_string,
+        replay_buffer_size_string,
+        params->device_record ? params->device_record : "-",
     };
 #ifdef SERVER_DEBUGGER
     LOGI("Server debugger waiting for a client on device port "
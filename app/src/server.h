@@ -43,10 +43,22 @@ struct server {
     .tunnel_forward = false, \
 }
 
+enum video_codec {
+    VIDEO_CODEC_H264,
+    VIDEO_CODEC_H265,
+};
+
+enum video_queue_policy {
+    VIDEO_QUEUE_POLICY_BLOCK,
+    VIDEO_QUEUE_POLICY_DROP_UNTIL_KEY_FRAME,
+    VIDEO_QUEUE_POLICY_DROP_OLDEST_NON_REFERENCE,
+};
+
 struct server_params {
     enum sc_log_level log_level;
     const char *crop;
     const char *codec_options;
+    const char *encoder_name;
     struct port_range port_range;
     uint16_t max_size;
     uint32_t bit_rate;
@@ -57,6 +69,19 @@ struct server_params {
     bool show_touches;
     bool stay_awake;
     bool force_adb_forward;
+    uint16_t video_queue_size;
+    enum video_queue_policy video_queue_policy;
+    uint32_t min_bit_rate;
+    uint32_t bit_rate_step;
+    enum video_codec video_codec;
+    bool low_latency;
+    uint32_t idle_timeout;
+    bool refine;
+    bool timing_sei;
+    uint8_t max_subscribers;
+    uint32_t late_join_cache_size;
+    uint32_t replay_buffer_size;
+    const char *device_record;
 };
 
 // init default values
@@ -19,7 +19,11 @@
 #define BUFSIZE 0x10000
 
 #define HEADER_SIZE 12
-#define NO_PTS UINT64_C(-1)
+
+#define PACKET_FLAG_CONFIG    (UINT64_C(1) << 63)
+#define PACKET_FLAG_KEY_FRAME (UINT64_C(1) << 62)
+
+#define PACKET_PTS_MASK (PACKET_FLAG_KEY_FRAME - 1)
 
 static bool
 stream_recv_packet(struct stream *stream, AVPacket *packet) {
@@ -34,6 +38,15 @@ stream_recv_packet(struct stream *stream, AVPacket *packet) {
     //                    size
     //
     // It is followed by <packet_size> bytes containing the packet/frame.
+    //
+    // The most significant bits of the PTS are used for packet flags:
+    //
+    //  byte 7   byte 6   byte 5   byte 4   byte 3   byte 2   byte 1   byte 0
+    // CK...... ........ ........ ........ ........ ........ ........ ........
+    // ^^<------------------------------------------------------------------->
+    // ||                                PTS
+    // | `- key frame
+    //  `-- config packet
 
     uint8_t header[HEADER_SIZE];
     ssize_t r = net_recv_all(stream->socket, header, HEADER_SIZE);
@@ -41,9 +54,8 @@ stream_recv_packet(struct stream *stream, AVPacket *packet) {
         return false;
     }
 
-    uint64_t pts = buffer_read64be(header);
+    uint64_t pts_flags = buffer_read64be(header);
     uint32_t len = buffer_read32be(&header[8]);
-    assert(pts == NO_PTS || (pts & 0x8000000000000000) == 0);
     assert(len);
 
     if (av_new_packet(packet, len)) {
@@ -57,7 +69,15 @@ stream_recv_packet(struct stream *stream, AVPacket *packet) {
         return false;
     }
 
-    packet->pts = pts != NO_PTS ? (int64_t) pts : AV_NOPTS_VALUE;
+    if (pts_flags & PACKET_FLAG_CONFIG) {
+        packet->pts = AV_NOPTS_VALUE;
+    } else {
+        packet->pts = (int64_t) (pts_flags & PACKET_PTS_MASK);
+    }
+
+    if (pts_flags & PACKET_FLAG_KEY_FRAME) {
+        packet->flags |= AV_PKT_FLAG_KEY;
+    }
 
     return true;
 }
@@ -185,9 +205,9 @@ static int
 run_stream(void *data) {
     struct stream *stream = data;
 
-    AVCodec *codec = avcodec_find_decoder(AV_CODEC_ID_H264);
+    AVCodec *codec = avcodec_find_decoder(stream->codec_id);
     if (!codec) {
-        LOGE("H.264 decoder not found");
+        LOGE("Decoder not found for %s", avcodec_get_name(stream->codec_id));
         goto end;
     }
 
@@ -214,7 +234,7 @@ run_stream(void *data) {
         }
     }
 
-    stream->parser = av_parser_init(AV_CODEC_ID_H264);
+    stream->parser = av_parser_init(stream->codec_id);
     if (!stream->parser) {
         LOGE("Could not initialize parser");
         goto finally_stop_and_join_recorder;
@@ -269,9 +289,10 @@ end:
 }
 
 void
-stream_init(struct stream *stream, socket_t socket,
+stream_init(struct stream *stream, socket_t socket, enum AVCodecID codec_id,
             struct decoder *decoder, struct recorder *recorder) {
     stream->socket = socket;
+    stream->codec_id = codec_id;
     stream->decoder = decoder,
     stream->recorder = recorder;
     stream->has_pending = false;
@@ -44,11 +44,22 @@ static void test_options(void) {
         "scrcpy",
         "--always-on-top",
         "--bit-rate", "5M",
+        "--bit-rate-step", "250K",
         "--crop", "100:200:300:400",
+        "--encoder", "OMX.qcom.video.encoder.avc",
         "--fullscreen",
         "--max-fps", "30",
         "--max-size", "1024",
+        "--min-bit-rate", "1M",
         "--lock-video-orientation", "2",
+        "--low-latency",
+        "--idle-timeout", "3000",
+        "--refine",
+        "--timing-sei",
+        "--max-subscribers", "2",
+        "--late-join-cache-size", "2M",
+        "--replay-buffer-size", "32M",
+        "--device-record", "/sdcard/scrcpy.h264",
         // "--no-control" is not compatible with "--turn-screen-off"
         // "--no-display" is not compatible with "--fulscreen"
         "--port", "1234:1236",
@@ -59,6 +70,7 @@ static void test_options(void) {
         "--serial", "0123456789abcdef",
         "--show-touches",
         "--turn-screen-off",
+        "--video-codec", "h265",
         "--prefer-text",
         "--window-title", "my device",
         "--window-x", "100",
@@ -75,11 +87,22 @@ static void test_options(void) {
     assert(opts->always_on_top);
     fprintf(stderr, "%d\n", (int) opts->bit_rate);
     assert(opts->bit_rate == 5000000);
+    assert(opts->bit_rate_step == 250000);
     assert(!strcmp(opts->crop, "100:200:300:400"));
+    assert(!strcmp(opts->encoder_name, "OMX.qcom.video.encoder.avc"));
     assert(opts->fullscreen);
     assert(opts->max_fps == 30);
     assert(opts->max_size == 1024);
+    assert(opts->min_bit_rate == 1000000);
     assert(opts->lock_video_orientation == 2);
+    assert(opts->low_latency);
+    assert(opts->idle_timeout == 3000);
+    assert(opts->refine);
+    assert(opts->timing_sei);
+    assert(opts->max_subscribers == 2);
+    assert(opts->late_join_cache_size == 2000000);
+    assert(opts->replay_buffer_size == 32000000);
+    assert(!strcmp(opts->device_record, "/sdcard/scrcpy.h264"));
     assert(opts->port_range.first == 1234);
     assert(opts->port_range.last == 1236);
     assert(!strcmp(opts->push_target, "/sdcard/Movies"));
@@ -89,6 +112,7 @@ static void test_options(void) {
     assert(!strcmp(opts->serial, "0123456789abcdef"));
     assert(opts->show_touches);
     assert(opts->turn_screen_off);
+    assert(opts->video_codec == VIDEO_CODEC_H265);
     assert(opts->prefer_text);
     assert(!strcmp(opts->window_title, "my device"));
     assert(opts->window_x == 100);
@@ -253,6 +253,152 @@ static void test_serialize_rotate_device(void) {
     assert(!memcmp(buf, expected, sizeof(expected)));
 }
 
+static void test_serialize_request_key_frame(void) {
+    struct control_msg msg = {
+        .type = CONTROL_MSG_TYPE_REQUEST_KEY_FRAME,
+    };
+
+    unsigned char buf[CONTROL_MSG_SERIALIZED_MAX_SIZE];
+    int size = control_msg_serialize(&msg, buf);
+    assert(size == 1);
+
+    const unsigned char expected[] = {
+        CONTROL_MSG_TYPE_REQUEST_KEY_FRAME,
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_set_max_fps(void) {
+    struct control_msg msg = {
+        .type = CONTROL_MSG_TYPE_SET_MAX_FPS,
+        .set_max_fps = {
+            .max_fps = 60,
+        },
+    };
+
+    unsigned char buf[CONTROL_MSG_SERIALIZED_MAX_SIZE];
+    int size = control_msg_serialize(&msg, buf);
+    assert(size == 3);
+
+    const unsigned char expected[] = {
+        CONTROL_MSG_TYPE_SET_MAX_FPS,
+        0x00, 0x3c, // 60
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_set_bit_rate(void) {
+    struct control_msg msg = {
+        .type = CONTROL_MSG_TYPE_SET_BIT_RATE,
+        .set_bit_rate = {
+            .bit_rate = 2000000,
+        },
+    };
+
+    unsigned char buf[CONTROL_MSG_SERIALIZED_MAX_SIZE];
+    int size = control_msg_serialize(&msg, buf);
+    assert(size == 5);
+
+    const unsigned char expected[] = {
+        CONTROL_MSG_TYPE_SET_BIT_RATE,
+        0x00, 0x1e, 0x84, 0x80, // 2000000
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_set_max_size(void) {
+    struct control_msg msg = {
+        .type = CONTROL_MSG_TYPE_SET_MAX_SIZE,
+        .set_max_size = {
+            .max_size = 400,
+        },
+    };
+
+    unsigned char buf[CONTROL_MSG_SERIALIZED_MAX_SIZE];
+    int size = control_msg_serialize(&msg, buf);
+    assert(size == 3);
+
+    const unsigned char expected[] = {
+        CONTROL_MSG_TYPE_SET_MAX_SIZE,
+        0x01, 0x90, // 400
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_set_crop(void) {
+    struct control_msg msg = {
+        .type = CONTROL_MSG_TYPE_SET_CROP,
+        .set_crop = {
+            .left = 100,
+            .top = 200,
+            .width = 540,
+            .height = 960,
+        },
+    };
+
+    unsigned char buf[CONTROL_MSG_SERIALIZED_MAX_SIZE];
+    int size = control_msg_serialize(&msg, buf);
+    assert(size == 9);
+
+    const unsigned char expected[] = {
+        CONTROL_MSG_TYPE_SET_CROP,
+        0x00, 0x64, // 100
+        0x00, 0xc8, // 200
+        0x02, 0x1c, // 540
+        0x03, 0xc0, // 960
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_pause_video(void) {
+    struct control_msg msg = {
+        .type = CONTROL_MSG_TYPE_PAUSE_VIDEO,
+    };
+
+    unsigned char buf[CONTROL_MSG_SERIALIZED_MAX_SIZE];
+    int size = control_msg_serialize(&msg, buf);
+    assert(size == 1);
+
+    const unsigned char expected[] = {
+        CONTROL_MSG_TYPE_PAUSE_VIDEO,
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_resume_video(void) {
+    struct control_msg msg = {
+        .type = CONTROL_MSG_TYPE_RESUME_VIDEO,
+    };
+
+    unsigned char buf[CONTROL_MSG_SERIALIZED_MAX_SIZE];
+    int size = control_msg_serialize(&msg, buf);
+    assert(size == 1);
+
+    const unsigned char expected[] = {
+        CONTROL_MSG_TYPE_RESUME_VIDEO,
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_save_replay(void) {
+    struct control_msg msg = {
+        .type = CONTROL_MSG_TYPE_SAVE_REPLAY,
+        .save_replay = {
+            .duration = 30,
+        },
+    };
+
+    unsigned char buf[CONTROL_MSG_SERIALIZED_MAX_SIZE];
+    int size = control_msg_serialize(&msg, buf);
+    assert(size == 3);
+
+    const unsigned char expected[] = {
+        CONTROL_MSG_TYPE_SAVE_REPLAY,
+        0x00, 0x1e, // 30
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
 int main(void) {
     test_serialize_inject_keycode();
     test_serialize_inject_text();
@@ -266,5 +412,13 @@ int main(void) {
     test_serialize_set_clipboard();
     test_serialize_set_screen_power_mode();
     test_serialize_rotate_device();
+    test_serialize_request_key_frame();
+    test_serialize_set_max_fps();
+    test_serialize_set_bit_rate();
+    test_serialize_set_max_size();
+    test_serialize_set_crop();
+    test_serialize_pause_video();
+    test_serialize_resume_video();
+    test_serialize_save_replay();
     return 0;
 }
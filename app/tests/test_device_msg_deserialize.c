@@ -22,7 +22,57 @@ static void test_deserialize_clipboard(void) {
     device_msg_destroy(&msg);
 }
 
+static void test_deserialize_video_size(void) {
+    const unsigned char input[] = {
+        DEVICE_MSG_TYPE_VIDEO_SIZE,
+        0x05, 0x00, // width 1280
+        0x02, 0x40, // height 576
+    };
+
+    struct device_msg msg;
+    ssize_t r = device_msg_deserialize(input, sizeof(input), &msg);
+    assert(r == 5);
+
+    assert(msg.type == DEVICE_MSG_TYPE_VIDEO_SIZE);
+    assert(msg.video_size.width == 1280);
+    assert(msg.video_size.height == 576);
+
+    // incomplete
+    r = device_msg_deserialize(input, 4, &msg);
+    assert(r == 0);
+
+    device_msg_destroy(&msg);
+}
+
+static void test_deserialize_replay_saved(void) {
+    const unsigned char input[] = {
+        DEVICE_MSG_TYPE_REPLAY_SAVED,
+        0x00, 0x05, // path length
+        0x2f, 0x61, 0x2e, 0x6d, 0x70, // "/a.mp"
+    };
+
+    struct device_msg msg;
+    ssize_t r = device_msg_deserialize(input, sizeof(input), &msg);
+    assert(r == 8);
+
+    assert(msg.type == DEVICE_MSG_TYPE_REPLAY_SAVED);
+    assert(!strcmp("/a.mp", msg.replay_saved.path));
+    device_msg_destroy(&msg);
+
+    // failure
+    const unsigned char failure[] = {
+        DEVICE_MSG_TYPE_REPLAY_SAVED,
+        0x00, 0x00, // empty path
+    };
+    r = device_msg_deserialize(failure, sizeof(failure), &msg);
+    assert(r == 3);
+    assert(!*msg.replay_saved.path);
+    device_msg_destroy(&msg);
+}
+
 int main(void) {
     test_deserialize_clipboard();
+    test_deserialize_video_size();
+    test_deserialize_replay_saved();
     return 0;
 }
@@ -0,0 +1,126 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers to inspect an H.264 or H.265 Annex-B byte stream (NAL units separated by start codes) in place, without allocation.
+ */
+public final class AnnexB {
+
+    public static final int NAL_TYPE_SLICE = 1;
+    public static final int NAL_TYPE_IDR = 5;
+    public static final int NAL_TYPE_SPS = 7;
+    public static final int NAL_TYPE_PPS = 8;
+
+    // H.265 VCL NAL unit types are in [0; 31], the sub-layer non-reference pictures have an even type <= 14
+    private static final int HEVC_NAL_TYPE_VCL_MAX = 31;
+    private static final int HEVC_NAL_TYPE_SUB_LAYER_NON_REFERENCE_MAX = 14;
+    // intra random access point pictures (BLA, IDR, CRA and reserved IRAP types)
+    private static final int HEVC_NAL_TYPE_IRAP_MIN = 16;
+    private static final int HEVC_NAL_TYPE_IRAP_MAX = 23;
+    // parameter sets: VPS, SPS and PPS
+    private static final int HEVC_NAL_TYPE_VPS = 32;
+    private static final int HEVC_NAL_TYPE_PPS = 34;
+
+    private AnnexB() {
+        // not instantiable
+    }
+
+    /**
+     * Find the next NAL unit.
+     *
+     * @param buffer the buffer (its position and limit are not changed)
+     * @param from   the absolute index to start searching from
+     * @param limit  the absolute index to stop searching at (exclusive)
+     * @return the absolute index of the NAL unit header (just after the start code), or -1 if there is none
+     */
+    public static int findNalUnit(ByteBuffer buffer, int from, int limit) {
+        // a start code is 00 00 01 (possibly preceded by another 00)
+        int zeros = 0;
+        for (int i = from; i < limit; ++i) {
+            byte b = buffer.get(i);
+            if (b == 0) {
+                ++zeros;
+            } else {
+                if (b == 1 && zeros >= 2) {
+                    return i + 1 < limit ? i + 1 : -1;
+                }
+                zeros = 0;
+            }
+        }
+        return -1;
+    }
+
+    public static int getNalType(byte header) {
+        return header & 0x1f;
+    }
+
+    public static int getNalRefIdc(byte header) {
+        return (header >> 5) & 0x3;
+    }
+
+    public static boolean isVcl(int nalType) {
+        return nalType >= NAL_TYPE_SLICE && nalType <= NAL_TYPE_IDR;
+    }
+
+    /**
+     * Compute the {@code VideoPacket.FLAG_*} flags of the access unit contained in the buffer (from its position to its limit).
+     * <p>
+     * All the slices of a picture share the same NAL unit type (IDR or not) and {@code nal_ref_idc} value, so the scan stops at the
+     * first slice. A packet containing parameter sets but no slice is a config packet.
+     *
+     * @return {@link VideoPacket#FLAG_KEY_FRAME} for an IDR picture, {@link VideoPacket#FLAG_NON_REFERENCE} for a picture with
+     * {@code nal_ref_idc == 0}, {@link VideoPacket#FLAG_CONFIG} for parameter sets only, 0 otherwise
+     */
+    public static int scanFrameFlags(ByteBuffer buffer) {
+        boolean parameterSets = false;
+        int limit = buffer.limit();
+        int index = findNalUnit(buffer, buffer.position(), limit);
+        while (index != -1) {
+            byte header = buffer.get(index);
+            int nalType = getNalType(header);
+            if (isVcl(nalType)) {
+                if (nalType == NAL_TYPE_IDR) {
+                    return VideoPacket.FLAG_KEY_FRAME;
+                }
+                return getNalRefIdc(header) == 0 ? VideoPacket.FLAG_NON_REFERENCE : 0;
+            }
+            if (nalType == NAL_TYPE_SPS || nalType == NAL_TYPE_PPS) {
+                parameterSets = true;
+            }
+            index = findNalUnit(buffer, index + 1, limit);
+        }
+        return parameterSets ? VideoPacket.FLAG_CONFIG : 0;
+    }
+
+    public static int getHevcNalType(byte header) {
+        return (header >> 1) & 0x3f;
+    }
+
+    /**
+     * Same as {@link #scanFrameFlags(ByteBuffer)}, for an H.265 stream.
+     *
+     * @return {@link VideoPacket#FLAG_KEY_FRAME} for an IRAP picture, {@link VideoPacket#FLAG_NON_REFERENCE} for a sub-layer
+     * non-reference picture, {@link VideoPacket#FLAG_CONFIG} for parameter sets only, 0 otherwise
+     */
+    public static int scanFrameFlagsHevc(ByteBuffer buffer) {
+        boolean parameterSets = false;
+        int limit = buffer.limit();
+        int index = findNalUnit(buffer, buffer.position(), limit);
+        while (index != -1) {
+            int nalType = getHevcNalType(buffer.get(index));
+            if (nalType <= HEVC_NAL_TYPE_VCL_MAX) {
+                if (nalType >= HEVC_NAL_TYPE_IRAP_MIN && nalType <= HEVC_NAL_TYPE_IRAP_MAX) {
+                    return VideoPacket.FLAG_KEY_FRAME;
+                }
+                boolean nonReference = nalType <= HEVC_NAL_TYPE_SUB_LAYER_NON_REFERENCE_MAX && nalType % 2 == 0;
+                return nonReference ? VideoPacket.FLAG_NON_REFERENCE : 0;
+            }
+            if (nalType >= HEVC_NAL_TYPE_VPS && nalType <= HEVC_NAL_TYPE_PPS) {
+                parameterSets = true;
+            }
+            index = findNalUnit(buffer, index + 1, limit);
+        }
+        return parameterSets ? VideoPacket.FLAG_CONFIG : 0;
+    }
+}
@@ -0,0 +1,155 @@
+package com.genymobile.scrcpy;
+
+/**
+ * Adapt the encoding bit rate to the throughput of the connection.
+ * <p>
+ * The writer reports each write: its duration and the number of packets still queued afterwards. Over each time window, if the writer
+ * spent most of its time blocked in writes, or if packets piled up (or were dropped), the connection is considered congested and the
+ * bit rate is decreased (multiplicatively). Once the connection has been clear for a while, the bit rate is increased again
+ * (additively, by the step), up to the ceiling.
+ */
+public final class BitRateController {
+
+    // the duration of a measurement window
+    private static final long WINDOW_MS = 500;
+    // the minimal delay since the last congestion (or the last increase) before increasing the bit rate
+    private static final long INCREASE_DELAY_MS = 2000;
+
+    // the connection is congested if the writer was busy more than 80% of the window or if at least 3 packets were queued
+    private static final int CONGESTED_BUSY_PERCENT = 80;
+    private static final int CONGESTED_BACKLOG = 3;
+    // the connection is clear if the writer was busy less than 50% of the window and if at most 1 packet was queued
+    private static final int CLEAR_BUSY_PERCENT = 50;
+    private static final int CLEAR_BACKLOG = 1;
+
+    // on congestion, the bit rate is multiplied by 3/4
+    private static final int DECREASE_NUMERATOR = 3;
+    private static final int DECREASE_DENOMINATOR = 4;
+
+    private final int minBitRate;
+    // may be changed from another thread
+    private volatile int maxBitRate;
+    private final int step;
+
+    // written by the writer, read by the encoder
+    private volatile int bitRate;
+
+    private long windowStart = -1;
+    private long busyUs;
+    private int maxBacklog;
+    private long droppedCount;
+
+    private long lastCongestionTime;
+    private long lastIncreaseTime;
+
+    /**
+     * Create a controller.
+     * <p>
+     * The initial bit rate is the ceiling.
+     *
+     * @param minBitRate the floor, in bits/s
+     * @param maxBitRate the ceiling, in bits/s
+     * @param step       the increment, in bits/s
+     */
+    public BitRateController(int minBitRate, int maxBitRate, int step) {
+        if (minBitRate <= 0 || minBitRate > maxBitRate) {
+            throw new IllegalArgumentException("Invalid bit rate range: [" + minBitRate + "; " + maxBitRate + "]");
+        }
+        if (step <= 0) {
+            throw new IllegalArgumentException("Bit rate step must be positive: " + step);
+        }
+        this.minBitRate = minBitRate;
+        this.maxBitRate = maxBitRate;
+        this.step = step;
+        this.bitRate = maxBitRate;
+    }
+
+    /**
+     * Return the current target bit rate (may be called from any thread).
+     */
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    public int getMinBitRate() {
+        return minBitRate;
+    }
+
+    public int getMaxBitRate() {
+        return maxBitRate;
+    }
+
+    /**
+     * Change the ceiling (may be called from any thread).
+     * <p>
+     * The current bit rate is lowered immediately if it exceeds the new ceiling; otherwise, it increases progressively up to it. The
+     * ceiling may not be lower than the floor.
+     *
+     * @param newMaxBitRate the new ceiling, in bits/s
+     */
+    public void setMaxBitRate(int newMaxBitRate) {
+        int max = Math.max(minBitRate, newMaxBitRate);
+        maxBitRate = max;
+        if (bitRate > max) {
+            bitRate = max;
+        }
+    }
+
+    /**
+     * Report a write to the connection (called by the writer).
+     *
+     * @param now               the current time, in milliseconds
+     * @param durationUs        the duration of the write, in microseconds
+     * @param backlog           the number of packets still queued after the write
+     * @param totalDroppedCount the total number of packets dropped so far
+     * @return {@code true} if the target bit rate has changed
+     */
+    public boolean onWrite(long now, long durationUs, int backlog, long totalDroppedCount) {
+        if (windowStart == -1) {
+            startWindow(now, totalDroppedCount);
+            lastCongestionTime = now;
+            lastIncreaseTime = now;
+        }
+
+        busyUs += durationUs;
+        if (backlog > maxBacklog) {
+            maxBacklog = backlog;
+        }
+
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW_MS) {
+            return false;
+        }
+
+        // busyUs * 100 / (elapsed * 1000)
+        long busyPercent = busyUs / (elapsed * 10);
+        boolean dropped = totalDroppedCount > droppedCount;
+
+        int newBitRate = bitRate;
+        if (dropped || busyPercent >= CONGESTED_BUSY_PERCENT || maxBacklog >= CONGESTED_BACKLOG) {
+            lastCongestionTime = now;
+            newBitRate = Math.max(minBitRate, (int) ((long) bitRate * DECREASE_NUMERATOR / DECREASE_DENOMINATOR));
+        } else if (busyPercent < CLEAR_BUSY_PERCENT && maxBacklog <= CLEAR_BACKLOG && now - lastCongestionTime >= INCREASE_DELAY_MS
+                && now - lastIncreaseTime >= INCREASE_DELAY_MS) {
+            lastIncreaseTime = now;
+            newBitRate = (int) Math.min(maxBitRate, (long) bitRate + step);
+        }
+
+        startWindow(now, totalDroppedCount);
+
+        // the ceiling may have been lowered concurrently
+        newBitRate = Math.min(newBitRate, maxBitRate);
+        if (newBitRate == bitRate) {
+            return false;
+        }
+        bitRate = newBitRate;
+        return true;
+    }
+
+    private void startWindow(long now, long totalDroppedCount) {
+        windowStart = now;
+        busyUs = 0;
+        maxBacklog = 0;
+        droppedCount = totalDroppedCount;
+    }
+}
@@ -0,0 +1,73 @@
+package com.genymobile.scrcpy;
+
+/**
+ * Read bits and Exp-Golomb codes from a raw byte sequence payload (emulation prevention bytes already removed), MSB first.
+ */
+public final class BitReader {
+
+    private final byte[] data;
+    private final int limit;
+    private int bitPosition;
+
+    /**
+     * @param data   the data
+     * @param offset the index of the first byte to read
+     * @param length the number of bytes to read
+     */
+    public BitReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.limit = (offset + length) * 8;
+        this.bitPosition = offset * 8;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the end of data is reached
+     */
+    public int readBit() {
+        if (bitPosition >= limit) {
+            throw new IllegalArgumentException("Unexpected end of data");
+        }
+        int b = data[bitPosition >> 3] >> (7 - (bitPosition & 7));
+        ++bitPosition;
+        return b & 1;
+    }
+
+    /**
+     * Read {@code count} bits (at most 32) as an unsigned value.
+     */
+    public long readBits(int count) {
+        long value = 0;
+        for (int i = 0; i < count; ++i) {
+            value = (value << 1) | readBit();
+        }
+        return value;
+    }
+
+    /**
+     * Read an unsigned Exp-Golomb code ({@code ue(v)}).
+     */
+    public long readUe() {
+        int leadingZeros = 0;
+        while (readBit() == 0) {
+            ++leadingZeros;
+            if (leadingZeros > 32) {
+                throw new IllegalArgumentException("Invalid Exp-Golomb code");
+            }
+        }
+        return (1L << leadingZeros) - 1 + readBits(leadingZeros);
+    }
+
+    /**
+     * Read a signed Exp-Golomb code ({@code se(v)}).
+     */
+    public long readSe() {
+        return toSigned(readUe());
+    }
+
+    /**
+     * Convert the code number of a signed Exp-Golomb code to its value.
+     */
+    public static long toSigned(long codeNum) {
+        return (codeNum & 1) != 0 ? (codeNum + 1) / 2 : -(codeNum / 2);
+    }
+}
@@ -0,0 +1,59 @@
+package com.genymobile.scrcpy;
+
+import java.util.Arrays;
+
+/**
+ * Write bits and Exp-Golomb codes into a raw byte sequence payload (without emulation prevention bytes), MSB first.
+ */
+public final class BitWriter {
+
+    private byte[] data = new byte[64];
+    private int bitPosition;
+
+    public void writeBit(int bit) {
+        int index = bitPosition >> 3;
+        if (index == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        if (bit != 0) {
+            data[index] |= 0x80 >> (bitPosition & 7);
+        }
+        ++bitPosition;
+    }
+
+    /**
+     * Write the {@code count} (at most 32) least significant bits of {@code value}.
+     */
+    public void writeBits(long value, int count) {
+        for (int i = count - 1; i >= 0; --i) {
+            writeBit((int) (value >> i) & 1);
+        }
+    }
+
+    /**
+     * Write an unsigned Exp-Golomb code ({@code ue(v)}).
+     */
+    public void writeUe(long value) {
+        long codeNum = value + 1;
+        int bits = 64 - Long.numberOfLeadingZeros(codeNum);
+        writeBits(0, bits - 1);
+        writeBits(codeNum, bits);
+    }
+
+    /**
+     * Write the RBSP trailing bits: a stop bit, then zeros up to the next byte boundary.
+     */
+    public void writeTrailingBits() {
+        writeBit(1);
+        while ((bitPosition & 7) != 0) {
+            writeBit(0);
+        }
+    }
+
+    /**
+     * Return the data written (the last byte is padded with zeros).
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, (bitPosition + 7) >> 3);
+    }
+}
@@ -0,0 +1,74 @@
+package com.genymobile.scrcpy;
+
+/**
+ * Track the bit rate applied to the codec: the target bit rate (requested by the client or by the adaptive bit rate controller), boosted
+ * during a refine.
+ * <p>
+ * A target change during a refine is deferred until the refine ends, so that the refine key frame is encoded with the boosted bit rate.
+ * <p>
+ * The methods return the bit rate to apply to the codec, so that the caller is the only one to change it (from the output thread).
+ */
+public final class CodecBitRate {
+
+    private final int refineFactor;
+
+    // the bit rate currently applied to the codec
+    private int bitRate;
+    private boolean refining;
+
+    /**
+     * Create a tracker.
+     *
+     * @param refineFactor the factor applied to the target bit rate during a refine
+     */
+    public CodecBitRate(int refineFactor) {
+        this.refineFactor = refineFactor;
+    }
+
+    /**
+     * Reset the state when the codec is configured with the target bit rate.
+     */
+    public void reset(int targetBitRate) {
+        bitRate = targetBitRate;
+        refining = false;
+    }
+
+    /**
+     * Follow the target bit rate (ignored during a refine).
+     *
+     * @return the bit rate to apply, or 0 if it must not be changed
+     */
+    public int update(int targetBitRate) {
+        if (refining || targetBitRate == bitRate) {
+            return 0;
+        }
+        bitRate = targetBitRate;
+        return bitRate;
+    }
+
+    /**
+     * Boost the target bit rate for a refine.
+     *
+     * @return the bit rate to apply
+     */
+    public int startRefine(int targetBitRate) {
+        refining = true;
+        bitRate = (int) Math.min((long) targetBitRate * refineFactor, Integer.MAX_VALUE);
+        return bitRate;
+    }
+
+    /**
+     * Restore the target bit rate at the end of a refine (it may have been changed during the refine).
+     *
+     * @return the bit rate to apply
+     */
+    public int endRefine(int targetBitRate) {
+        refining = false;
+        bitRate = targetBitRate;
+        return bitRate;
+    }
+
+    public boolean isRefining() {
+        return refining;
+    }
+}
@@ -0,0 +1,207 @@
+package com.genymobile.scrcpy;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Drive a {@link MediaCodec} in asynchronous mode.
+ * <p>
+ * All the codec events (output buffers, format changes, errors) and the restart signals (typically on device rotation) are handled
+ * sequentially on a single dedicated looper thread, so that no thread is ever blocked in {@code dequeueOutputBuffer()}.
+ * <p>
+ * The looper thread is reused for all the successive codec sessions (one per rotation), and must be released by {@link #quit()}.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public final class CodecEventLoop {
+
+    public interface Listener {
+        /**
+         * Called on the looper thread for every output buffer.
+         * <p>
+         * The buffer is released to the codec once this method returns.
+         */
+        void onOutputBuffer(ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo) throws IOException;
+
+        /**
+         * Called on the looper thread to know whether the current session must be restarted (e.g. on rotation).
+         */
+        boolean consumeRestartRequest();
+    }
+
+    private final HandlerThread thread = new HandlerThread("scrcpy-encoder");
+    private final Handler handler;
+
+    private final Runnable checkRestartRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Session s = session;
+            if (s != null) {
+                s.checkRestart();
+            }
+        }
+    };
+
+    // written by the encoding thread, read by the looper thread
+    private volatile Session session;
+
+    public CodecEventLoop() {
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Register the callback for a new codec session.
+     * <p>
+     * Must be called before {@code codec.configure()}.
+     */
+    public void prepare(MediaCodec codec, Listener listener) {
+        Session s = new Session(listener);
+        codec.setCallback(s, handler);
+        session = s;
+    }
+
+    /**
+     * Post an event on the looper to check whether the current session must be restarted.
+     * <p>
+     * May be called from any thread.
+     */
+    public void wakeUp() {
+        handler.post(checkRestartRunnable);
+    }
+
+    /**
+     * Block until the current session terminates.
+     *
+     * @return {@code true} if the codec must be restarted, {@code false} on end of stream
+     * @throws IOException if the output could not be written (typically on close)
+     */
+    public boolean await() throws IOException {
+        Session s = session;
+        try {
+            return s.await();
+        } finally {
+            session = null;
+        }
+    }
+
+    /**
+     * Stop the looper thread, without waiting for the pending events to be processed.
+     */
+    public void quit() {
+        thread.quit();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Session extends MediaCodec.Callback {
+
+        private final Listener listener;
+
+        // only accessed from the looper thread
+        private boolean finished;
+
+        // guarded by this
+        private boolean terminated;
+        private boolean restart;
+        private IOException ioException;
+        private RuntimeException runtimeException;
+
+        Session(Listener listener) {
+            this.listener = listener;
+        }
+
+        void checkRestart() {
+            if (!finished && listener.consumeRestartRequest()) {
+                finish(true, null, null);
+            }
+        }
+
+        @Override
+        public void onInputBufferAvailable(MediaCodec codec, int index) {
+            // the input is a surface
+        }
+
+        @Override
+        public void onOutputBufferAvailable(MediaCodec codec, int index, MediaCodec.BufferInfo bufferInfo) {
+            if (finished) {
+                // the session is terminating, the codec will be stopped
+                return;
+            }
+
+            try {
+                if (listener.consumeRestartRequest()) {
+                    // must restart encoding with new size
+                    codec.releaseOutputBuffer(index, false);
+                    finish(true, null, null);
+                    return;
+                }
+
+                try {
+                    ByteBuffer codecBuffer = codec.getOutputBuffer(index);
+                    listener.onOutputBuffer(codecBuffer, bufferInfo);
+                } finally {
+                    codec.releaseOutputBuffer(index, false);
+                }
+
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    finish(false, null, null);
+                }
+            } catch (IOException e) {
+                finish(false, e, null);
+            } catch (RuntimeException e) {
+                finish(false, null, e);
+            }
+        }
+
+        @Override
+        public void onError(MediaCodec codec, MediaCodec.CodecException e) {
+            if (!finished) {
+                finish(false, null, e);
+            }
+        }
+
+        @Override
+        public void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
+            Ln.d("Output format changed: " + format);
+        }
+
+        private void finish(boolean restartRequested, IOException ioe, RuntimeException re) {
+            finished = true;
+            synchronized (this) {
+                terminated = true;
+                restart = restartRequested;
+                ioException = ioe;
+                runtimeException = re;
+                notify();
+            }
+        }
+
+        synchronized boolean await() throws IOException {
+            try {
+                while (!terminated) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            if (ioException != null) {
+                throw ioException;
+            }
+            if (runtimeException != null) {
+                throw runtimeException;
+            }
+            return restart;
+        }
+    }
+}
@@ -16,6 +16,14 @@ public final class ControlMessage {
     public static final int TYPE_SET_CLIPBOARD = 8;
     public static final int TYPE_SET_SCREEN_POWER_MODE = 9;
     public static final int TYPE_ROTATE_DEVICE = 10;
+    public static final int TYPE_REQUEST_KEY_FRAME = 11;
+    public static final int TYPE_SET_MAX_FPS = 12;
+    public static final int TYPE_SET_BIT_RATE = 13;
+    public static final int TYPE_SET_MAX_SIZE = 14;
+    public static final int TYPE_SET_CROP = 15;
+    public static final int TYPE_PAUSE_VIDEO = 16;
+    public static final int TYPE_RESUME_VIDEO = 17;
+    public static final int TYPE_SAVE_REPLAY = 18;
 
     public static final int FLAGS_PASTE = 1;
 
@@ -31,6 +39,12 @@ public final class ControlMessage {
     private int hScroll;
     private int vScroll;
     private int flags;
+    private int value; // max fps, bit rate, max size or replay duration (in seconds)
+    // the crop rectangle, empty to disable cropping
+    private int cropLeft;
+    private int cropTop;
+    private int cropWidth;
+    private int cropHeight;
 
     private ControlMessage() {
     }
@@ -91,6 +105,50 @@ public final class ControlMessage {
         return msg;
     }
 
+    public static ControlMessage createSetMaxFps(int maxFps) {
+        ControlMessage msg = new ControlMessage();
+        msg.type = TYPE_SET_MAX_FPS;
+        msg.value = maxFps;
+        return msg;
+    }
+
+    public static ControlMessage createSetBitRate(int bitRate) {
+        ControlMessage msg = new ControlMessage();
+        msg.type = TYPE_SET_BIT_RATE;
+        msg.value = bitRate;
+        return msg;
+    }
+
+    public static ControlMessage createSetMaxSize(int maxSize) {
+        ControlMessage msg = new ControlMessage();
+        msg.type = TYPE_SET_MAX_SIZE;
+        msg.value = maxSize;
+        return msg;
+    }
+
+    /**
+     * Create a message to set the crop rectangle, in device coordinates (an empty rectangle disables cropping).
+     */
+    public static ControlMessage createSetCrop(int left, int top, int width, int height) {
+        ControlMessage msg = new ControlMessage();
+        msg.type = TYPE_SET_CROP;
+        msg.cropLeft = left;
+        msg.cropTop = top;
+        msg.cropWidth = width;
+        msg.cropHeight = height;
+        return msg;
+    }
+
+    /**
+     * @param duration the duration to save, in seconds (0 to save all the buffered packets)
+     */
+    public static ControlMessage createSaveReplay(int duration) {
+        ControlMessage msg = new ControlMessage();
+        msg.type = TYPE_SAVE_REPLAY;
+        msg.value = duration;
+        return msg;
+    }
+
     public static ControlMessage createEmpty(int type) {
         ControlMessage msg = new ControlMessage();
         msg.type = type;
@@ -144,4 +202,31 @@ public final class ControlMessage {
     public int getFlags() {
         return flags;
     }
+
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Indicate whether the crop rectangle is not empty (an empty crop disables cropping).
+     */
+    public boolean hasCrop() {
+        return cropWidth != 0 && cropHeight != 0;
+    }
+
+    public int getCropLeft() {
+        return cropLeft;
+    }
+
+    public int getCropTop() {
+        return cropTop;
+    }
+
+    public int getCropWidth() {
+        return cropWidth;
+    }
+
+    public int getCropHeight() {
+        return cropHeight;
+    }
 }
@@ -13,6 +13,11 @@ public class ControlMessageReader {
     static final int INJECT_SCROLL_EVENT_PAYLOAD_LENGTH = 20;
     static final int SET_SCREEN_POWER_MODE_PAYLOAD_LENGTH = 1;
     static final int SET_CLIPBOARD_FIXED_PAYLOAD_LENGTH = 1;
+    static final int SET_MAX_FPS_PAYLOAD_LENGTH = 2;
+    static final int SET_BIT_RATE_PAYLOAD_LENGTH = 4;
+    static final int SET_MAX_SIZE_PAYLOAD_LENGTH = 2;
+    static final int SET_CROP_PAYLOAD_LENGTH = 8;
+    static final int SAVE_REPLAY_PAYLOAD_LENGTH = 2;
 
     public static final int CLIPBOARD_TEXT_MAX_LENGTH = 4092; // 4096 - 1 (type) - 1 (parse flag) - 2 (length)
     public static final int INJECT_TEXT_MAX_LENGTH = 300;
@@ -73,11 +78,29 @@ public class ControlMessageReader {
             case ControlMessage.TYPE_SET_SCREEN_POWER_MODE:
                 msg = parseSetScreenPowerMode();
                 break;
+            case ControlMessage.TYPE_SET_MAX_FPS:
+                msg = parseSetMaxFps();
+                break;
+            case ControlMessage.TYPE_SET_BIT_RATE:
+                msg = parseSetBitRate();
+                break;
+            case ControlMessage.TYPE_SET_MAX_SIZE:
+                msg = parseSetMaxSize();
+                break;
+            case ControlMessage.TYPE_SET_CROP:
+                msg = parseSetCrop();
+                break;
+            case ControlMessage.TYPE_SAVE_REPLAY:
+                msg = parseSaveReplay();
+                break;
             case ControlMessage.TYPE_BACK_OR_SCREEN_ON:
             case ControlMessage.TYPE_EXPAND_NOTIFICATION_PANEL:
             case ControlMessage.TYPE_COLLAPSE_NOTIFICATION_PANEL:
             case ControlMessage.TYPE_GET_CLIPBOARD:
             case ControlMessage.TYPE_ROTATE_DEVICE:
+            case ControlMessage.TYPE_REQUEST_KEY_FRAME:
+            case ControlMessage.TYPE_PAUSE_VIDEO:
+            case ControlMessage.TYPE_RESUME_VIDEO:
                 msg = ControlMessage.createEmpty(type);
                 break;
             default:
@@ -168,6 +191,49 @@ public class ControlMessageReader {
         return ControlMessage.createSetScreenPowerMode(mode);
     }
 
+    private ControlMessage parseSetMaxFps() {
+        if (buffer.remaining() < SET_MAX_FPS_PAYLOAD_LENGTH) {
+            return null;
+        }
+        int maxFps = toUnsigned(buffer.getShort());
+        return ControlMessage.createSetMaxFps(maxFps);
+    }
+
+    private ControlMessage parseSetBitRate() {
+        if (buffer.remaining() < SET_BIT_RATE_PAYLOAD_LENGTH) {
+            return null;
+        }
+        int bitRate = buffer.getInt();
+        return ControlMessage.createSetBitRate(bitRate);
+    }
+
+    private ControlMessage parseSetMaxSize() {
+        if (buffer.remaining() < SET_MAX_SIZE_PAYLOAD_LENGTH) {
+            return null;
+        }
+        int maxSize = toUnsigned(buffer.getShort());
+        return ControlMessage.createSetMaxSize(maxSize);
+    }
+
+    private ControlMessage parseSetCrop() {
+        if (buffer.remaining() < SET_CROP_PAYLOAD_LENGTH) {
+            return null;
+        }
+        int left = toUnsigned(buffer.getShort());
+        int top = toUnsigned(buffer.getShort());
+        int width = toUnsigned(buffer.getShort());
+        int height = toUnsigned(buffer.getShort());
+        return ControlMessage.createSetCrop(left, top, width, height);
+    }
+
+    private ControlMessage parseSaveReplay() {
+        if (buffer.remaining() < SAVE_REPLAY_PAYLOAD_LENGTH) {
+            return null;
+        }
+        int duration = toUnsigned(buffer.getShort());
+        return ControlMessage.createSaveReplay(duration);
+    }
+
     private static Position readPosition(ByteBuffer buffer) {
         int x = buffer.getInt();
         int y = buffer.getInt();
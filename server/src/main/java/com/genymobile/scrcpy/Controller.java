@@ -1,5 +1,6 @@
 package com.genymobile.scrcpy;
 
+import android.graphics.Rect;
 import android.os.Build;
 import android.os.SystemClock;
 import android.view.InputDevice;
@@ -16,6 +17,9 @@ public class Controller {
     private final Device device;
     private final DesktopConnection connection;
     private final DeviceMessageSender sender;
+    private final ScreenEncoder screenEncoder;
+    // null if the instant replay is disabled
+    private InstantReplay instantReplay;
 
     private final KeyCharacterMap charMap = KeyCharacterMap.load(KeyCharacterMap.VIRTUAL_KEYBOARD);
 
@@ -24,9 +28,10 @@ public class Controller {
     private final MotionEvent.PointerProperties[] pointerProperties = new MotionEvent.PointerProperties[PointersState.MAX_POINTERS];
     private final MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[PointersState.MAX_POINTERS];
 
-    public Controller(Device device, DesktopConnection connection) {
+    public Controller(Device device, DesktopConnection connection, ScreenEncoder screenEncoder) {
         this.device = device;
         this.connection = connection;
+        this.screenEncoder = screenEncoder;
         initPointers();
         sender = new DeviceMessageSender(connection);
     }
@@ -60,11 +65,20 @@ public class Controller {
             SystemClock.sleep(500);
         }
 
-        while (true) {
-            handleEvent();
+        try {
+            while (true) {
+                handleEvent();
+            }
+        } finally {
+            // while paused, nothing is written to the video socket, so the connection close would never be detected
+            screenEncoder.setPaused(false);
         }
     }
 
+    public void setInstantReplay(InstantReplay instantReplay) {
+        this.instantReplay = instantReplay;
+    }
+
     public DeviceMessageSender getSender() {
         return sender;
     }
@@ -74,26 +88,31 @@ public class Controller {
         switch (msg.getType()) {
             case ControlMessage.TYPE_INJECT_KEYCODE:
                 if (device.supportsInputEvents()) {
+                    screenEncoder.wakeUp();
                     injectKeycode(msg.getAction(), msg.getKeycode(), msg.getMetaState());
                 }
                 break;
             case ControlMessage.TYPE_INJECT_TEXT:
                 if (device.supportsInputEvents()) {
+                    screenEncoder.wakeUp();
                     injectText(msg.getText());
                 }
                 break;
             case ControlMessage.TYPE_INJECT_TOUCH_EVENT:
                 if (device.supportsInputEvents()) {
+                    screenEncoder.wakeUp();
                     injectTouch(msg.getAction(), msg.getPointerId(), msg.getPosition(), msg.getPressure(), msg.getButtons());
                 }
                 break;
             case ControlMessage.TYPE_INJECT_SCROLL_EVENT:
                 if (device.supportsInputEvents()) {
+                    screenEncoder.wakeUp();
                     injectScroll(msg.getPosition(), msg.getHScroll(), msg.getVScroll());
                 }
                 break;
             case ControlMessage.TYPE_BACK_OR_SCREEN_ON:
                 if (device.supportsInputEvents()) {
+                    screenEncoder.wakeUp();
                     pressBackOrTurnScreenOn();
                 }
                 break;
@@ -125,11 +144,46 @@ public class Controller {
             case ControlMessage.TYPE_ROTATE_DEVICE:
                 device.rotateDevice();
                 break;
+            case ControlMessage.TYPE_REQUEST_KEY_FRAME:
+                if (!screenEncoder.requestKeyFrame()) {
+                    Ln.d("Key frame request ignored");
+                }
+                break;
+            case ControlMessage.TYPE_SET_MAX_FPS:
+                setMaxFps(msg.getValue());
+                break;
+            case ControlMessage.TYPE_SET_BIT_RATE:
+                setBitRate(msg.getValue());
+                break;
+            case ControlMessage.TYPE_SET_MAX_SIZE:
+                setMaxSize(msg.getValue());
+                break;
+            case ControlMessage.TYPE_SET_CROP:
+                setCrop(msg);
+                break;
+            case ControlMessage.TYPE_PAUSE_VIDEO:
+                screenEncoder.setPaused(true);
+                break;
+            case ControlMessage.TYPE_RESUME_VIDEO:
+                screenEncoder.setPaused(false);
+                break;
+            case ControlMessage.TYPE_SAVE_REPLAY:
+                saveReplay(msg.getValue());
+                break;
             default:
                 // do nothing
         }
     }
 
+    private void saveReplay(int duration) {
+        if (instantReplay == null) {
+            Ln.w("Instant replay is disabled (no replay buffer)");
+            sender.pushReplaySaved(null);
+            return;
+        }
+        instantReplay.save(duration, sender);
+    }
+
     private boolean injectKeycode(int action, int keycode, int metaState) {
         return device.injectKeyEvent(action, keycode, 0, metaState);
     }
@@ -242,4 +296,46 @@ public class Controller {
 
         return ok;
     }
+
+    private void setMaxFps(int maxFps) {
+        // the video size may depend on the frame rate supported by the encoder
+        device.setMaxFps(maxFps);
+        screenEncoder.setMaxFps(maxFps);
+        Ln.i("Max fps set to " + maxFps);
+    }
+
+    private void setMaxSize(int requestedMaxSize) {
+        if (requestedMaxSize > 0 && requestedMaxSize < 8) {
+            // it would be rounded to 0, which means no limit
+            Ln.w("Invalid max size: " + requestedMaxSize);
+            return;
+        }
+        int maxSize = requestedMaxSize & ~7; // multiple of 8
+        screenEncoder.setMaxSize(maxSize);
+        Ln.i("Max size set to " + maxSize);
+    }
+
+    private void setCrop(ControlMessage msg) {
+        Rect rect = null;
+        if (msg.hasCrop()) {
+            int left = msg.getCropLeft();
+            int top = msg.getCropTop();
+            rect = new Rect(left, top, left + msg.getCropWidth(), top + msg.getCropHeight());
+        }
+        // the events are converted with the new content rect immediately
+        if (!device.setCrop(rect)) {
+            Ln.w("Crop ignored");
+            return;
+        }
+        screenEncoder.updateProjection(device.getScreenInfo());
+    }
+
+    private void setBitRate(int bitRate) {
+        if (bitRate <= 0) {
+            Ln.w("Invalid bit rate: " + bitRate);
+            return;
+        }
+        screenEncoder.setBitRate(bitRate);
+        Ln.i("Bit rate set to " + bitRate);
+    }
 }
@@ -16,6 +16,7 @@ public final class DesktopConnection implements Closeable {
     private static final int DEVICE_NAME_FIELD_LENGTH = 64;
 
     private static final String SOCKET_NAME = "scrcpy";
+    private static final String SUBSCRIBER_SOCKET_NAME = "scrcpy_video";
 
     private final LocalSocket videoSocket;
     private final FileDescriptor videoFd;
@@ -71,10 +72,33 @@ public final class DesktopConnection implements Closeable {
 
         DesktopConnection connection = new DesktopConnection(videoSocket, controlSocket);
         Size videoSize = device.getScreenInfo().getVideoSize();
-        connection.send(Device.getDeviceName(), videoSize.getWidth(), videoSize.getHeight());
+        send(connection.videoFd, Device.getDeviceName(), videoSize.getWidth(), videoSize.getHeight());
         return connection;
     }
 
+    /**
+     * Open the socket on which additional video-only subscribers may connect (always in forward mode, independently of the main
+     * connection).
+     */
+    public static LocalServerSocket openSubscriberServer() throws IOException {
+        return new LocalServerSocket(SUBSCRIBER_SOCKET_NAME);
+    }
+
+    /**
+     * Wait for a video-only subscriber, and send it the same initial data as to the main client (device name and video size).
+     */
+    public static LocalSocket acceptSubscriber(LocalServerSocket serverSocket, Device device) throws IOException {
+        LocalSocket socket = serverSocket.accept();
+        try {
+            Size videoSize = device.getScreenInfo().getVideoSize();
+            send(socket.getFileDescriptor(), Device.getDeviceName(), videoSize.getWidth(), videoSize.getHeight());
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
     public void close() throws IOException {
         videoSocket.shutdownInput();
         videoSocket.shutdownOutput();
@@ -84,7 +108,7 @@ public final class DesktopConnection implements Closeable {
         controlSocket.close();
     }
 
-    private void send(String deviceName, int width, int height) throws IOException {
+    private static void send(FileDescriptor fd, String deviceName, int width, int height) throws IOException {
         byte[] buffer = new byte[DEVICE_NAME_FIELD_LENGTH + 4];
 
         byte[] deviceNameBytes = deviceName.getBytes(StandardCharsets.UTF_8);
@@ -96,7 +120,7 @@ public final class DesktopConnection implements Closeable {
         buffer[DEVICE_NAME_FIELD_LENGTH + 1] = (byte) width;
         buffer[DEVICE_NAME_FIELD_LENGTH + 2] = (byte) (height >> 8);
         buffer[DEVICE_NAME_FIELD_LENGTH + 3] = (byte) height;
-        IO.writeFully(videoFd, buffer, 0, buffer.length);
+        IO.writeFully(fd, buffer, 0, buffer.length);
     }
 
     public FileDescriptor getVideoFd() {
@@ -35,6 +35,10 @@ public final class Device {
     private final ServiceManager serviceManager = new ServiceManager();
 
     private ScreenInfo screenInfo;
+    // the parameters of the video size computation, the video size is recomputed whenever one of them changes
+    private int maxSize;
+    private int maxFps;
+    private VideoGeometry.Constraints videoConstraints = VideoGeometry.DEFAULT_CONSTRAINTS;
     private RotationListener rotationListener;
     private ClipboardListener clipboardListener;
     private final AtomicBoolean isSettingClipboard = new AtomicBoolean();
@@ -44,6 +48,8 @@ public final class Device {
      */
     private final int displayId;
 
+    private final int lockedVideoOrientation;
+
     /**
      * The surface flinger layer stack associated with this logical display
      */
@@ -61,14 +67,18 @@ public final class Device {
 
         int displayInfoFlags = displayInfo.getFlags();
 
-        screenInfo = ScreenInfo.computeScreenInfo(displayInfo, options.getCrop(), options.getMaxSize(), options.getLockedVideoOrientation());
+        maxSize = options.getMaxSize();
+        maxFps = options.getMaxFps();
+        lockedVideoOrientation = options.getLockedVideoOrientation();
+        screenInfo = ScreenInfo.computeScreenInfo(displayInfo, options.getCrop(), maxSize, lockedVideoOrientation);
         layerStack = displayInfo.getLayerStack();
 
         serviceManager.getWindowManager().registerRotationWatcher(new IRotationWatcher.Stub() {
             @Override
             public void onRotationChanged(int rotation) {
                 synchronized (Device.this) {
-                    screenInfo = screenInfo.withDeviceRotation(rotation);
+                    // the encoder constraints may differ between portrait and landscape
+                    screenInfo = screenInfo.withDeviceRotation(rotation).withVideoGeometry(maxSize, maxFps, videoConstraints);
 
                     // notify
                     if (rotationListener != null) {
@@ -114,6 +124,57 @@ public final class Device {
         return screenInfo;
     }
 
+    /**
+     * Change the max size of the video (the video size is recomputed immediately, the encoder must be restarted to apply it).
+     *
+     * @param maxSize the new max size (0 for no limit)
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        screenInfo = screenInfo.withVideoGeometry(maxSize, maxFps, videoConstraints);
+    }
+
+    /**
+     * Change the max frame rate, which may restrict the video sizes supported by the encoder (the video size is recomputed
+     * immediately).
+     *
+     * @param maxFps the new max frame rate (0 if not limited)
+     */
+    public synchronized void setMaxFps(int maxFps) {
+        this.maxFps = maxFps;
+        screenInfo = screenInfo.withVideoGeometry(maxSize, maxFps, videoConstraints);
+    }
+
+    /**
+     * Change the crop rectangle (the screen info is recomputed immediately, so that the events are converted with the new content rect).
+     *
+     * @param crop the crop rectangle, expressed in the natural device orientation (or {@code null} to disable cropping)
+     * @return {@code false} if the crop rectangle does not intersect the display (it is ignored)
+     */
+    public synchronized boolean setCrop(Rect crop) {
+        DisplayInfo displayInfo = serviceManager.getDisplayManager().getDisplayInfo(displayId);
+        if (displayInfo == null) {
+            return false;
+        }
+        ScreenInfo newScreenInfo = ScreenInfo.computeScreenInfo(displayInfo, crop, maxSize, lockedVideoOrientation)
+                .withVideoGeometry(maxSize, maxFps, videoConstraints);
+        if (newScreenInfo.getContentRect().isEmpty()) {
+            return false;
+        }
+        screenInfo = newScreenInfo;
+        return true;
+    }
+
+    /**
+     * Set the constraints of the encoder on the video size (the video size is recomputed immediately).
+     *
+     * @param videoConstraints the encoder constraints
+     */
+    public synchronized void setVideoConstraints(VideoGeometry.Constraints videoConstraints) {
+        this.videoConstraints = videoConstraints;
+        screenInfo = screenInfo.withVideoGeometry(maxSize, maxFps, videoConstraints);
+    }
+
     public int getLayerStack() {
         return layerStack;
     }
@@ -3,9 +3,13 @@ package com.genymobile.scrcpy;
 public final class DeviceMessage {
 
     public static final int TYPE_CLIPBOARD = 0;
+    public static final int TYPE_VIDEO_SIZE = 1;
+    public static final int TYPE_REPLAY_SAVED = 2;
 
     private int type;
     private String text;
+    private int width;
+    private int height;
 
     private DeviceMessage() {
     }
@@ -17,6 +21,24 @@ public final class DeviceMessage {
         return event;
     }
 
+    public static DeviceMessage createVideoSize(Size size) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_VIDEO_SIZE;
+        event.width = size.getWidth();
+        event.height = size.getHeight();
+        return event;
+    }
+
+    /**
+     * @param path the path of the saved file on the device, or {@code null} if the replay could not be saved
+     */
+    public static DeviceMessage createReplaySaved(String path) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_REPLAY_SAVED;
+        event.text = path != null ? path : "";
+        return event;
+    }
+
     public int getType() {
         return type;
     }
@@ -24,4 +46,12 @@ public final class DeviceMessage {
     public String getText() {
         return text;
     }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
 }
@@ -7,6 +7,9 @@ public final class DeviceMessageSender {
     private final DesktopConnection connection;
 
     private String clipboardText;
+    private Size videoSize;
+    private String replayPath;
+    private boolean replaySaved;
 
     public DeviceMessageSender(DesktopConnection connection) {
         this.connection = connection;
@@ -17,18 +20,48 @@ public final class DeviceMessageSender {
         notify();
     }
 
+    public synchronized void pushVideoSize(Size size) {
+        videoSize = size;
+        notify();
+    }
+
+    /**
+     * @param path the path of the saved file on the device, or {@code null} if the replay could not be saved
+     */
+    public synchronized void pushReplaySaved(String path) {
+        replayPath = path;
+        replaySaved = true;
+        notify();
+    }
+
     public void loop() throws IOException, InterruptedException {
         while (true) {
             String text;
+            Size size;
+            boolean saved;
+            String path;
             synchronized (this) {
-                while (clipboardText == null) {
+                while (clipboardText == null && videoSize == null && !replaySaved) {
                     wait();
                 }
                 text = clipboardText;
                 clipboardText = null;
+                size = videoSize;
+                videoSize = null;
+                saved = replaySaved;
+                replaySaved = false;
+                path = replayPath;
+                replayPath = null;
+            }
+            if (size != null) {
+                connection.sendDeviceMessage(DeviceMessage.createVideoSize(size));
+            }
+            if (text != null) {
+                connection.sendDeviceMessage(DeviceMessage.createClipboard(text));
+            }
+            if (saved) {
+                connection.sendDeviceMessage(DeviceMessage.createReplaySaved(path));
             }
-            DeviceMessage event = DeviceMessage.createClipboard(text);
-            connection.sendDeviceMessage(event);
         }
     }
 }
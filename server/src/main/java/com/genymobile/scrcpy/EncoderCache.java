@@ -0,0 +1,173 @@
+package com.genymobile.scrcpy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Persistent cache of the encoder selected for each video codec, to avoid enumerating and probing the encoders on every start.
+ * <p>
+ * The cache is stored next to the server (which is pushed on every start, while the cache file is kept). It is bound to the build
+ * fingerprint, so that it is invalidated automatically on system update.
+ */
+public final class EncoderCache {
+
+    public static final String DEFAULT_PATH = new File(new File(CleanUp.SERVER_PATH).getParentFile(), "scrcpy-encoders.cache").getPath();
+
+    private static final String KEY_FINGERPRINT = "fingerprint";
+
+    /**
+     * The properties of the encoder selected for a video codec.
+     */
+    public static final class Entry {
+        private final String encoderName;
+        private final int maxWidth;
+        private final int maxHeight;
+
+        public Entry(String encoderName, int maxWidth, int maxHeight) {
+            this.encoderName = encoderName;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+        }
+
+        public String getEncoderName() {
+            return encoderName;
+        }
+
+        /**
+         * Return the maximum width the encoder works with (in any orientation).
+         */
+        public int getMaxWidth() {
+            return maxWidth;
+        }
+
+        /**
+         * Return the maximum height the encoder works with (in any orientation).
+         */
+        public int getMaxHeight() {
+            return maxHeight;
+        }
+
+        /**
+         * Indicate whether the video size (in any orientation) fits in the maximum size the encoder works with.
+         */
+        public boolean accepts(Size size) {
+            int max = Math.max(size.getWidth(), size.getHeight());
+            int min = Math.min(size.getWidth(), size.getHeight());
+            return max <= Math.max(maxWidth, maxHeight) && min <= Math.min(maxWidth, maxHeight);
+        }
+
+        /**
+         * Return a copy with a different maximum size.
+         */
+        public Entry withMaxSize(int newMaxWidth, int newMaxHeight) {
+            return new Entry(encoderName, newMaxWidth, newMaxHeight);
+        }
+
+        @Override
+        public String toString() {
+            return encoderName + " (max " + maxWidth + "x" + maxHeight + ")";
+        }
+    }
+
+    private final File file;
+    private final String fingerprint;
+    private final Properties properties;
+
+    private EncoderCache(File file, String fingerprint, Properties properties) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.properties = properties;
+    }
+
+    /**
+     * Load the cache from a file.
+     * <p>
+     * If the file does not exist, is invalid or has been written for another fingerprint, the cache is empty.
+     *
+     * @param file        the cache file
+     * @param fingerprint the build fingerprint (typically {@code Build.FINGERPRINT})
+     */
+    public static EncoderCache load(File file, String fingerprint) {
+        Properties properties = new Properties();
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                Ln.w("Could not read encoder cache: " + e.getMessage());
+                properties.clear();
+            }
+            if (!fingerprint.equals(properties.getProperty(KEY_FINGERPRINT))) {
+                // written for another build, or corrupted
+                properties.clear();
+            }
+        }
+        properties.setProperty(KEY_FINGERPRINT, fingerprint);
+        return new EncoderCache(file, fingerprint, properties);
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Return the cached entry for the video codec, or {@code null} if there is none.
+     *
+     * @param mimeType the codec MIME type
+     */
+    public Entry get(String mimeType) {
+        String encoderName = properties.getProperty(mimeType + ".encoder");
+        if (encoderName == null) {
+            return null;
+        }
+        try {
+            int maxWidth = getInt(mimeType + ".maxWidth");
+            int maxHeight = getInt(mimeType + ".maxHeight");
+            return new Entry(encoderName, maxWidth, maxHeight);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private int getInt(String key) {
+        return Integer.parseInt(properties.getProperty(key));
+    }
+
+    public void put(String mimeType, Entry entry) {
+        properties.setProperty(mimeType + ".encoder", entry.getEncoderName());
+        properties.setProperty(mimeType + ".maxWidth", String.valueOf(entry.getMaxWidth()));
+        properties.setProperty(mimeType + ".maxHeight", String.valueOf(entry.getMaxHeight()));
+    }
+
+    public void remove(String mimeType) {
+        properties.remove(mimeType + ".encoder");
+    }
+
+    /**
+     * Write the cache to its file.
+     * <p>
+     * The file is replaced atomically, so that a concurrent server never reads a partial file.
+     *
+     * @return {@code true} on success
+     */
+    public boolean save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                properties.store(out, "scrcpy encoder cache");
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Could not rename " + tmp + " to " + file);
+            }
+            return true;
+        } catch (IOException e) {
+            Ln.w("Could not write encoder cache: " + e.getMessage());
+            tmp.delete();
+            return false;
+        }
+    }
+}
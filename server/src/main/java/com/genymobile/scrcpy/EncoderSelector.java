@@ -0,0 +1,279 @@
+package com.genymobile.scrcpy;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.util.Range;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Select the video encoder among those listed by {@link MediaCodecList}, according to their capabilities.
+ * <p>
+ * The selection is stored in an {@link EncoderCache}, so that the encoders are not enumerated and probed again on the next start.
+ */
+public final class EncoderSelector {
+
+    /**
+     * The capabilities of an encoder which are relevant for the selection.
+     */
+    static final class Candidate {
+        private final String name;
+        private final boolean hardware;
+        private final boolean sizeSupported;
+        private final double maxFrameRate; // 0 if unknown
+        private final boolean bitRateSupported;
+
+        Candidate(String name, boolean hardware, boolean sizeSupported, double maxFrameRate, boolean bitRateSupported) {
+            this.name = name;
+            this.hardware = hardware;
+            this.sizeSupported = sizeSupported;
+            this.maxFrameRate = maxFrameRate;
+            this.bitRateSupported = bitRateSupported;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isSizeSupported() {
+            return sizeSupported;
+        }
+
+        int getScore() {
+            int score = 0;
+            if (hardware) {
+                score += 4;
+            }
+            if (maxFrameRate >= 60) {
+                score += 2;
+            } else if (maxFrameRate >= 30) {
+                score += 1;
+            }
+            if (bitRateSupported) {
+                score += 1;
+            }
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (hardware=" + hardware + ", maxFrameRate=" + maxFrameRate + ", bitRateSupported=" + bitRateSupported + ", score="
+                    + getScore() + ")";
+        }
+    }
+
+    private EncoderSelector() {
+        // not instantiable
+    }
+
+    /**
+     * Create the encoder.
+     *
+     * @param codec       the video codec
+     * @param encoderName the name of the encoder to use, or {@code null} to select the best one automatically
+     * @param videoSize   the initial video size (the encoder must also support the rotated size)
+     * @param bitRate     the requested bit rate
+     * @param cache         the cache of the previous selections (may be {@code null})
+     * @return the encoder (not configured)
+     * @throws InvalidEncoderException if the requested encoder does not exist
+     */
+    public static MediaCodec createEncoder(VideoCodec codec, String encoderName, Size videoSize, int bitRate, EncoderCache cache)
+            throws IOException {
+        String mimeType = codec.getMimeType();
+
+        if (encoderName == null && cache != null) {
+            EncoderCache.Entry entry = cache.get(mimeType);
+            if (entry != null && entry.accepts(videoSize)) {
+                try {
+                    MediaCodec mediaCodec = MediaCodec.createByCodecName(entry.getEncoderName());
+                    Ln.i("Using encoder: " + entry.getEncoderName() + " (cached)");
+                    return mediaCodec;
+                } catch (IOException | IllegalArgumentException e) {
+                    Ln.w("Could not create the cached encoder " + entry.getEncoderName() + ": " + e.getMessage());
+                    cache.remove(mimeType);
+                }
+            }
+        }
+
+        List<MediaCodecInfo> encoders = listEncoders(mimeType);
+
+        if (encoderName != null) {
+            for (MediaCodecInfo info : encoders) {
+                if (info.getName().equals(encoderName)) {
+                    Ln.i("Using encoder: " + encoderName);
+                    return MediaCodec.createByCodecName(encoderName);
+                }
+            }
+            String[] availableEncoders = new String[encoders.size()];
+            for (int i = 0; i < availableEncoders.length; ++i) {
+                availableEncoders[i] = encoders.get(i).getName();
+            }
+            throw new InvalidEncoderException(encoderName, mimeType, availableEncoders);
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (MediaCodecInfo info : encoders) {
+            candidates.add(probe(info, mimeType, videoSize, bitRate));
+        }
+
+        List<Candidate> ranked = rank(candidates);
+        if (ranked.isEmpty()) {
+            // let the platform choose
+            Ln.w("No encoder found supporting " + videoSize.getWidth() + "x" + videoSize.getHeight() + " for " + mimeType);
+            return MediaCodec.createEncoderByType(mimeType);
+        }
+
+        if (Ln.isEnabled(Ln.Level.DEBUG)) {
+            for (Candidate candidate : ranked) {
+                Ln.d("Encoder candidate: " + candidate);
+            }
+        }
+
+        Candidate selected = ranked.get(0);
+        String name = selected.getName();
+        Ln.i("Using encoder: " + name);
+        MediaCodec mediaCodec = MediaCodec.createByCodecName(name);
+
+        if (cache != null) {
+            for (MediaCodecInfo info : encoders) {
+                if (info.getName().equals(name)) {
+                    EncoderCache.Entry entry = createCacheEntry(info, mimeType);
+                    Ln.d("Caching encoder: " + entry);
+                    cache.put(mimeType, entry);
+                    cache.save();
+                    break;
+                }
+            }
+        }
+
+        return mediaCodec;
+    }
+
+    /**
+     * Return the constraints of the encoder on the video size.
+     */
+    public static VideoGeometry.Constraints getConstraints(MediaCodecInfo info, String mimeType) {
+        final MediaCodecInfo.VideoCapabilities caps = info.getCapabilitiesForType(mimeType).getVideoCapabilities();
+        return new VideoGeometry.Constraints() {
+            @Override
+            public int getWidthAlignment() {
+                return caps.getWidthAlignment();
+            }
+
+            @Override
+            public int getHeightAlignment() {
+                return caps.getHeightAlignment();
+            }
+
+            @Override
+            public boolean isSupported(int width, int height, int maxFps) {
+                if (maxFps > 0) {
+                    return caps.areSizeAndRateSupported(width, height, maxFps);
+                }
+                return caps.isSizeSupported(width, height);
+            }
+        };
+    }
+
+    private static EncoderCache.Entry createCacheEntry(MediaCodecInfo info, String mimeType) {
+        MediaCodecInfo.VideoCapabilities caps = info.getCapabilitiesForType(mimeType).getVideoCapabilities();
+        int maxWidth = caps.getSupportedWidths().getUpper();
+        int maxHeight = caps.getSupportedHeights().getUpper();
+        return new EncoderCache.Entry(info.getName(), maxWidth, maxHeight);
+    }
+
+    /**
+     * Sort the candidates supporting the video size by decreasing score.
+     * <p>
+     * The sort is stable: on equal scores, the {@link MediaCodecList} order (which reflects the platform preferences) is kept.
+     */
+    static List<Candidate> rank(List<Candidate> candidates) {
+        List<Candidate> result = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (candidate.isSizeSupported()) {
+                result.add(candidate);
+            }
+        }
+        Collections.sort(result, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate c1, Candidate c2) {
+                return Integer.compare(c2.getScore(), c1.getScore());
+            }
+        });
+        return result;
+    }
+
+    private static List<MediaCodecInfo> listEncoders(String mimeType) {
+        List<MediaCodecInfo> result = new ArrayList<>();
+        MediaCodecList list = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        for (MediaCodecInfo info : list.getCodecInfos()) {
+            if (info.isEncoder() && supportsType(info, mimeType)) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
+    private static boolean supportsType(MediaCodecInfo info, String mimeType) {
+        for (String type : info.getSupportedTypes()) {
+            if (type.equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Candidate probe(MediaCodecInfo info, String mimeType, Size videoSize, int bitRate) {
+        String name = info.getName();
+        boolean hardware = isHardwareAccelerated(info);
+        MediaCodecInfo.VideoCapabilities caps;
+        try {
+            caps = info.getCapabilitiesForType(mimeType).getVideoCapabilities();
+        } catch (IllegalArgumentException e) {
+            caps = null;
+        }
+        if (caps == null) {
+            return new Candidate(name, hardware, false, 0, false);
+        }
+
+        int width = videoSize.getWidth();
+        int height = videoSize.getHeight();
+        // the device may be rotated
+        boolean sizeSupported = caps.isSizeSupported(width, height) && caps.isSizeSupported(height, width);
+        double maxFrameRate = sizeSupported ? getMaxFrameRate(caps, width, height) : 0;
+        boolean bitRateSupported = caps.getBitrateRange().contains(bitRate);
+        return new Candidate(name, hardware, sizeSupported, maxFrameRate, bitRateSupported);
+    }
+
+    private static double getMaxFrameRate(MediaCodecInfo.VideoCapabilities caps, int width, int height) {
+        try {
+            Range<Double> range = null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                // measured by the vendor, more relevant than the theoretical limits
+                range = caps.getAchievableFrameRatesFor(width, height);
+            }
+            if (range == null) {
+                range = caps.getSupportedFrameRatesFor(width, height);
+            }
+            return range.getUpper();
+        } catch (IllegalArgumentException e) {
+            // unsupported size
+            return 0;
+        }
+    }
+
+    private static boolean isHardwareAccelerated(MediaCodecInfo info) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return info.isHardwareAccelerated();
+        }
+        // the software codecs provided by the platform
+        String name = info.getName();
+        return !name.startsWith("OMX.google.") && !name.startsWith("c2.android.");
+    }
+}
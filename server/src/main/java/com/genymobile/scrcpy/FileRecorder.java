@@ -0,0 +1,150 @@
+package com.genymobile.scrcpy;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Record the encoded stream on the device, along with the client socket: the raw packets (Annex-B) are written to a stream file, and
+ * the offsets of the codec configs and key frames are written to an index file (see {@link KeyFrameIndexWriter}).
+ * <p>
+ * The packets are copied into a bounded {@link SubscriberQueue} and written by a separate thread, so that a slow storage never blocks
+ * the encoder: if the queue is full, the packets are dropped until the next key frame (which is requested to the encoder).
+ * <p>
+ * Nothing needs to be finalized: the files are consistent after each packet, even if the server is killed.
+ */
+public final class FileRecorder implements PacketSink {
+
+    public static final String INDEX_SUFFIX = ".idx";
+
+    private final ScreenEncoder screenEncoder;
+    private final String path;
+
+    private final SubscriberQueue queue;
+    private final SharedPacket.Pool pool;
+    // only accessed by the encoder thread
+    private SharedPacket config;
+
+    private FileOutputStream streamOutput;
+    private FileOutputStream indexOutput;
+    private KeyFrameIndexWriter indexWriter;
+    private Thread thread;
+
+    /**
+     * Create a recorder.
+     *
+     * @param screenEncoder the encoder to request key frames to
+     * @param path          the path of the stream file on the device (the index file is written to the same path with
+     *                      {@link #INDEX_SUFFIX})
+     * @param queueCapacity the capacity of the queue of packets to write
+     */
+    public FileRecorder(ScreenEncoder screenEncoder, String path, int queueCapacity) {
+        this.screenEncoder = screenEncoder;
+        this.path = path;
+        // the config and the key frame must fit
+        int capacity = Math.max(queueCapacity, 2);
+        queue = new SubscriberQueue(capacity);
+        pool = new SharedPacket.Pool(capacity);
+    }
+
+    /**
+     * Open the files and start writing the packets, asynchronously.
+     */
+    public void start() throws IOException {
+        streamOutput = new FileOutputStream(path);
+        try {
+            indexOutput = new FileOutputStream(path + INDEX_SUFFIX);
+        } catch (IOException e) {
+            streamOutput.close();
+            throw e;
+        }
+        indexWriter = new KeyFrameIndexWriter(indexOutput);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loop();
+                } catch (IOException e) {
+                    Ln.e("Recording on the device failed", e);
+                } catch (InterruptedException e) {
+                    // stopped
+                } finally {
+                    queue.close();
+                    closeFiles();
+                }
+            }
+        }, "scrcpy-recorder");
+        thread.start();
+        Ln.i("Recording to " + path + " on the device");
+    }
+
+    private void loop() throws IOException, InterruptedException {
+        SharedPacket sharedPacket;
+        while ((sharedPacket = queue.take()) != null) {
+            try {
+                VideoPacket packet = sharedPacket.getPacket();
+                ByteBuffer data = sharedPacket.duplicateData();
+                int size = data.remaining();
+                IO.writeFully(streamOutput.getFD(), data);
+                indexWriter.add(packet.getPts(), packet.getFlags(), size);
+            } finally {
+                sharedPacket.release();
+            }
+        }
+    }
+
+    @Override
+    public void push(ByteBuffer prefix, ByteBuffer data, long pts, int flags) {
+        if (queue.isClosed()) {
+            return;
+        }
+
+        boolean isConfig = (flags & VideoPacket.FLAG_CONFIG) != 0;
+        SharedPacket packet = pool.obtain();
+        // the timing SEI is only meaningful for a live stream
+        packet.set(null, data, pts, flags & ~VideoPacket.FLAG_TIMING_SEI);
+        queue.offer(packet, config);
+        if (isConfig) {
+            // written before the next key frame if packets are dropped
+            if (config != null) {
+                config.release();
+            }
+            config = packet;
+        } else {
+            packet.release();
+            if (queue.isKeyFrameNeeded()) {
+                // rate-limited by the encoder
+                screenEncoder.requestKeyFrame();
+            }
+        }
+    }
+
+    /**
+     * Stop recording (the packets not written yet are dropped).
+     */
+    public void stop() {
+        if (thread == null) {
+            return;
+        }
+        queue.close();
+        // unblock take()
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            // ignore
+        }
+        Ln.i("Recording stopped: " + indexWriter.getStreamSize() + " bytes, " + indexWriter.getEntryCount() + " index entries ("
+                + queue.getDroppedCount() + " packets dropped)");
+    }
+
+    private void closeFiles() {
+        try {
+            streamOutput.close();
+            indexOutput.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.genymobile.scrcpy;
+
+/**
+ * Limit the frame rate of the encoded stream, for devices on which the encoder ignores the max fps (before Android 10).
+ * <p>
+ * After each frame sent, the encoder input is suspended until the next frame is allowed (see {@link #getInputSuspendDurationUs(long)}).
+ * The frames which still exceed the limit (already in the encoder when its input was suspended) are dropped if they are not used as
+ * reference by other frames (the others would break the decoding until the next key frame), or counted otherwise.
+ */
+public final class FrameRateLimiter {
+
+    // tolerate some jitter in the frame timestamps (10%)
+    private static final int TOLERANCE_PERCENT = 10;
+
+    private int maxFps;
+    private long minIntervalUs;
+
+    private long lastSentPts = -1;
+
+    private long sentCount;
+    private long droppedCount;
+    private long overLimitCount;
+
+    private long lastStatsTime = -1;
+    private long lastStatsSentCount;
+
+    /**
+     * @param maxFps the max frame rate (0 for no limit)
+     */
+    public FrameRateLimiter(int maxFps) {
+        setMaxFps(maxFps);
+    }
+
+    /**
+     * Change the max frame rate.
+     *
+     * @param newMaxFps the new max frame rate (0 for no limit)
+     */
+    public void setMaxFps(int newMaxFps) {
+        if (newMaxFps != maxFps) {
+            maxFps = newMaxFps;
+            minIntervalUs = newMaxFps > 0 ? 1_000_000L * (100 - TOLERANCE_PERCENT) / 100 / newMaxFps : 0;
+        }
+    }
+
+    public int getMaxFps() {
+        return maxFps;
+    }
+
+    /**
+     * Indicate whether a frame must be sent.
+     *
+     * @param ptsUs     the frame timestamp, in microseconds
+     * @param droppable {@code true} if the frame may be dropped (it is not used as reference by other frames, and is not a key frame)
+     * @return {@code true} if the frame must be sent, {@code false} if it must be dropped
+     */
+    public boolean accept(long ptsUs, boolean droppable) {
+        if (lastSentPts != -1 && ptsUs - lastSentPts < minIntervalUs) {
+            if (droppable) {
+                ++droppedCount;
+                return false;
+            }
+            ++overLimitCount;
+        }
+        lastSentPts = ptsUs;
+        ++sentCount;
+        return true;
+    }
+
+    /**
+     * Return how long the encoder input must be suspended after the last frame sent, so that the next captured frame respects the limit.
+     *
+     * @param nowUs the current time, in microseconds, in the time base of the frame timestamps
+     * @return the duration, in microseconds (0 if the input must not be suspended)
+     */
+    public long getInputSuspendDurationUs(long nowUs) {
+        if (minIntervalUs == 0 || lastSentPts == -1) {
+            return 0;
+        }
+        long duration = lastSentPts + minIntervalUs - nowUs;
+        // never suspend longer than a frame interval, even if the timestamps drift from the current time
+        return Math.max(0, Math.min(duration, minIntervalUs));
+    }
+
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Return the number of frames sent although they exceeded the limit, because they could not be dropped.
+     */
+    public long getOverLimitCount() {
+        return overLimitCount;
+    }
+
+    /**
+     * Return the stats to log if the interval since the last call (returning stats) has elapsed, or {@code null}.
+     *
+     * @param now        the current time, in milliseconds
+     * @param intervalMs the interval between two stats, in milliseconds
+     */
+    public String pollStats(long now, long intervalMs) {
+        if (lastStatsTime == -1) {
+            lastStatsTime = now;
+            lastStatsSentCount = sentCount;
+            return null;
+        }
+        long elapsed = now - lastStatsTime;
+        if (elapsed < intervalMs) {
+            return null;
+        }
+        long fps = (sentCount - lastStatsSentCount) * 1000 / elapsed;
+        lastStatsTime = now;
+        lastStatsSentCount = sentCount;
+        return "max=" + maxFps + ", fps=" + fps + ", sent=" + sentCount + ", dropped=" + droppedCount + ", overLimit=" + overLimitCount;
+    }
+}
@@ -0,0 +1,93 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keep the last codec config and all the packets since the last key frame, so that a late subscriber may start decoding immediately,
+ * instead of waiting for the next key frame.
+ * <p>
+ * The packets are stored in a {@link PacketStore}, reset on each key frame. If the packets since the last key frame do not fit, the
+ * cache is invalid until the next key frame (a late subscriber must then wait for a key frame).
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class GopCache {
+
+    public static final int DEFAULT_MAX_PACKETS = 1024;
+
+    private final PacketStore store;
+    // true if the cache contains all the packets since the last key frame
+    private boolean anchored;
+
+    /**
+     * Create a cache.
+     *
+     * @param capacity      the size of the buffer for the packets, in bytes
+     * @param maxPackets    the maximum number of packets
+     * @param maxConfigSize the maximum size of a codec config packet, in bytes
+     */
+    public GopCache(int capacity, int maxPackets, int maxConfigSize) {
+        store = new PacketStore(capacity, maxPackets, maxConfigSize);
+    }
+
+    /**
+     * Copy a packet (the concatenation of {@code prefix} and {@code data}) into the cache, if it is needed to decode the next packets.
+     * <p>
+     * The positions of {@code prefix} and {@code data} are not changed.
+     *
+     * @param prefix the data to insert before the packet data (typically a timing SEI), or {@code null}
+     * @param data   the packet data
+     * @param pts    the presentation timestamp, in microseconds, or {@link VideoPacket#NO_PTS} for codec config packets
+     * @param flags  the {@code VideoPacket.FLAG_*} flags
+     */
+    public void append(ByteBuffer prefix, ByteBuffer data, long pts, int flags) {
+        if ((flags & VideoPacket.FLAG_CONFIG) != 0) {
+            // the packets encoded with the previous config are useless
+            anchored = false;
+            store.setConfig(prefix, data, flags);
+            return;
+        }
+
+        if ((flags & VideoPacket.FLAG_KEY_FRAME) != 0) {
+            // the previous packets are not needed anymore
+            store.clear();
+            anchored = store.hasConfig();
+        }
+
+        if (anchored && !store.add(prefix, data, pts, flags)) {
+            // the cache may only be valid again from the next key frame
+            anchored = false;
+            store.clear();
+        }
+    }
+
+    /**
+     * Indicate whether the cache contains a codec config and all the packets since the last key frame.
+     */
+    public boolean isValid() {
+        return anchored && store.getPacketCount() > 0;
+    }
+
+    /**
+     * Return the number of cached packets, excluding the codec config.
+     */
+    public int getPacketCount() {
+        return anchored ? store.getPacketCount() : 0;
+    }
+
+    /**
+     * Return the number of bytes used by the cached packets, excluding the codec config.
+     */
+    public int getSize() {
+        return anchored ? store.getSize() : 0;
+    }
+
+    /**
+     * Copy the codec config followed by all the packets since the last key frame (for a late subscriber).
+     *
+     * @return the snapshot, or {@code null} if the cache is not valid
+     */
+    public PacketSnapshot snapshot() {
+        return isValid() ? store.snapshot(0) : null;
+    }
+}
@@ -37,4 +37,65 @@ public final class IO {
     public static void writeFully(FileDescriptor fd, byte[] buffer, int offset, int len) throws IOException {
         writeFully(fd, ByteBuffer.wrap(buffer, offset, len));
     }
+
+    /**
+     * Write the remaining bytes of the {@code count} first buffers, in order, in a single system call whenever possible.
+     * <p>
+     * The buffers must be either direct or backed by an accessible array (for {@link Os#writev(FileDescriptor, Object[], int[], int[])}),
+     * otherwise they are written one by one.
+     * <p>
+     * The positions of the buffers are advanced to their limits.
+     */
+    public static void writeFully(FileDescriptor fd, ByteBuffer[] buffers, int count) throws IOException {
+        Object[] objects = new Object[count];
+        int[] offsets = new int[count];
+        int[] byteCounts = new int[count];
+
+        int remaining = 0;
+        for (int i = 0; i < count; ++i) {
+            ByteBuffer buffer = buffers[i];
+            if (buffer.isDirect()) {
+                objects[i] = buffer;
+                offsets[i] = buffer.position();
+            } else if (buffer.hasArray()) {
+                objects[i] = buffer.array();
+                offsets[i] = buffer.arrayOffset() + buffer.position();
+            } else {
+                // not supported by Os.writev()
+                for (int j = 0; j < count; ++j) {
+                    writeFully(fd, buffers[j]);
+                }
+                return;
+            }
+            byteCounts[i] = buffer.remaining();
+            remaining += byteCounts[i];
+        }
+
+        // Os.writev() never updates the ByteBuffer positions, so count the written bytes manually
+        while (remaining > 0) {
+            try {
+                int w = Os.writev(fd, objects, offsets, byteCounts);
+                if (BuildConfig.DEBUG && w < 0) {
+                    // w should not be negative, since an exception is thrown on error
+                    throw new AssertionError("Os.writev() returned a negative value (" + w + ")");
+                }
+                remaining -= w;
+                // skip the written bytes (already written buffers are left with 0 bytes to write)
+                for (int i = 0; i < count && w > 0; ++i) {
+                    int n = Math.min(w, byteCounts[i]);
+                    offsets[i] += n;
+                    byteCounts[i] -= n;
+                    w -= n;
+                }
+            } catch (ErrnoException e) {
+                if (e.errno != OsConstants.EINTR) {
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        for (int i = 0; i < count; ++i) {
+            buffers[i].position(buffers[i].limit());
+        }
+    }
 }
@@ -0,0 +1,110 @@
+package com.genymobile.scrcpy;
+
+/**
+ * Detect when the screen content does not change, to stop sending the frames repeated by the encoder.
+ * <p>
+ * On a static screen, the encoder still outputs a frame every {@code REPEAT_FRAME_DELAY_US}, which only contains skipped blocks, so it
+ * is tiny. Once such tiny frames have been produced continuously for the timeout, the stream is paused: the frames are dropped.
+ * <p>
+ * A dropped frame may be referenced by the next ones, so the stream may only be resumed on a key frame. When a larger frame is produced
+ * (the content changed) while paused, a key frame is needed; the caller must request it (it may also request it when an input event is
+ * injected, to resume immediately).
+ */
+public final class IdleDetector {
+
+    // a repeated frame without any change only contains skipped blocks (typically a few dozen bytes)
+    public static final int DEFAULT_MAX_REPEAT_FRAME_SIZE = 256;
+
+    private static final int STATE_ACTIVE = 0;
+    private static final int STATE_IDLE = 1;
+    // the content changed while idle, waiting for a key frame
+    private static final int STATE_RESUMING = 2;
+
+    private final long timeoutUs;
+    private final int maxRepeatFrameSize;
+
+    // read from other threads by isPaused()
+    private volatile int state = STATE_ACTIVE;
+    // pts of the first frame of the current run of repeated frames (-1 if none)
+    private long repeatStartPts = -1;
+
+    private long pauseCount;
+    private long droppedCount;
+
+    /**
+     * @param timeoutMs          the delay without content change before pausing the stream, in milliseconds
+     * @param maxRepeatFrameSize the max size of a frame considered as a repetition of the previous one
+     */
+    public IdleDetector(int timeoutMs, int maxRepeatFrameSize) {
+        this.timeoutUs = timeoutMs * 1000L;
+        this.maxRepeatFrameSize = maxRepeatFrameSize;
+    }
+
+    /**
+     * Indicate whether a frame must be sent.
+     *
+     * @param ptsUs    the frame timestamp, in microseconds
+     * @param size     the frame size, in bytes
+     * @param keyFrame {@code true} if the frame is a key frame
+     * @return {@code true} if the frame must be sent, {@code false} if it must be dropped
+     */
+    public boolean accept(long ptsUs, int size, boolean keyFrame) {
+        if (keyFrame) {
+            // a key frame does not depend on the dropped frames
+            state = STATE_ACTIVE;
+            repeatStartPts = -1;
+            return true;
+        }
+
+        boolean repeat = size <= maxRepeatFrameSize;
+        switch (state) {
+            case STATE_ACTIVE:
+                if (!repeat) {
+                    repeatStartPts = -1;
+                    return true;
+                }
+                if (repeatStartPts == -1) {
+                    repeatStartPts = ptsUs;
+                } else if (ptsUs - repeatStartPts >= timeoutUs) {
+                    // the client already received the current content
+                    state = STATE_IDLE;
+                    ++pauseCount;
+                    ++droppedCount;
+                    return false;
+                }
+                return true;
+            case STATE_IDLE:
+                if (!repeat) {
+                    state = STATE_RESUMING;
+                }
+                ++droppedCount;
+                return false;
+            default:
+                // STATE_RESUMING: the frames depend on dropped frames
+                ++droppedCount;
+                return false;
+        }
+    }
+
+    /**
+     * Indicate whether the stream is paused (may be called from any thread).
+     */
+    public boolean isPaused() {
+        return state != STATE_ACTIVE;
+    }
+
+    /**
+     * Indicate whether the content changed while paused, so that a key frame must be requested to resume the stream.
+     */
+    public boolean isKeyFrameNeeded() {
+        return state == STATE_RESUMING;
+    }
+
+    public long getPauseCount() {
+        return pauseCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+}
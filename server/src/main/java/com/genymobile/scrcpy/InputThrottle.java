@@ -0,0 +1,79 @@
+package com.genymobile.scrcpy;
+
+import android.media.MediaCodec;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+/**
+ * Enforce the max frame rate on the encoder input, for devices on which the encoder ignores the max fps (before Android 10).
+ * <p>
+ * After each frame sent, the input surface is suspended ({@link MediaCodec#PARAMETER_KEY_SUSPEND}) until the next frame is allowed: the
+ * frames produced meanwhile are discarded before being encoded. If the screen stops changing while the input is suspended, the last
+ * image is encoded once the input is resumed, as a repeated frame ({@code KEY_REPEAT_PREVIOUS_FRAME_AFTER}).
+ * <p>
+ * The input is resumed from a dedicated thread, since the encoder produces no output while its input is suspended.
+ */
+public final class InputThrottle {
+
+    private final HandlerThread thread = new HandlerThread("scrcpy-throttle");
+    private final Handler handler;
+
+    private MediaCodec codec; // guarded by this
+    private boolean suspended; // guarded by this
+
+    private final Runnable resumeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            resume();
+        }
+    };
+
+    public InputThrottle() {
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Set the codec of the current session, while it is started (or {@code null}).
+     * <p>
+     * The input surface of a new session is never suspended.
+     */
+    public synchronized void setCodec(MediaCodec codec) {
+        handler.removeCallbacks(resumeRunnable);
+        this.codec = codec;
+        suspended = false;
+    }
+
+    /**
+     * Suspend the codec input for the given duration (ignored if it is already suspended).
+     *
+     * @param durationUs the duration, in microseconds
+     */
+    public synchronized void suspend(long durationUs) {
+        if (codec == null || suspended) {
+            return;
+        }
+        setSuspended(codec, true);
+        suspended = true;
+        // round up, so that the next frame is not too early
+        handler.postDelayed(resumeRunnable, (durationUs + 999) / 1000);
+    }
+
+    private synchronized void resume() {
+        if (codec != null && suspended) {
+            setSuspended(codec, false);
+        }
+        suspended = false;
+    }
+
+    private static void setSuspended(MediaCodec codec, boolean suspend) {
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_SUSPEND, suspend ? 1 : 0);
+        codec.setParameters(params);
+    }
+
+    public void quit() {
+        thread.quit();
+    }
+}
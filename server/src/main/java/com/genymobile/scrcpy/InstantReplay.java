@@ -0,0 +1,161 @@
+package com.genymobile.scrcpy;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Keep the recent encoded packets in a {@link ReplayBuffer}, and save the last seconds into an MP4 file on the device on request.
+ * <p>
+ * The packets are copied from the encoder thread. On request, a snapshot is taken (under the same lock) and written by a separate thread,
+ * so that neither the encoder nor the controller are blocked by the file I/O.
+ */
+public final class InstantReplay implements PacketSink {
+
+    private static final String DIRECTORY = "/data/local/tmp";
+
+    private final ScreenEncoder screenEncoder;
+    private final VideoCodec videoCodec;
+    private final ReplayBuffer replayBuffer;
+
+    private boolean saving;
+
+    public InstantReplay(ScreenEncoder screenEncoder, VideoCodec videoCodec, int bufferSize) {
+        this.screenEncoder = screenEncoder;
+        this.videoCodec = videoCodec;
+        replayBuffer = new ReplayBuffer(bufferSize, ReplayBuffer.DEFAULT_MAX_PACKETS, PacketStore.DEFAULT_MAX_CONFIG_SIZE);
+    }
+
+    @Override
+    public void push(ByteBuffer prefix, ByteBuffer data, long pts, int flags) {
+        // the size of the video described by the config, which may differ from the current screen size (e.g. on rotation)
+        Size videoSize = (flags & VideoPacket.FLAG_CONFIG) != 0 ? screenEncoder.getSessionVideoSize() : null;
+        synchronized (replayBuffer) {
+            // the timing SEI is only meaningful for a live stream
+            replayBuffer.append(null, data, pts, flags & ~VideoPacket.FLAG_TIMING_SEI, videoSize);
+        }
+    }
+
+    /**
+     * Save the last {@code duration} seconds asynchronously, then report the path of the file (or the failure) to the client.
+     *
+     * @param duration the duration to save, in seconds, or 0 to save all the buffered packets
+     * @param sender   the sender to report the result
+     */
+    public void save(final int duration, final DeviceMessageSender sender) {
+        synchronized (this) {
+            if (saving) {
+                Ln.w("A replay is already being saved, request ignored");
+                return;
+            }
+            saving = true;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                String path = null;
+                try {
+                    path = save(duration * 1_000_000L);
+                } finally {
+                    synchronized (InstantReplay.this) {
+                        saving = false;
+                    }
+                    sender.pushReplaySaved(path);
+                }
+            }
+        }, "scrcpy-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private String save(long durationUs) {
+        PacketSnapshot snapshot;
+        Size videoSize;
+        synchronized (replayBuffer) {
+            snapshot = replayBuffer.snapshot(durationUs);
+            videoSize = replayBuffer.getConfigVideoSize();
+        }
+        if (snapshot == null || videoSize == null) {
+            Ln.w("No replay to save");
+            return null;
+        }
+
+        String date = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        String path = DIRECTORY + "/scrcpy-replay-" + date + ".mp4";
+        try {
+            write(snapshot, videoCodec, videoSize, path);
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            Ln.e("Could not save replay", e);
+            return null;
+        }
+        Ln.i("Replay saved to " + path);
+        return path;
+    }
+
+    private static void write(PacketSnapshot snapshot, VideoCodec videoCodec, Size videoSize, String path) throws IOException {
+        MediaFormat format = MediaFormat.createVideoFormat(videoCodec.getMimeType(), videoSize.getWidth(), videoSize.getHeight());
+        setCodecSpecificData(format, snapshot.getData(0), videoCodec);
+
+        MediaMuxer muxer = new MediaMuxer(path, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        try {
+            int track = muxer.addTrack(format);
+            muxer.start();
+            MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+            // the packet at index 0 is the codec config
+            long ptsOrigin = snapshot.getPts(1);
+            for (int i = 1; i < snapshot.getPacketCount(); ++i) {
+                ByteBuffer data = snapshot.getData(i);
+                int flags = (snapshot.getFlags(i) & VideoPacket.FLAG_KEY_FRAME) != 0 ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+                bufferInfo.set(data.position(), data.remaining(), snapshot.getPts(i) - ptsOrigin, flags);
+                muxer.writeSampleData(track, data, bufferInfo);
+            }
+            muxer.stop();
+        } finally {
+            muxer.release();
+        }
+    }
+
+    /**
+     * Set the parameter sets expected by the muxer: for H.264, the SPS in "csd-0" and the PPS in "csd-1" (with their start codes); for
+     * H.265, the whole config in "csd-0".
+     */
+    private static void setCodecSpecificData(MediaFormat format, ByteBuffer config, VideoCodec videoCodec) {
+        int start = config.position();
+        int end = config.limit();
+        int split = end;
+        if (videoCodec == VideoCodec.H264) {
+            int index = AnnexB.findNalUnit(config, start, end);
+            while (index != -1 && AnnexB.getNalType(config.get(index)) != AnnexB.NAL_TYPE_PPS) {
+                index = AnnexB.findNalUnit(config, index, end);
+            }
+            if (index != -1) {
+                // move back to the start code (00 00 01, possibly preceded by another 00)
+                split = index - 3;
+                if (split > start && config.get(split - 1) == 0) {
+                    --split;
+                }
+            }
+        }
+
+        format.setByteBuffer("csd-0", copy(config, start, split));
+        if (split < end) {
+            format.setByteBuffer("csd-1", copy(config, split, end));
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer, int start, int end) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(end).position(start);
+        ByteBuffer copy = ByteBuffer.allocate(end - start);
+        copy.put(view);
+        copy.flip();
+        return copy;
+    }
+}
@@ -0,0 +1,21 @@
+package com.genymobile.scrcpy;
+
+public class InvalidEncoderException extends RuntimeException {
+
+    private final String name;
+    private final String[] availableEncoders;
+
+    public InvalidEncoderException(String name, String mimeType, String[] availableEncoders) {
+        super("There is no encoder having name '" + name + "' for " + mimeType);
+        this.name = name;
+        this.availableEncoders = availableEncoders;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getAvailableEncoders() {
+        return availableEncoders;
+    }
+}
@@ -0,0 +1,78 @@
+package com.genymobile.scrcpy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Write the index of a raw recorded stream: the offset of each codec config and key frame in the stream file, so that a reader may seek
+ * to any key frame (preceded by the last codec config) without parsing the whole stream.
+ * <p>
+ * Each entry is 16 bytes (big-endian):
+ * <pre>
+ *     [. . . . . . . .|. . . . . . . .]
+ *      <-------------> <------------->
+ *           offset      PTS and flags
+ * </pre>
+ * The PTS and flags field uses the same format as the frame meta header: the most significant bit is set for a codec config (the PTS is
+ * then 0), the second most significant bit is set for a key frame. The PTS are relative to the first key frame, in microseconds.
+ * <p>
+ * Each entry is written as soon as its packet is added, so the index is always consistent with the stream written so far.
+ */
+public final class KeyFrameIndexWriter {
+
+    public static final int ENTRY_SIZE = 16;
+
+    private static final long FLAG_CONFIG = 1L << 63;
+    private static final long FLAG_KEY_FRAME = 1L << 62;
+
+    private final OutputStream output;
+    private final byte[] entry = new byte[ENTRY_SIZE];
+    private final ByteBuffer entryBuffer = ByteBuffer.wrap(entry);
+
+    // the offset of the next packet in the stream file
+    private long offset;
+    private long ptsOrigin = VideoPacket.NO_PTS;
+    private int entryCount;
+
+    public KeyFrameIndexWriter(OutputStream output) {
+        this.output = output;
+    }
+
+    /**
+     * Account a packet written to the stream file, and index it if it is a codec config or a key frame.
+     *
+     * @param pts   the presentation timestamp, in microseconds, or {@link VideoPacket#NO_PTS} for codec config packets
+     * @param flags the {@code VideoPacket.FLAG_*} flags
+     * @param size  the size of the packet written to the stream file, in bytes
+     */
+    public void add(long pts, int flags, int size) throws IOException {
+        if ((flags & VideoPacket.FLAG_CONFIG) != 0) {
+            writeEntry(FLAG_CONFIG);
+        } else if ((flags & VideoPacket.FLAG_KEY_FRAME) != 0) {
+            if (ptsOrigin == VideoPacket.NO_PTS) {
+                ptsOrigin = pts;
+            }
+            writeEntry((pts - ptsOrigin) | FLAG_KEY_FRAME);
+        }
+        offset += size;
+    }
+
+    private void writeEntry(long ptsAndFlags) throws IOException {
+        entryBuffer.putLong(0, offset);
+        entryBuffer.putLong(8, ptsAndFlags);
+        output.write(entry);
+        ++entryCount;
+    }
+
+    /**
+     * Return the total size of the packets added, i.e. the size of the stream file.
+     */
+    public long getStreamSize() {
+        return offset;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+}
@@ -0,0 +1,98 @@
+package com.genymobile.scrcpy;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoder settings to reduce the latency, restricted to the knobs supported by the Android version and the encoder.
+ * <p>
+ * If the encoder supports intra refresh, the periodic key frames (which cause bandwidth spikes) are replaced by a gradual refresh.
+ */
+public final class LowLatencyProfile {
+
+    // the keys are not all available in the SDK version the server is compiled with
+    private static final String KEY_LATENCY = "latency"; // MediaFormat.KEY_LATENCY, Android 11
+    private static final String KEY_PRIORITY = "priority"; // MediaFormat.KEY_PRIORITY, Android 6
+    private static final String KEY_OPERATING_RATE = "operating-rate"; // MediaFormat.KEY_OPERATING_RATE, Android 6
+    private static final String KEY_INTRA_REFRESH_PERIOD = "intra-refresh-period"; // MediaFormat.KEY_INTRA_REFRESH_PERIOD, Android 7
+    private static final String FEATURE_INTRA_REFRESH = "intra-refresh"; // CodecCapabilities.FEATURE_IntraRefresh, Android 7
+
+    private static final int SDK_INT_R = 30;
+
+    private static final int PRIORITY_REALTIME = 0;
+    // the encoder may output a frame as soon as its input is received
+    private static final int LATENCY_FRAMES = 1;
+    private static final int DEFAULT_OPERATING_RATE = 60;
+    // with intra refresh, key frames are only produced on request (on start, after packets are dropped, or on client request)
+    private static final int INTRA_REFRESH_I_FRAME_INTERVAL = 3600; // seconds
+
+    private final List<CodecOption> knobs;
+
+    private LowLatencyProfile(List<CodecOption> knobs) {
+        this.knobs = knobs;
+    }
+
+    /**
+     * Create the profile for an encoder.
+     *
+     * @param info     the encoder
+     * @param mimeType the codec MIME type
+     * @param maxFps   the max frame rate (0 if not limited)
+     * @return the profile (possibly without any knob)
+     */
+    public static LowLatencyProfile create(MediaCodecInfo info, String mimeType, int maxFps) {
+        List<CodecOption> knobs = new ArrayList<>();
+        if (Build.VERSION.SDK_INT >= SDK_INT_R) {
+            knobs.add(new CodecOption(KEY_LATENCY, LATENCY_FRAMES));
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            knobs.add(new CodecOption(KEY_PRIORITY, PRIORITY_REALTIME));
+            int operatingRate = maxFps > 0 ? maxFps : DEFAULT_OPERATING_RATE;
+            knobs.add(new CodecOption(KEY_OPERATING_RATE, operatingRate));
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            MediaCodecInfo.CodecCapabilities caps = info.getCapabilitiesForType(mimeType);
+            if (caps.isFeatureSupported(FEATURE_INTRA_REFRESH)) {
+                // refresh the whole picture in about one second
+                int period = maxFps > 0 ? maxFps : DEFAULT_OPERATING_RATE;
+                knobs.add(new CodecOption(KEY_INTRA_REFRESH_PERIOD, period));
+                knobs.add(new CodecOption(MediaFormat.KEY_I_FRAME_INTERVAL, INTRA_REFRESH_I_FRAME_INTERVAL));
+            }
+        }
+        return new LowLatencyProfile(knobs);
+    }
+
+    public boolean isEmpty() {
+        return knobs.isEmpty();
+    }
+
+    public void apply(MediaFormat format) {
+        for (CodecOption knob : knobs) {
+            format.setInteger(knob.getKey(), (Integer) knob.getValue());
+        }
+    }
+
+    /**
+     * Log the knobs accepted by the encoder, i.e. those present in its input or output format once configured.
+     *
+     * @param inputFormat  the codec input format
+     * @param outputFormat the codec output format
+     */
+    public void report(MediaFormat inputFormat, MediaFormat outputFormat) {
+        StringBuilder accepted = new StringBuilder();
+        StringBuilder ignored = new StringBuilder();
+        for (CodecOption knob : knobs) {
+            String key = knob.getKey();
+            StringBuilder builder = inputFormat.containsKey(key) || outputFormat.containsKey(key) ? accepted : ignored;
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(key).append('=').append(knob.getValue());
+        }
+        Ln.i("Low latency knobs accepted: [" + accepted + "], not reported by the encoder: [" + ignored + "]");
+    }
+}
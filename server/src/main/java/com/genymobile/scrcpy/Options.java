@@ -16,6 +16,20 @@ public class Options {
     private boolean showTouches;
     private boolean stayAwake;
     private String codecOptions;
+    private int videoQueueSize;
+    private PacketQueue.OverflowPolicy videoQueuePolicy;
+    private int minBitRate; // 0 to disable the adaptive bit rate
+    private int bitRateStep;
+    private VideoCodec videoCodec;
+    private String encoderName;
+    private boolean lowLatency;
+    private int idleTimeout;
+    private boolean refine;
+    private boolean timingSei;
+    private int maxSubscribers; // 0 to disable the video fan-out
+    private int lateJoinCacheSize; // 0 to disable
+    private int replayBufferSize; // 0 to disable
+    private String deviceRecordPath; // null to disable
 
     public Ln.Level getLogLevel() {
         return logLevel;
@@ -120,4 +134,116 @@ public class Options {
     public void setCodecOptions(String codecOptions) {
         this.codecOptions = codecOptions;
     }
+
+    public int getVideoQueueSize() {
+        return videoQueueSize;
+    }
+
+    public void setVideoQueueSize(int videoQueueSize) {
+        this.videoQueueSize = videoQueueSize;
+    }
+
+    public PacketQueue.OverflowPolicy getVideoQueuePolicy() {
+        return videoQueuePolicy;
+    }
+
+    public void setVideoQueuePolicy(PacketQueue.OverflowPolicy videoQueuePolicy) {
+        this.videoQueuePolicy = videoQueuePolicy;
+    }
+
+    public int getMinBitRate() {
+        return minBitRate;
+    }
+
+    public void setMinBitRate(int minBitRate) {
+        this.minBitRate = minBitRate;
+    }
+
+    public int getBitRateStep() {
+        return bitRateStep;
+    }
+
+    public void setBitRateStep(int bitRateStep) {
+        this.bitRateStep = bitRateStep;
+    }
+
+    public VideoCodec getVideoCodec() {
+        return videoCodec;
+    }
+
+    public void setVideoCodec(VideoCodec videoCodec) {
+        this.videoCodec = videoCodec;
+    }
+
+    public String getEncoderName() {
+        return encoderName;
+    }
+
+    public void setEncoderName(String encoderName) {
+        this.encoderName = encoderName;
+    }
+
+    public boolean getLowLatency() {
+        return lowLatency;
+    }
+
+    public void setLowLatency(boolean lowLatency) {
+        this.lowLatency = lowLatency;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean getRefine() {
+        return refine;
+    }
+
+    public void setRefine(boolean refine) {
+        this.refine = refine;
+    }
+
+    public boolean getTimingSei() {
+        return timingSei;
+    }
+
+    public void setTimingSei(boolean timingSei) {
+        this.timingSei = timingSei;
+    }
+
+    public int getMaxSubscribers() {
+        return maxSubscribers;
+    }
+
+    public void setMaxSubscribers(int maxSubscribers) {
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    public int getLateJoinCacheSize() {
+        return lateJoinCacheSize;
+    }
+
+    public void setLateJoinCacheSize(int lateJoinCacheSize) {
+        this.lateJoinCacheSize = lateJoinCacheSize;
+    }
+
+    public int getReplayBufferSize() {
+        return replayBufferSize;
+    }
+
+    public void setReplayBufferSize(int replayBufferSize) {
+        this.replayBufferSize = replayBufferSize;
+    }
+
+    public String getDeviceRecordPath() {
+        return deviceRecordPath;
+    }
+
+    public void setDeviceRecordPath(String deviceRecordPath) {
+        this.deviceRecordPath = deviceRecordPath;
+    }
 }
@@ -0,0 +1,320 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free single-producer/single-consumer ring of encoded packets.
+ * <p>
+ * The producer (the encoder) copies each codec output into a preallocated {@link VideoPacket}, so that the codec buffer is released
+ * immediately; the consumer (the writer) sends the packets to the client. When the queue is full, the {@link OverflowPolicy} decides
+ * what to do with the packets.
+ * <p>
+ * The ring contains twice as many slots as the queue capacity, so that packets discarded by the producer (which are skipped by the
+ * consumer) do not prevent new packets to be queued.
+ */
+public final class PacketQueue {
+
+    public enum OverflowPolicy {
+        /**
+         * Wait until the consumer frees a slot (the encoder is blocked).
+         */
+        BLOCK,
+        /**
+         * Drop the new packet, and all the following ones until the next key frame.
+         */
+        DROP_UNTIL_KEY_FRAME,
+        /**
+         * Discard the oldest queued packet which is not used for reference, so that the stream is not corrupted.
+         * <p>
+         * If there is none, drop the new packet if it is not used for reference, or fallback to {@link #DROP_UNTIL_KEY_FRAME}.
+         */
+        DROP_OLDEST_NON_REFERENCE;
+
+        public static OverflowPolicy parse(String value) {
+            return valueOf(value.toUpperCase(Locale.ENGLISH).replace('-', '_'));
+        }
+    }
+
+    private static final int SLOT_READY = 0;
+    private static final int SLOT_TAKEN = 1;
+    private static final int SLOT_DISCARDED = 2;
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final VideoPacket[] packets;
+    private final AtomicIntegerArray states;
+
+    // number of queued packets, excluding the discarded ones
+    private final AtomicInteger size = new AtomicInteger();
+
+    // written only by the consumer
+    private volatile long head;
+    // written only by the producer
+    private volatile long tail;
+    // only accessed by the consumer: the index of the next packet to take (the packets between head and readIndex are taken)
+    private long readIndex;
+
+    private volatile boolean closed;
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+
+    // only accessed by the producer
+    private boolean waitingKeyFrame;
+
+    // statistics, written only by the producer
+    private volatile long droppedCount;
+    private volatile int maxSize;
+
+    public PacketQueue(int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        packets = new VideoPacket[2 * capacity];
+        for (int i = 0; i < packets.length; ++i) {
+            packets[i] = new VideoPacket();
+        }
+        states = new AtomicIntegerArray(packets.length);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Queue a copy of the remaining bytes of {@code data} (called by the producer).
+     *
+     * @return {@code true} if the packet has been queued, {@code false} if it has been dropped or if the queue is closed
+     */
+    public boolean offer(ByteBuffer data, long pts, int flags) {
+        return offer(null, data, pts, flags);
+    }
+
+    /**
+     * Queue a copy of the remaining bytes of {@code prefix} (if not {@code null}) followed by the remaining bytes of {@code data} (called
+     * by the producer).
+     *
+     * @return {@code true} if the packet has been queued, {@code false} if it has been dropped or if the queue is closed
+     */
+    public boolean offer(ByteBuffer prefix, ByteBuffer data, long pts, int flags) {
+        if (closed) {
+            return false;
+        }
+
+        boolean config = (flags & VideoPacket.FLAG_CONFIG) != 0;
+        boolean keyFrame = (flags & VideoPacket.FLAG_KEY_FRAME) != 0;
+        if (waitingKeyFrame && !config && !keyFrame) {
+            // the reference frames are missing, this packet could not be decoded
+            ++droppedCount;
+            return false;
+        }
+
+        if (isFull()) {
+            if (config || policy == OverflowPolicy.BLOCK) {
+                // codec config packets are never dropped
+                if (!awaitNotFull()) {
+                    return false;
+                }
+            } else if (policy != OverflowPolicy.DROP_OLDEST_NON_REFERENCE || !discardOldestNonReference()) {
+                ++droppedCount;
+                if (policy != OverflowPolicy.DROP_OLDEST_NON_REFERENCE || (flags & VideoPacket.FLAG_NON_REFERENCE) == 0) {
+                    // the stream may only be resumed from the next key frame
+                    waitingKeyFrame = true;
+                }
+                return false;
+            }
+        }
+
+        if (keyFrame) {
+            waitingKeyFrame = false;
+        }
+
+        long t = tail;
+        int slot = (int) (t % packets.length);
+        packets[slot].set(prefix, data, pts, flags);
+        states.set(slot, SLOT_READY);
+        int newSize = size.incrementAndGet();
+        if (newSize > maxSize) {
+            maxSize = newSize;
+        }
+        // publish the packet
+        tail = t + 1;
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Indicate whether packets are dropped until the next key frame (called by the producer).
+     * <p>
+     * In that case, the producer should request a key frame to the encoder.
+     */
+    public boolean isWaitingKeyFrame() {
+        return waitingKeyFrame;
+    }
+
+    private boolean isFull() {
+        return size.get() >= capacity || tail - head >= packets.length;
+    }
+
+    private boolean awaitNotFull() {
+        while (isFull()) {
+            if (closed) {
+                return false;
+            }
+            waitingProducer = Thread.currentThread();
+            if (isFull() && !closed) {
+                LockSupport.park(this);
+            }
+            waitingProducer = null;
+        }
+        return !closed;
+    }
+
+    private boolean discardOldestNonReference() {
+        long t = tail;
+        for (long i = head; i < t; ++i) {
+            int slot = (int) (i % packets.length);
+            // the flags of a published packet never change, they may be read concurrently
+            if (packets[slot].isNonReference() && states.compareAndSet(slot, SLOT_READY, SLOT_DISCARDED)) {
+                size.decrementAndGet();
+                ++droppedCount;
+                return !isFull();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait for the next packet (called by the consumer).
+     * <p>
+     * The packet must be released by {@link #release()} once consumed. Several packets may be taken before being released (in order).
+     *
+     * @return the next packet, or {@code null} if the queue is closed
+     */
+    public VideoPacket take() {
+        while (true) {
+            while (readIndex == tail) {
+                if (closed) {
+                    return null;
+                }
+                waitingConsumer = Thread.currentThread();
+                if (readIndex == tail && !closed) {
+                    LockSupport.park(this);
+                }
+                waitingConsumer = null;
+            }
+
+            if (closed) {
+                return null;
+            }
+
+            VideoPacket packet = takeNext();
+            if (packet != null) {
+                return packet;
+            }
+        }
+    }
+
+    /**
+     * Take the next packet if it is immediately available (called by the consumer).
+     * <p>
+     * The packet must be released by {@link #release()} once consumed.
+     *
+     * @return the next packet, or {@code null} if there is none or if the queue is closed
+     */
+    public VideoPacket poll() {
+        while (readIndex != tail && !closed) {
+            VideoPacket packet = takeNext();
+            if (packet != null) {
+                return packet;
+            }
+        }
+        return null;
+    }
+
+    private VideoPacket takeNext() {
+        int slot = (int) (readIndex % packets.length);
+        ++readIndex;
+        if (states.compareAndSet(slot, SLOT_READY, SLOT_TAKEN)) {
+            return packets[slot];
+        }
+
+        // the packet has been discarded by the producer, skip it
+        reclaimDiscarded(head);
+        return null;
+    }
+
+    /**
+     * Release the oldest packet taken and not released yet (called by the consumer).
+     */
+    public void release() {
+        size.decrementAndGet();
+        reclaimDiscarded(head + 1);
+    }
+
+    private void reclaimDiscarded(long h) {
+        // the slots of the packets discarded by the producer (and already skipped by the consumer) may be reused
+        while (h < readIndex && states.get((int) (h % packets.length)) == SLOT_DISCARDED) {
+            ++h;
+        }
+        head = h;
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Close the queue, unblocking both the producer and the consumer.
+     */
+    public void close() {
+        closed = true;
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Return the current number of queued packets.
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    /**
+     * Return the maximum number of queued packets reached so far.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Return the total number of dropped (or discarded) packets so far.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -0,0 +1,23 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An additional consumer of the encoded packets, fed by the encoder along with the client socket.
+ * <p>
+ * A sink is called from the encoder thread, so it must never block: it must copy the packets it needs and process them asynchronously.
+ */
+public interface PacketSink {
+
+    /**
+     * Consume a packet.
+     * <p>
+     * The positions of {@code prefix} and {@code data} must not be changed.
+     *
+     * @param prefix the data to insert before the packet data (typically a timing SEI), or {@code null}
+     * @param data   the packet data
+     * @param pts    the presentation timestamp, in microseconds, or {@link VideoPacket#NO_PTS} for codec config packets
+     * @param flags  the {@code VideoPacket.FLAG_*} flags
+     */
+    void push(ByteBuffer prefix, ByteBuffer data, long pts, int flags);
+}
@@ -0,0 +1,66 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An immutable copy of a sequence of packets (typically the codec config followed by packets starting from a key frame), taken from a
+ * packet cache to be consumed by another thread.
+ * <p>
+ * All the packets are stored contiguously in a single buffer, allocated with the exact size of the copied data.
+ */
+public final class PacketSnapshot {
+
+    private final ByteBuffer data;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final long[] ptsArray;
+    private final int[] flagsArray;
+    private int packetCount;
+
+    PacketSnapshot(int size, int maxPackets) {
+        data = ByteBuffer.allocateDirect(size);
+        offsets = new int[maxPackets];
+        sizes = new int[maxPackets];
+        ptsArray = new long[maxPackets];
+        flagsArray = new int[maxPackets];
+    }
+
+    /**
+     * Copy a packet at the end of the snapshot (only while building the snapshot).
+     * <p>
+     * The position of {@code src} is not changed.
+     */
+    void add(ByteBuffer src, long pts, int flags) {
+        int position = src.position();
+        offsets[packetCount] = data.position();
+        sizes[packetCount] = src.remaining();
+        ptsArray[packetCount] = pts;
+        flagsArray[packetCount] = flags;
+        data.put(src);
+        src.position(position);
+        ++packetCount;
+    }
+
+    /**
+     * Return the number of packets, including the codec config.
+     */
+    public int getPacketCount() {
+        return packetCount;
+    }
+
+    /**
+     * Return the data of a packet, ready to be read (the buffer is reused for all the packets of the snapshot).
+     */
+    public ByteBuffer getData(int index) {
+        data.limit(offsets[index] + sizes[index]).position(offsets[index]);
+        return data;
+    }
+
+    public long getPts(int index) {
+        return ptsArray[index];
+    }
+
+    public int getFlags(int index) {
+        return flagsArray[index];
+    }
+}
@@ -0,0 +1,234 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Store a codec config and a sequence of packets, from the oldest to the newest, for the packet caches ({@link GopCache},
+ * {@link ReplayBuffer}).
+ * <p>
+ * The packets are copied into a preallocated direct ring buffer, whose size is the memory cap: adding a packet never allocates. A packet
+ * is never split: if it does not fit at the end of the buffer, it is written at the start. The packets may only be removed from the
+ * oldest, so the caller decides which packets to keep.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class PacketStore {
+
+    public static final int DEFAULT_MAX_CONFIG_SIZE = 4096;
+
+    private final ByteBuffer buffer;
+    private final ByteBuffer configBuffer;
+
+    // ring of packet metadata, the oldest packet is at index head
+    private final int maxPackets;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final long[] ptsArray;
+    private final int[] flagsArray;
+    private int head;
+    private int packetCount;
+    // the offset just after the newest packet in the buffer
+    private int end;
+    private int size;
+
+    private boolean hasConfig;
+    private int configFlags;
+
+    /**
+     * Create a store.
+     *
+     * @param capacity      the size of the buffer for the packets, in bytes
+     * @param maxPackets    the maximum number of packets
+     * @param maxConfigSize the maximum size of a codec config packet, in bytes
+     */
+    public PacketStore(int capacity, int maxPackets, int maxConfigSize) {
+        buffer = ByteBuffer.allocateDirect(capacity);
+        configBuffer = ByteBuffer.allocateDirect(maxConfigSize);
+        this.maxPackets = maxPackets;
+        offsets = new int[maxPackets];
+        sizes = new int[maxPackets];
+        ptsArray = new long[maxPackets];
+        flagsArray = new int[maxPackets];
+    }
+
+    /**
+     * Replace the codec config (the concatenation of {@code prefix} and {@code data}), and remove all the packets, since they could not
+     * be decoded with the new config.
+     * <p>
+     * The positions of {@code prefix} and {@code data} are not changed.
+     *
+     * @return {@code true} if the config has been stored, {@code false} if it is too large (the store has no config until the next one)
+     */
+    public boolean setConfig(ByteBuffer prefix, ByteBuffer data, int flags) {
+        clear();
+        hasConfig = getSize(prefix, data) <= configBuffer.capacity();
+        if (hasConfig) {
+            configBuffer.clear();
+            put(configBuffer, prefix, data);
+            configBuffer.flip();
+            configFlags = flags;
+        }
+        return hasConfig;
+    }
+
+    public boolean hasConfig() {
+        return hasConfig;
+    }
+
+    /**
+     * Indicate whether a packet of the given size may be added without removing any packet.
+     */
+    public boolean fits(int packetSize) {
+        return packetCount < maxPackets && findOffset(packetSize) != -1;
+    }
+
+    /**
+     * Copy a packet (the concatenation of {@code prefix} and {@code data}) after the newest packet.
+     * <p>
+     * The positions of {@code prefix} and {@code data} are not changed.
+     *
+     * @param prefix the data to insert before the packet data, or {@code null}
+     * @param data   the packet data
+     * @param pts    the presentation timestamp, in microseconds
+     * @param flags  the {@code VideoPacket.FLAG_*} flags
+     * @return {@code true} if the packet has been added, {@code false} if it does not fit (see {@link #fits(int)})
+     */
+    public boolean add(ByteBuffer prefix, ByteBuffer data, long pts, int flags) {
+        int packetSize = getSize(prefix, data);
+        if (packetCount == maxPackets) {
+            return false;
+        }
+        int offset = findOffset(packetSize);
+        if (offset == -1) {
+            return false;
+        }
+
+        int index = (head + packetCount) % maxPackets;
+        offsets[index] = offset;
+        sizes[index] = packetSize;
+        ptsArray[index] = pts;
+        flagsArray[index] = flags;
+        buffer.position(offset);
+        put(buffer, prefix, data);
+        end = offset + packetSize;
+        size += packetSize;
+        ++packetCount;
+        return true;
+    }
+
+    /**
+     * Find where a packet may be written without overwriting the stored packets.
+     *
+     * @return the offset, or -1 if there is not enough free space
+     */
+    private int findOffset(int packetSize) {
+        if (packetCount == 0) {
+            return packetSize <= buffer.capacity() ? 0 : -1;
+        }
+        int start = offsets[head];
+        if (end > start) {
+            // the used space is contiguous, there is free space after it and before it
+            if (end + packetSize <= buffer.capacity()) {
+                return end;
+            }
+            return packetSize <= start ? 0 : -1;
+        }
+        // the used space wraps around, the free space is between the newest and the oldest packets
+        return end + packetSize <= start ? end : -1;
+    }
+
+    /**
+     * Remove the oldest packet (the store must not be empty).
+     */
+    public void removeOldest() {
+        size -= sizes[head];
+        head = (head + 1) % maxPackets;
+        --packetCount;
+    }
+
+    /**
+     * Remove all the packets (the codec config is kept).
+     */
+    public void clear() {
+        head = 0;
+        packetCount = 0;
+        end = 0;
+        size = 0;
+    }
+
+    private static int getSize(ByteBuffer prefix, ByteBuffer data) {
+        return data.remaining() + (prefix != null ? prefix.remaining() : 0);
+    }
+
+    private static void put(ByteBuffer target, ByteBuffer prefix, ByteBuffer data) {
+        if (prefix != null) {
+            int prefixPosition = prefix.position();
+            target.put(prefix);
+            prefix.position(prefixPosition);
+        }
+        int dataPosition = data.position();
+        target.put(data);
+        data.position(dataPosition);
+    }
+
+    /**
+     * Return the number of stored packets, excluding the codec config.
+     */
+    public int getPacketCount() {
+        return packetCount;
+    }
+
+    /**
+     * Return the number of bytes used by the stored packets, excluding the codec config.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Return the timestamp of a packet.
+     *
+     * @param index the index of the packet, from 0 for the oldest
+     */
+    public long getPts(int index) {
+        return ptsArray[(head + index) % maxPackets];
+    }
+
+    /**
+     * Return the flags of a packet.
+     *
+     * @param index the index of the packet, from 0 for the oldest
+     */
+    public int getFlags(int index) {
+        return flagsArray[(head + index) % maxPackets];
+    }
+
+    /**
+     * Copy the codec config followed by the stored packets from {@code first} to the newest.
+     * <p>
+     * The snapshot is allocated with the exact size of the copied data (this is not on the path of each packet).
+     *
+     * @param first the index of the first packet to copy, from 0 for the oldest
+     * @return the snapshot, or {@code null} if there is no config or no packet to copy
+     */
+    public PacketSnapshot snapshot(int first) {
+        if (!hasConfig || first >= packetCount) {
+            return null;
+        }
+
+        int snapshotSize = configBuffer.remaining();
+        for (int i = first; i < packetCount; ++i) {
+            snapshotSize += sizes[(head + i) % maxPackets];
+        }
+
+        PacketSnapshot snapshot = new PacketSnapshot(snapshotSize, packetCount - first + 1);
+        snapshot.add(configBuffer, VideoPacket.NO_PTS, configFlags);
+        ByteBuffer view = buffer.duplicate();
+        for (int i = first; i < packetCount; ++i) {
+            int index = (head + i) % maxPackets;
+            view.limit(offsets[index] + sizes[index]).position(offsets[index]);
+            snapshot.add(view, ptsArray[index], flagsArray[index]);
+        }
+        return snapshot;
+    }
+}
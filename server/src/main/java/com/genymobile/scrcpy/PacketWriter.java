@@ -0,0 +1,247 @@
+package com.genymobile.scrcpy;
+
+import android.os.SystemClock;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Send the encoded packets to the client from a separate thread, so that a slow connection does not stall the encoder.
+ * <p>
+ * The packets are transmitted from the encoder to the writer thread through a bounded {@link PacketQueue}.
+ * <p>
+ * The frame meta header is 12 bytes: 8 bytes for the pts (whose 2 most significant bits are flags: config packet and key frame), then 4
+ * bytes for the packet size.
+ * <p>
+ * Each frame meta header is written just before its packet data, so that both are sent by a single system call. If several packets
+ * are already queued when the writer is ready (typically small P-frames produced while the previous write was blocked), they are
+ * gathered in a single write too.
+ */
+public final class PacketWriter {
+
+    private static final long STATS_INTERVAL_MS = 5000;
+
+    // flags stored in the most significant bits of the pts field of the frame meta header
+    private static final long PACKET_FLAG_CONFIG = 1L << 63;
+    private static final long PACKET_FLAG_KEY_FRAME = 1L << 62;
+
+    // limits for gathering several packets in a single write
+    private static final int MAX_BATCH_PACKETS = 8;
+    private static final int MAX_BATCH_SIZE = 64 * 1024;
+
+    private final FileDescriptor fd;
+    private final boolean sendFrameMeta;
+    private final PacketQueue queue;
+    private final BitRateController bitRateController;
+
+    private final ByteBuffer[] batch = new ByteBuffer[MAX_BATCH_PACKETS];
+    private long ptsOrigin;
+
+    private Thread thread;
+    private volatile IOException error;
+
+    private long lastStatsTime;
+    private long lastDroppedCount;
+    private long packetCount;
+    private long writeCount;
+
+    /**
+     * Create a packet writer.
+     *
+     * @param fd                the video socket
+     * @param sendFrameMeta     whether to write a frame meta header before each packet
+     * @param queue             the queue to consume
+     * @param bitRateController the controller to report the writes to, or {@code null} to disable the adaptive bit rate
+     */
+    public PacketWriter(FileDescriptor fd, boolean sendFrameMeta, PacketQueue queue, BitRateController bitRateController) {
+        this.fd = fd;
+        this.sendFrameMeta = sendFrameMeta;
+        this.queue = queue;
+        this.bitRateController = bitRateController;
+    }
+
+    public void start() {
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loop();
+                } catch (IOException e) {
+                    error = e;
+                    // unblock the producer
+                    queue.close();
+                }
+            }
+        }, "scrcpy-writer");
+        thread.start();
+    }
+
+    /**
+     * Stop the writer thread once its current packet (if any) is written.
+     */
+    public void stop() {
+        queue.close();
+    }
+
+    /**
+     * Push a packet to be sent (called by the encoder).
+     *
+     * @param data  the packet data (its remaining bytes are copied)
+     * @param pts   the presentation timestamp, in microseconds, or {@link VideoPacket#NO_PTS} for codec config packets
+     * @param flags the {@code VideoPacket.FLAG_*} flags
+     * @return {@code true} if the packet has been queued, {@code false} if it has been dropped
+     * @throws IOException if the writer failed to send a previous packet (typically on close)
+     */
+    public boolean push(ByteBuffer data, long pts, int flags) throws IOException {
+        return push(null, data, pts, flags);
+    }
+
+    /**
+     * Push a packet to be sent, its data being the concatenation of {@code prefix} and {@code data} (called by the encoder).
+     *
+     * @param prefix the data to insert before the packet data (typically a timing SEI), or {@code null}
+     * @param data   the packet data (its remaining bytes are copied)
+     * @param pts    the presentation timestamp, in microseconds, or {@link VideoPacket#NO_PTS} for codec config packets
+     * @param flags  the {@code VideoPacket.FLAG_*} flags
+     * @return {@code true} if the packet has been queued, {@code false} if it has been dropped
+     * @throws IOException if the writer failed to send a previous packet (typically on close)
+     */
+    public boolean push(ByteBuffer prefix, ByteBuffer data, long pts, int flags) throws IOException {
+        boolean queued = queue.offer(prefix, data, pts, flags);
+        IOException e = error;
+        if (e != null) {
+            throw e;
+        }
+        return queued;
+    }
+
+    /**
+     * Return the bit rate the encoder should use (called by the encoder).
+     *
+     * @return the target bit rate, or 0 if the adaptive bit rate is disabled
+     */
+    public int getTargetBitRate() {
+        return bitRateController != null ? bitRateController.getBitRate() : 0;
+    }
+
+    /**
+     * Change the ceiling of the adaptive bit rate (may be called from any thread).
+     *
+     * @return {@code false} if the adaptive bit rate is disabled
+     */
+    public boolean setMaxBitRate(int maxBitRate) {
+        if (bitRateController == null) {
+            return false;
+        }
+        bitRateController.setMaxBitRate(maxBitRate);
+        return true;
+    }
+
+    /**
+     * Indicate whether packets are dropped until the next key frame, so that the encoder should produce one.
+     */
+    public boolean isWaitingKeyFrame() {
+        return queue.isWaitingKeyFrame();
+    }
+
+    private void loop() throws IOException {
+        VideoPacket packet;
+        while ((packet = queue.take()) != null) {
+            batch[0] = prepare(packet);
+            int count = 1;
+            int batchSize = batch[0].remaining();
+            // do not wait for more packets, only gather those immediately available
+            while (count < MAX_BATCH_PACKETS && batchSize < MAX_BATCH_SIZE) {
+                packet = queue.poll();
+                if (packet == null) {
+                    break;
+                }
+                ByteBuffer buffer = prepare(packet);
+                batch[count++] = buffer;
+                batchSize += buffer.remaining();
+            }
+
+            long start = System.nanoTime();
+            try {
+                if (count == 1) {
+                    IO.writeFully(fd, batch[0]);
+                } else {
+                    IO.writeFully(fd, batch, count);
+                }
+            } finally {
+                for (int i = 0; i < count; ++i) {
+                    batch[i] = null;
+                    queue.release();
+                }
+            }
+
+            if (bitRateController != null) {
+                long durationUs = (System.nanoTime() - start) / 1000;
+                if (bitRateController.onWrite(SystemClock.uptimeMillis(), durationUs, queue.getSize(), queue.getDroppedCount())) {
+                    Ln.d("Target bit rate: " + bitRateController.getBitRate());
+                }
+            }
+
+            packetCount += count;
+            ++writeCount;
+            logStats();
+        }
+    }
+
+    private ByteBuffer prepare(VideoPacket packet) {
+        if (packet.hasTimingSei()) {
+            // the SEI is at the start of the packet data
+            TimingSei.setWriteTime(packet.getData(), 0, System.nanoTime() / 1000);
+        }
+
+        if (!sendFrameMeta) {
+            return packet.getData();
+        }
+
+        if (ptsOrigin == 0 && !packet.isConfig()) {
+            ptsOrigin = packet.getPts();
+        }
+
+        ByteBuffer buffer = packet.getDataWithHeader();
+        putHeader(buffer, 0, packet.getPts(), packet.getFlags(), packet.getSize(), ptsOrigin);
+        return buffer;
+    }
+
+    /**
+     * Write the frame meta header of a packet at the given absolute index (without changing the buffer position).
+     *
+     * @param pts       the packet pts
+     * @param flags     the packet {@code VideoPacket.FLAG_*} flags
+     * @param size      the packet size
+     * @param ptsOrigin the pts of the first frame sent, the pts being sent relative to it
+     */
+    static void putHeader(ByteBuffer buffer, int index, long pts, int flags, int size, long ptsOrigin) {
+        long ptsAndFlags;
+        if ((flags & VideoPacket.FLAG_CONFIG) != 0) {
+            ptsAndFlags = PACKET_FLAG_CONFIG; // non-media data packet
+        } else {
+            ptsAndFlags = pts - ptsOrigin;
+            if ((flags & VideoPacket.FLAG_KEY_FRAME) != 0) {
+                ptsAndFlags |= PACKET_FLAG_KEY_FRAME;
+            }
+        }
+        buffer.putLong(index, ptsAndFlags);
+        buffer.putInt(index + 8, size);
+    }
+
+    private void logStats() {
+        long now = SystemClock.uptimeMillis();
+        if (now - lastStatsTime < STATS_INTERVAL_MS) {
+            return;
+        }
+        lastStatsTime = now;
+
+        long droppedCount = queue.getDroppedCount();
+        if (Ln.isEnabled(Ln.Level.DEBUG)) {
+            Ln.d("Video queue: size=" + queue.getSize() + "/" + queue.getCapacity() + ", max=" + queue.getMaxSize() + ", dropped="
+                    + droppedCount + " (+" + (droppedCount - lastDroppedCount) + "), packets=" + packetCount + ", writes=" + writeCount);
+        }
+        lastDroppedCount = droppedCount;
+    }
+}
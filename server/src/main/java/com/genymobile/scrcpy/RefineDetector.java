@@ -0,0 +1,80 @@
+package com.genymobile.scrcpy;
+
+/**
+ * Detect when the screen content stops moving, to send a sharp frame.
+ * <p>
+ * During motion (e.g. scrolling), the encoder spends its bit rate on the changes, so the last frame is blurry, and it stays blurry
+ * until the next key frame once the content is static (the following frames only repeat it).
+ * <p>
+ * The motion is detected from the size of the output frames: a frame larger than a fraction of the per-frame bit rate budget is a
+ * motion frame. Once enough motion frames have been produced, and then only small frames for the settle delay, the content is
+ * considered static, and a refine is triggered. The refines are rate-limited, and can never be triggered during sustained motion.
+ */
+public final class RefineDetector {
+
+    public static final long DEFAULT_SETTLE_DELAY_US = 200_000;
+    public static final long DEFAULT_MIN_INTERVAL_US = 3_000_000;
+
+    // a frame larger than 1/4 of the per-frame budget is a motion frame
+    private static final int MOTION_SIZE_RATIO = 4;
+    // ignore short changes (e.g. a button pressed), they are not blurred
+    private static final int MIN_MOTION_FRAMES = 5;
+
+    private final long settleDelayUs;
+    private final long minIntervalUs;
+
+    private int motionFrames;
+    private long lastMotionPts = -1;
+    private long lastRefinePts = -1;
+
+    private long refineCount;
+
+    /**
+     * @param settleDelayUs the delay without motion frames before considering the content as static, in microseconds
+     * @param minIntervalUs the min delay between two refines, in microseconds
+     */
+    public RefineDetector(long settleDelayUs, long minIntervalUs) {
+        this.settleDelayUs = settleDelayUs;
+        this.minIntervalUs = minIntervalUs;
+    }
+
+    /**
+     * Handle an output frame.
+     *
+     * @param ptsUs       the frame timestamp, in microseconds
+     * @param size        the frame size, in bytes
+     * @param keyFrame    {@code true} if the frame is a key frame
+     * @param frameBudget the average frame size allowed by the bit rate, in bytes
+     * @return {@code true} if a refine must be triggered
+     */
+    public boolean onFrame(long ptsUs, int size, boolean keyFrame, int frameBudget) {
+        if (keyFrame) {
+            // a key frame is sharp, it does not need to be refined
+            motionFrames = 0;
+            return false;
+        }
+
+        if (size >= frameBudget / MOTION_SIZE_RATIO) {
+            ++motionFrames;
+            lastMotionPts = ptsUs;
+            return false;
+        }
+
+        if (motionFrames < MIN_MOTION_FRAMES || ptsUs - lastMotionPts < settleDelayUs) {
+            return false;
+        }
+        if (lastRefinePts != -1 && ptsUs - lastRefinePts < minIntervalUs) {
+            // the next settle will be refined, if any
+            return false;
+        }
+
+        motionFrames = 0;
+        lastRefinePts = ptsUs;
+        ++refineCount;
+        return true;
+    }
+
+    public long getRefineCount() {
+        return refineCount;
+    }
+}
@@ -0,0 +1,152 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keep the last codec config and the most recent packets, spanning several GOPs, so that the last seconds of the stream may be saved on
+ * demand (instant replay).
+ * <p>
+ * The packets are stored in a {@link PacketStore}. The oldest packets are evicted a whole GOP at a time, so that the buffer always starts
+ * from a key frame. All the packets are evicted when the codec config changes, since they could not be decoded with the new one.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class ReplayBuffer {
+
+    public static final int DEFAULT_MAX_PACKETS = 4096;
+
+    private final PacketStore store;
+    private final int capacity;
+    private Size configVideoSize;
+
+    /**
+     * Create a replay buffer.
+     *
+     * @param capacity      the size of the buffer for the packets, in bytes
+     * @param maxPackets    the maximum number of packets
+     * @param maxConfigSize the maximum size of a codec config packet, in bytes
+     */
+    public ReplayBuffer(int capacity, int maxPackets, int maxConfigSize) {
+        store = new PacketStore(capacity, maxPackets, maxConfigSize);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Copy a packet (the concatenation of {@code prefix} and {@code data}) into the buffer, evicting the oldest GOPs if necessary.
+     * <p>
+     * The positions of {@code prefix} and {@code data} are not changed.
+     *
+     * @param prefix the data to insert before the packet data, or {@code null}
+     * @param data   the packet data
+     * @param pts    the presentation timestamp, in microseconds, or {@link VideoPacket#NO_PTS} for codec config packets
+     * @param flags  the {@code VideoPacket.FLAG_*} flags
+     */
+    public void append(ByteBuffer prefix, ByteBuffer data, long pts, int flags) {
+        append(prefix, data, pts, flags, null);
+    }
+
+    /**
+     * Copy a packet into the buffer, like {@link #append(ByteBuffer, ByteBuffer, long, int)}, along with the video size of the codec
+     * config.
+     *
+     * @param videoSize the video size, stored with a codec config packet (ignored for other packets)
+     */
+    public void append(ByteBuffer prefix, ByteBuffer data, long pts, int flags, Size videoSize) {
+        if ((flags & VideoPacket.FLAG_CONFIG) != 0) {
+            // the packets encoded with the previous config are useless
+            store.setConfig(prefix, data, flags);
+            configVideoSize = videoSize;
+            return;
+        }
+
+        int packetSize = data.remaining() + (prefix != null ? prefix.remaining() : 0);
+        if (!store.hasConfig() || packetSize == 0) {
+            return;
+        }
+
+        if (packetSize > capacity) {
+            // the next packets could not be decoded without this one
+            store.clear();
+            return;
+        }
+
+        while (!store.fits(packetSize)) {
+            evictOldestGop();
+        }
+
+        if (store.getPacketCount() == 0 && (flags & VideoPacket.FLAG_KEY_FRAME) == 0) {
+            // a replay must start from a key frame
+            return;
+        }
+
+        store.add(prefix, data, pts, flags);
+    }
+
+    private void evictOldestGop() {
+        do {
+            store.removeOldest();
+        } while (store.getPacketCount() > 0 && (store.getFlags(0) & VideoPacket.FLAG_KEY_FRAME) == 0);
+    }
+
+    /**
+     * Return the number of buffered packets, excluding the codec config.
+     */
+    public int getPacketCount() {
+        return store.getPacketCount();
+    }
+
+    /**
+     * Return the number of bytes used by the buffered packets, excluding the codec config.
+     */
+    public int getSize() {
+        return store.getSize();
+    }
+
+    /**
+     * Return the video size stored with the current codec config, or {@code null} if none.
+     */
+    public Size getConfigVideoSize() {
+        return store.hasConfig() ? configVideoSize : null;
+    }
+
+    /**
+     * Return the time between the oldest and the newest buffered packets, in microseconds.
+     */
+    public long getDurationUs() {
+        int packetCount = store.getPacketCount();
+        if (packetCount == 0) {
+            return 0;
+        }
+        return store.getPts(packetCount - 1) - store.getPts(0);
+    }
+
+    /**
+     * Copy the codec config followed by the buffered packets covering the last {@code durationUs} microseconds.
+     * <p>
+     * The copy starts from the last key frame at least {@code durationUs} before the newest packet (or from the oldest packet if the
+     * buffer does not cover that duration).
+     *
+     * @param durationUs the duration to copy, in microseconds, or 0 to copy all the buffered packets
+     * @return the snapshot, or {@code null} if the buffer is empty
+     */
+    public PacketSnapshot snapshot(long durationUs) {
+        int packetCount = store.getPacketCount();
+        if (packetCount == 0) {
+            return null;
+        }
+
+        int first = 0;
+        if (durationUs > 0) {
+            long startPts = store.getPts(packetCount - 1) - durationUs;
+            for (int i = 1; i < packetCount; ++i) {
+                if (store.getPts(i) > startPts) {
+                    break;
+                }
+                if ((store.getFlags(i) & VideoPacket.FLAG_KEY_FRAME) != 0) {
+                    first = i;
+                }
+            }
+        }
+        return store.snapshot(first);
+    }
+}
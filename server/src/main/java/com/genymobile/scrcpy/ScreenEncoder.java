@@ -6,120 +6,604 @@ import android.graphics.Rect;
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Bundle;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.view.Surface;
 
-import java.io.FileDescriptor;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ScreenEncoder implements Device.RotationListener {
 
+    public interface VideoSizeListener {
+        void onVideoSizeChanged(Size size);
+    }
+
     private static final int DEFAULT_I_FRAME_INTERVAL = 10; // seconds
     private static final int REPEAT_FRAME_DELAY_US = 100_000; // repeat after 100ms
     private static final String KEY_MAX_FPS_TO_ENCODER = "max-fps-to-encoder";
-
-    private static final int NO_PTS = -1;
-
-    private final AtomicBoolean rotationChanged = new AtomicBoolean();
-    private final ByteBuffer headerBuffer = ByteBuffer.allocate(12);
+    // delay without rotation before restarting the encoder
+    private static final long ROTATION_DEBOUNCE_MS = 50;
+    // minimal delay between two key frames requested by the client
+    private static final long MIN_KEY_FRAME_REQUEST_INTERVAL_MS = 500;
+    // error returned by some hardware encoders when the video size is not supported
+    private static final int ERROR_UNSUPPORTED_SIZE = 0xfffffc0e;
+    // max sizes to retry with (in that order) when the encoder does not support the video size
+    private static final int[] MAX_SIZE_FALLBACKS = {2560, 1920, 1600, 1280, 1024, 800};
+
+    private static final long FRAME_RATE_STATS_INTERVAL_MS = 5000;
+
+    // the bit rate is doubled for the refine key frame
+    private static final int REFINE_BIT_RATE_FACTOR = 2;
+    // restore the bit rate even if the refine key frame is not produced
+    private static final long REFINE_TIMEOUT_US = 1_000_000;
+    // to compute the per-frame budget if the frame rate is not limited
+    private static final int DEFAULT_FRAME_RATE = 60;
+
+    private final AtomicBoolean restartRequested = new AtomicBoolean();
+    // the display of the current stream and the screen info its projection was set from, to update the projection at runtime
+    private final Object displayLock = new Object();
+    private IBinder projectionDisplay; // guarded by displayLock
+    private ScreenInfo projectionScreenInfo; // guarded by displayLock
+
+    // the max size requested at runtime, applied on the next session (-1 if none)
+    private final AtomicInteger pendingMaxSize = new AtomicInteger(-1);
+
+    // written under pauseLock
+    private volatile boolean paused;
+    private final Object pauseLock = new Object();
+    private volatile long lastRotationTime;
 
     private List<CodecOption> codecOptions;
-    private int bitRate;
-    private int maxFps;
-    private boolean sendFrameMeta;
-    private long ptsOrigin;
-
-    public ScreenEncoder(boolean sendFrameMeta, int bitRate, int maxFps, List<CodecOption> codecOptions) {
-        this.sendFrameMeta = sendFrameMeta;
+    // may be changed at runtime by the controller
+    private volatile int bitRate;
+    private volatile int maxFps;
+    private VideoCodec videoCodec;
+    private String encoderName;
+    private EncoderCache encoderCache;
+    private boolean lowLatency;
+    // the low latency knobs supported by the selected encoder (null if disabled)
+    private LowLatencyProfile lowLatencyProfile;
+    // the name of the encoder selected for the first session, reused if the codec must be recreated
+    private String selectedEncoderName;
+    private boolean keyFrameRequested;
+    // the bit rate currently used by the codec (only accessed by the output thread, once the codec is configured)
+    private final CodecBitRate codecBitRate = new CodecBitRate(REFINE_BIT_RATE_FACTOR);
+    private VideoSizeListener videoSizeListener;
+
+    // before Android 10, the encoder ignores KEY_MAX_FPS_TO_ENCODER, so the frame rate is limited by suspending the encoder input (null
+    // if not needed, created on streaming)
+    private FrameRateLimiter frameRateLimiter;
+    private InputThrottle inputThrottle;
+
+    // null if the idle detection is disabled
+    private IdleDetector idleDetector;
+
+    // null if the refine is disabled
+    private RefineDetector refineDetector;
+    // the codec bit rate is boosted until the refine key frame is produced
+    private long refineStartPts;
+    // null if the timing SEI is disabled, reused for every frame
+    private ByteBuffer timingSei;
+    // the consumers of the packets other than the client socket (video subscribers, instant replay, recorder)
+    private final List<PacketSink> sinks = new ArrayList<>();
+    // the writer of the current stream, to change the adaptive bit rate ceiling
+    private volatile PacketWriter activeWriter;
+
+    // timings of the last restart, logged on the first frame (written before codec.start(), read by the output thread)
+    private volatile long restartStartTime;
+    private volatile long restartCodecStartTime;
+    private volatile String restartTimings;
+    // the size of the video produced by the current session (written before codec.start(), read by the output thread)
+    private volatile Size sessionVideoSize;
+
+    // only used in asynchronous mode (Android >= 6)
+    private volatile CodecEventLoop eventLoop;
+
+    // the codec of the current session, while it is started
+    private MediaCodec runningCodec; // guarded by runningCodecLock
+    private long lastKeyFrameRequestTime; // guarded by runningCodecLock
+    private final Object runningCodecLock = new Object();
+
+    public ScreenEncoder(int bitRate, int maxFps, List<CodecOption> codecOptions, VideoCodec videoCodec, String encoderName,
+            EncoderCache encoderCache, boolean lowLatency) {
         this.bitRate = bitRate;
         this.maxFps = maxFps;
         this.codecOptions = codecOptions;
+        this.videoCodec = videoCodec;
+        this.encoderName = encoderName;
+        this.encoderCache = encoderCache;
+        this.lowLatency = lowLatency;
     }
 
     @Override
     public void onRotationChanged(int rotation) {
-        rotationChanged.set(true);
+        lastRotationTime = SystemClock.uptimeMillis();
+        requestRestart();
+    }
+
+    /**
+     * Request to restart the encoding session, to apply new settings (may be called from any thread).
+     */
+    private void requestRestart() {
+        restartRequested.set(true);
+        CodecEventLoop loop = eventLoop;
+        if (loop != null) {
+            // in asynchronous mode, the restart must be handled even if the codec produces no output
+            loop.wakeUp();
+        }
+    }
+
+    /**
+     * Set the listener notified when the video size is changed to match the encoder requirements (must be called before
+     * {@link #streamScreen(Device, PacketWriter)}).
+     */
+    public void setVideoSizeListener(VideoSizeListener videoSizeListener) {
+        this.videoSizeListener = videoSizeListener;
+    }
+
+    /**
+     * Set the detector pausing the stream while the screen content does not change (must be called before
+     * {@link #streamScreen(Device, PacketWriter)} and before any call to {@link #wakeUp()}).
+     */
+    public void setIdleDetector(IdleDetector idleDetector) {
+        this.idleDetector = idleDetector;
+    }
+
+    /**
+     * Set the detector triggering a sharp key frame once the content stops moving (must be called before
+     * {@link #streamScreen(Device, PacketWriter)}).
+     */
+    public void setRefineDetector(RefineDetector refineDetector) {
+        this.refineDetector = refineDetector;
+    }
+
+    /**
+     * Insert a timing SEI before each frame, to measure the latency of each stage (must be called before
+     * {@link #streamScreen(Device, PacketWriter)}).
+     */
+    public void setTimingSeiEnabled(boolean enabled) {
+        timingSei = enabled ? ByteBuffer.allocate(TimingSei.getSize(true)) : null;
+    }
+
+    /**
+     * Feed the packets sent to the client to an additional consumer (must be called before {@link #streamScreen(Device, PacketWriter)}).
+     */
+    public void addSink(PacketSink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Return the size of the video produced by the current session, i.e. the size matching the last codec config packet (may be called
+     * from a {@link PacketSink}).
+     */
+    public Size getSessionVideoSize() {
+        return sessionVideoSize;
+    }
+
+    /**
+     * Resume the stream immediately if it is paused because the screen is idle (may be called from any thread).
+     * <p>
+     * This is typically called when an input event is injected, since the content is likely to change.
+     */
+    public void wakeUp() {
+        if (idleDetector != null && idleDetector.isPaused()) {
+            // the stream is resumed on the next key frame
+            requestKeyFrame();
+        }
+    }
+
+    public boolean consumeRestartRequest() {
+        // a pause requested while a session was starting must not be lost
+        return restartRequested.getAndSet(false) || paused;
+    }
+
+    /**
+     * Pause or resume the video stream (may be called from any thread).
+     * <p>
+     * On pause, the encoding session is stopped and the virtual display is released, so that nothing is captured nor encoded. On resume,
+     * a new session is started, so that the codec config and a key frame are sent immediately.
+     *
+     * @param newPaused {@code true} to pause, {@code false} to resume
+     */
+    public void setPaused(boolean newPaused) {
+        synchronized (pauseLock) {
+            if (paused == newPaused) {
+                return;
+            }
+            paused = newPaused;
+            pauseLock.notify();
+        }
+        if (newPaused) {
+            requestRestart();
+        }
+    }
+
+    private void waitForResume() throws IOException {
+        Ln.i("Video stream paused");
+        synchronized (pauseLock) {
+            try {
+                while (paused) {
+                    pauseLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+        Ln.i("Video stream resumed");
+    }
+
+    /**
+     * Change the max frame rate (may be called from any thread).
+     * <p>
+     * The max frame rate can only be set on configure(), so the encoding session is restarted (like on rotation, the display and the
+     * codec are kept).
+     *
+     * @param newMaxFps the new max frame rate (0 for no limit)
+     */
+    public void setMaxFps(int newMaxFps) {
+        if (newMaxFps != maxFps) {
+            maxFps = newMaxFps;
+            requestRestart();
+        }
+    }
+
+    /**
+     * Change the max size of the video (may be called from any thread).
+     * <p>
+     * The encoding session is restarted with the new video size (like on rotation, the display and the codec are kept), and the video
+     * size listener is notified.
+     *
+     * @param maxSize the new max size, a multiple of 8 (0 for no limit)
+     */
+    public void setMaxSize(int maxSize) {
+        pendingMaxSize.set(maxSize);
+        requestRestart();
+    }
+
+    /**
+     * Apply a new content rect (typically a new crop) to the display projection (may be called from any thread).
+     * <p>
+     * If the video size and rotation are unchanged, only the projection is updated, the codec keeps running. Otherwise, the encoding
+     * session is restarted.
+     *
+     * @param screenInfo the new screen info
+     */
+    public void updateProjection(ScreenInfo screenInfo) {
+        synchronized (displayLock) {
+            if (projectionDisplay != null && screenInfo.getVideoSize().equals(projectionScreenInfo.getVideoSize())
+                    && screenInfo.getVideoRotation() == projectionScreenInfo.getVideoRotation()) {
+                setDisplayProjection(projectionDisplay, screenInfo.getVideoRotation(), screenInfo.getContentRect(),
+                        screenInfo.getUnlockedVideoSize().toRect());
+                projectionScreenInfo = screenInfo;
+                return;
+            }
+        }
+        requestRestart();
+    }
+
+    /**
+     * Change the bit rate (may be called from any thread).
+     * <p>
+     * The bit rate is applied to the running codec without restarting it, by the output thread on the next packet (so that only this
+     * thread changes the codec bit rate). If the adaptive bit rate is enabled, the new bit rate is its ceiling.
+     *
+     * @param newBitRate the new bit rate, in bits/s
+     */
+    public void setBitRate(int newBitRate) {
+        bitRate = newBitRate;
+        PacketWriter writer = activeWriter;
+        if (writer != null) {
+            writer.setMaxBitRate(newBitRate);
+        }
+    }
+
+    /**
+     * Return the bit rate the codec should use: the adaptive bit rate if enabled, or the bit rate requested by the client.
+     */
+    private int getTargetBitRate(PacketWriter writer) {
+        int targetBitRate = writer.getTargetBitRate();
+        return targetBitRate > 0 ? targetBitRate : bitRate;
+    }
+
+    /**
+     * Request the running codec to produce a key frame as soon as possible (may be called from any thread).
+     * <p>
+     * The requests are rate-limited: a request received less than {@link #MIN_KEY_FRAME_REQUEST_INTERVAL_MS} after the previous one is
+     * ignored, since the key frame previously requested is about to be produced anyway.
+     *
+     * @return {@code true} if the key frame has been requested, {@code false} if the request has been ignored
+     */
+    public boolean requestKeyFrame() {
+        long now = SystemClock.uptimeMillis();
+        synchronized (runningCodecLock) {
+            if (runningCodec == null) {
+                // the next session will start with a key frame
+                return false;
+            }
+            if (now - lastKeyFrameRequestTime < MIN_KEY_FRAME_REQUEST_INTERVAL_MS) {
+                return false;
+            }
+            lastKeyFrameRequestTime = now;
+            requestKeyFrame(runningCodec);
+            return true;
+        }
     }
 
-    public boolean consumeRotationChange() {
-        return rotationChanged.getAndSet(false);
+    private void setRunningCodec(MediaCodec codec) {
+        synchronized (runningCodecLock) {
+            runningCodec = codec;
+        }
+        if (inputThrottle != null) {
+            inputThrottle.setCodec(codec);
+        }
     }
 
-    public void streamScreen(Device device, FileDescriptor fd) throws IOException {
+    public void streamScreen(Device device, PacketWriter writer) throws IOException {
         Workarounds.prepareMainLooper();
 
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            frameRateLimiter = new FrameRateLimiter(maxFps);
+            inputThrottle = new InputThrottle();
+        }
+        activeWriter = writer;
         try {
-            internalStreamScreen(device, fd);
+            internalStreamScreen(device, writer);
         } catch (NullPointerException e) {
             // Retry with workarounds enabled:
             // <https://github.com/Genymobile/scrcpy/issues/365>
             // <https://github.com/Genymobile/scrcpy/issues/940>
             Ln.d("Applying workarounds to avoid NullPointerException");
             Workarounds.fillAppInfo();
-            internalStreamScreen(device, fd);
+            internalStreamScreen(device, writer);
+        } finally {
+            activeWriter = null;
+            if (inputThrottle != null) {
+                inputThrottle.quit();
+                inputThrottle = null;
+            }
         }
     }
 
-    private void internalStreamScreen(Device device, FileDescriptor fd) throws IOException {
-        MediaFormat format = createFormat(bitRate, maxFps, codecOptions);
+    private void internalStreamScreen(Device device, PacketWriter writer) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // MediaCodec.setCallback(Callback, Handler) is available since Android 6
+            eventLoop = new CodecEventLoop();
+        }
         device.setRotationListener(this);
+        // the display and the codec are kept for all the sessions, only the codec input surface is replaced on restart
+        IBinder display = createDisplay();
+        MediaCodec codec = null;
+        Surface surface = null;
         boolean alive;
         try {
+            // the client only knows the initial video size, it must be notified if it is changed before the first session
+            Size initialVideoSize = device.getScreenInfo().getVideoSize();
+            codec = createFirstCodec(device);
+            boolean videoSizeChanged = !initialVideoSize.equals(device.getScreenInfo().getVideoSize());
+            // set when the max size has been reduced because the encoder failed
+            boolean sizeFallback = false;
+            long stopTime = 0; // 0 for the first session
+            long stopDuration = 0;
             do {
-                MediaCodec codec = createCodec();
-                IBinder display = createDisplay();
-                ScreenInfo screenInfo = device.getScreenInfo();
-                Rect contentRect = screenInfo.getContentRect();
-                // include the locked video orientation
-                Rect videoRect = screenInfo.getVideoSize().toRect();
-                // does not include the locked video orientation
-                Rect unlockedVideoRect = screenInfo.getUnlockedVideoSize().toRect();
-                int videoRotation = screenInfo.getVideoRotation();
-                int layerStack = device.getLayerStack();
-
-                setSize(format, videoRect.width(), videoRect.height());
-                configure(codec, format);
-                Surface surface = codec.createInputSurface();
-                setDisplaySurface(display, surface, videoRotation, contentRect, unlockedVideoRect, layerStack);
-                codec.start();
-                try {
-                    alive = encode(codec, fd);
-                    // do not call stop() on exception, it would trigger an IllegalStateException
-                    codec.stop();
-                } finally {
-                    destroyDisplay(display);
-                    codec.release();
-                    surface.release();
+                long debounceDuration = 0;
+                if (stopTime != 0 && paused) {
+                    // nothing is captured nor encoded while paused
+                    releaseDisplay(display);
+                    display = null;
+                    waitForResume();
+                    display = createDisplay();
+                    stopTime = SystemClock.uptimeMillis();
+                }
+                if (stopTime != 0) {
+                    debounceDuration = waitForRotationsEnd();
+                }
+
+                int newMaxSize = pendingMaxSize.getAndSet(-1);
+                if (newMaxSize != -1) {
+                    device.setMaxSize(newMaxSize);
+                    videoSizeChanged = true;
+                }
+
+                ScreenInfo screenInfo;
+                // retry with a lower size as long as the encoder does not support the video size
+                while (true) {
+                    // the current screen info and settings are read just below, so any pending restart request is handled by this session
+                    consumeRestartRequest();
+                    screenInfo = device.getScreenInfo();
+                    // include the locked video orientation
+                    Size videoSize = screenInfo.getVideoSize();
+
+                    MediaFormat format = createFormat(videoCodec.getMimeType(), bitRate, maxFps, codecOptions, lowLatencyProfile);
+                    setSize(format, videoSize.getWidth(), videoSize.getHeight());
+                    int targetBitRate = getTargetBitRate(writer);
+                    codecBitRate.reset(targetBitRate);
+                    format.setInteger(MediaFormat.KEY_BIT_RATE, targetBitRate);
+
+                    long configureStartTime = SystemClock.uptimeMillis();
+                    try {
+                        try {
+                            configure(codec, format, writer);
+                        } catch (IllegalStateException e) {
+                            if (stopTime == 0 || isUnsupportedSize(e)) {
+                                throw e;
+                            }
+                            // some codecs may not support to be reconfigured after stop(), use a new one
+                            Ln.w("Could not reconfigure the codec, recreating it: " + e.getMessage());
+                            codec.release();
+                            codec = null;
+                            codec = createCodec(screenInfo.getVideoSize());
+                            configure(codec, format, writer);
+                        }
+                        Surface newSurface = codec.createInputSurface();
+
+                        long displayStartTime = SystemClock.uptimeMillis();
+                        setDisplaySurface(device, display, newSurface, screenInfo);
+                        if (surface != null) {
+                            surface.release();
+                        }
+                        surface = newSurface;
+
+                        long startStartTime = SystemClock.uptimeMillis();
+                        if (stopTime != 0) {
+                            // logged on the first key frame
+                            restartStartTime = stopTime;
+                            restartCodecStartTime = startStartTime;
+                            restartTimings = "stop=" + stopDuration + "ms, debounce=" + debounceDuration + "ms, configure="
+                                    + (displayStartTime - configureStartTime) + "ms, display=" + (startStartTime - displayStartTime) + "ms";
+                        }
+                        sessionVideoSize = screenInfo.getVideoSize();
+                        codec.start();
+                        break;
+                    } catch (IllegalArgumentException | IllegalStateException e) {
+                        if (isUnsupportedSize(e) && reduceMaxSize(device)) {
+                            videoSizeChanged = true;
+                            sizeFallback = true;
+                        } else if (lowLatencyProfile != null) {
+                            Ln.w("Could not configure the encoder with the low latency settings, disabling them: " + e.getMessage());
+                            lowLatencyProfile = null;
+                        } else {
+                            throw e;
+                        }
+                        // the codec is possibly in the error state, it must be recreated
+                        codec.release();
+                        codec = null;
+                        codec = createCodec(device.getScreenInfo().getVideoSize());
+                    }
+                }
+
+                if (stopTime == 0 && lowLatencyProfile != null) {
+                    lowLatencyProfile.report(codec.getInputFormat(), codec.getOutputFormat());
                 }
+                if (videoSizeChanged) {
+                    onVideoSizeChanged(screenInfo.getVideoSize(), sizeFallback);
+                    videoSizeChanged = false;
+                    sizeFallback = false;
+                }
+                setRunningCodec(codec);
+
+                if (eventLoop != null) {
+                    // handle a rotation which could have occurred before the session was prepared
+                    eventLoop.wakeUp();
+                    alive = eventLoop.await();
+                } else {
+                    alive = encode(codec, writer);
+                }
+
+                stopTime = SystemClock.uptimeMillis();
+                setRunningCodec(null);
+                // do not call stop() on exception, it would trigger an IllegalStateException
+                codec.stop();
+                stopDuration = SystemClock.uptimeMillis() - stopTime;
             } while (alive);
         } finally {
+            setRunningCodec(null);
             device.setRotationListener(null);
+            if (eventLoop != null) {
+                eventLoop.quit();
+                eventLoop = null;
+            }
+            if (display != null) {
+                releaseDisplay(display);
+            }
+            if (codec != null) {
+                codec.release();
+            }
+            if (surface != null) {
+                surface.release();
+            }
+        }
+    }
+
+    private void releaseDisplay(IBinder display) {
+        synchronized (displayLock) {
+            projectionDisplay = null;
+            projectionScreenInfo = null;
         }
+        destroyDisplay(display);
     }
 
-    private boolean encode(MediaCodec codec, FileDescriptor fd) throws IOException {
+    /**
+     * Replace the display surface and set the projection of the screen info, in a single transaction.
+     */
+    private void setDisplaySurface(Device device, IBinder display, Surface surface, ScreenInfo screenInfo) {
+        Rect contentRect = screenInfo.getContentRect();
+        // does not include the locked video orientation
+        Rect unlockedVideoRect = screenInfo.getUnlockedVideoSize().toRect();
+        int videoRotation = screenInfo.getVideoRotation();
+        int layerStack = device.getLayerStack();
+        synchronized (displayLock) {
+            setDisplaySurface(display, surface, videoRotation, contentRect, unlockedVideoRect, layerStack);
+            projectionDisplay = display;
+            projectionScreenInfo = screenInfo;
+        }
+        if (device.getScreenInfo() != screenInfo) {
+            // changed concurrently (e.g. a new crop), the projection may be outdated
+            requestRestart();
+        }
+    }
+
+    private void configure(MediaCodec codec, MediaFormat format, PacketWriter writer) {
+        if (eventLoop != null) {
+            // the callback must be set before configure()
+            eventLoop.prepare(codec, createEventLoopListener(codec, writer));
+        }
+        configure(codec, format);
+    }
+
+    /**
+     * Wait until no rotation occurred for {@link #ROTATION_DEBOUNCE_MS}, so that a burst of rotation changes triggers a single restart.
+     *
+     * @return the time spent waiting, in milliseconds
+     */
+    private long waitForRotationsEnd() {
+        long start = SystemClock.uptimeMillis();
+        long now = start;
+        long delay = lastRotationTime + ROTATION_DEBOUNCE_MS - now;
+        while (delay > 0) {
+            SystemClock.sleep(delay);
+            now = SystemClock.uptimeMillis();
+            delay = lastRotationTime + ROTATION_DEBOUNCE_MS - now;
+        }
+        return now - start;
+    }
+
+    CodecEventLoop.Listener createEventLoopListener(final MediaCodec codec, final PacketWriter writer) {
+        return new CodecEventLoop.Listener() {
+            @Override
+            public void onOutputBuffer(ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo) throws IOException {
+                pushPacket(codec, writer, codecBuffer, bufferInfo);
+            }
+
+            @Override
+            public boolean consumeRestartRequest() {
+                return ScreenEncoder.this.consumeRestartRequest();
+            }
+        };
+    }
+
+    private boolean encode(MediaCodec codec, PacketWriter writer) throws IOException {
         boolean eof = false;
         MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
 
-        while (!consumeRotationChange() && !eof) {
+        while (!consumeRestartRequest() && !eof) {
             int outputBufferId = codec.dequeueOutputBuffer(bufferInfo, -1);
             eof = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
             try {
-                if (consumeRotationChange()) {
+                if (consumeRestartRequest()) {
                     // must restart encoding with new size
                     break;
                 }
                 if (outputBufferId >= 0) {
                     ByteBuffer codecBuffer = codec.getOutputBuffer(outputBufferId);
-
-                    if (sendFrameMeta) {
-                        writeFrameMeta(fd, bufferInfo, codecBuffer.remaining());
-                    }
-
-                    IO.writeFully(fd, codecBuffer);
+                    pushPacket(codec, writer, codecBuffer, bufferInfo);
                 }
             } finally {
                 if (outputBufferId >= 0) {
@@ -131,27 +615,318 @@ public class ScreenEncoder implements Device.RotationListener {
         return !eof;
     }
 
-    private void writeFrameMeta(FileDescriptor fd, MediaCodec.BufferInfo bufferInfo, int packetSize) throws IOException {
-        headerBuffer.clear();
-
+    private void pushPacket(MediaCodec codec, PacketWriter writer, ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo)
+            throws IOException {
+        long dequeueTimeUs = System.nanoTime() / 1000;
         long pts;
-        if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
-            pts = NO_PTS; // non-media data packet
+        int flags = getFlags(codecBuffer, bufferInfo);
+        int size = codecBuffer.remaining();
+        ByteBuffer data = codecBuffer;
+        if ((flags & VideoPacket.FLAG_CONFIG) != 0) {
+            pts = VideoPacket.NO_PTS; // non-media data packet
+            if (lowLatency && videoCodec == VideoCodec.H264) {
+                data = rewriteSps(codecBuffer);
+            }
         } else {
-            if (ptsOrigin == 0) {
-                ptsOrigin = bufferInfo.presentationTimeUs;
+            pts = bufferInfo.presentationTimeUs;
+            boolean keyFrame = (flags & VideoPacket.FLAG_KEY_FRAME) != 0;
+            if (!acceptNonIdleFrame(codec, pts, size, keyFrame)) {
+                return;
+            }
+            if (keyFrame) {
+                keyFrameRequested = false;
+                logRestartTimings();
+            }
+            if (!acceptFrame(pts, (flags & VideoPacket.FLAG_NON_REFERENCE) != 0)) {
+                return;
+            }
+            refineIfSettled(codec, writer, pts, size, keyFrame);
+        }
+
+        ByteBuffer prefix = null;
+        if (timingSei != null && pts != VideoPacket.NO_PTS) {
+            // the write time is set by the writer, just before the packet is written
+            timingSei.clear();
+            TimingSei.write(timingSei, videoCodec == VideoCodec.H265, pts, dequeueTimeUs, 0);
+            timingSei.flip();
+            prefix = timingSei;
+            flags |= VideoPacket.FLAG_TIMING_SEI;
+        }
+        for (PacketSink sink : sinks) {
+            // before the writer, which consumes the buffers
+            sink.push(prefix, data, pts, flags);
+        }
+        writer.push(prefix, data, pts, flags);
+
+        if (writer.isWaitingKeyFrame() && !keyFrameRequested) {
+            // packets have been dropped, the client could not decode anything before the next key frame
+            requestKeyFrame(codec);
+            keyFrameRequested = true;
+        }
+
+        // the client or the adaptive bit rate controller may have requested a change
+        int newBitRate = codecBitRate.update(getTargetBitRate(writer));
+        if (newBitRate != 0) {
+            setBitRate(codec, newBitRate);
+        }
+    }
+
+    /**
+     * Drop the frames while the screen is idle, if the idle detection is enabled.
+     *
+     * @return {@code true} if the frame must be sent
+     */
+    private boolean acceptNonIdleFrame(MediaCodec codec, long pts, int size, boolean keyFrame) {
+        if (idleDetector == null) {
+            return true;
+        }
+        boolean wasPaused = idleDetector.isPaused();
+        boolean accepted = idleDetector.accept(pts, size, keyFrame);
+        boolean nowPaused = idleDetector.isPaused();
+        if (nowPaused != wasPaused) {
+            if (nowPaused) {
+                Ln.d("Screen idle, video stream paused");
+            } else {
+                Ln.d("Video stream resumed (paused " + idleDetector.getPauseCount() + " times, " + idleDetector.getDroppedCount()
+                        + " frames dropped)");
+            }
+        }
+        if (idleDetector.isKeyFrameNeeded() && !keyFrameRequested) {
+            // the content changed, the frames to send depend on the dropped frames
+            requestKeyFrame(codec);
+            keyFrameRequested = true;
+        }
+        return accepted;
+    }
+
+    /**
+     * Once the content stops moving, boost the bit rate and request a key frame, so that the last (blurry) frame is replaced by a sharp
+     * one. The bit rate is restored on the next key frame.
+     */
+    private void refineIfSettled(MediaCodec codec, PacketWriter writer, long pts, int size, boolean keyFrame) {
+        if (refineDetector == null) {
+            return;
+        }
+        if (codecBitRate.isRefining()) {
+            if (keyFrame || pts - refineStartPts >= REFINE_TIMEOUT_US) {
+                // the target bit rate may have been changed during the refine
+                setBitRate(codec, codecBitRate.endRefine(getTargetBitRate(writer)));
             }
-            pts = bufferInfo.presentationTimeUs - ptsOrigin;
+            return;
         }
 
-        headerBuffer.putLong(pts);
-        headerBuffer.putInt(packetSize);
-        headerBuffer.flip();
-        IO.writeFully(fd, headerBuffer);
+        int frameRate = maxFps > 0 ? maxFps : DEFAULT_FRAME_RATE;
+        int frameBudget = getTargetBitRate(writer) / 8 / frameRate;
+        if (!refineDetector.onFrame(pts, size, keyFrame, frameBudget)) {
+            return;
+        }
+        int targetBitRate = writer.getTargetBitRate();
+        if (targetBitRate > 0 && targetBitRate < bitRate) {
+            // the connection is congested, a large key frame would increase the latency
+            return;
+        }
+        Ln.d("Content settled, refining (" + refineDetector.getRefineCount() + " refines)");
+        setBitRate(codec, codecBitRate.startRefine(getTargetBitRate(writer)));
+        requestKeyFrame(codec);
+        keyFrameRequested = true;
+        refineStartPts = pts;
     }
 
-    private static MediaCodec createCodec() throws IOException {
-        return MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_VIDEO_AVC);
+    /**
+     * Apply the software frame rate limit, if any: suspend the encoder input until the next frame is allowed, and drop the frames
+     * exceeding the limit if possible.
+     *
+     * @param pts       the frame timestamp
+     * @param droppable {@code true} if the frame is not used as reference by other frames
+     * @return {@code true} if the frame must be sent
+     */
+    private boolean acceptFrame(long pts, boolean droppable) {
+        if (frameRateLimiter == null) {
+            return true;
+        }
+        // the max fps may be changed at runtime
+        frameRateLimiter.setMaxFps(maxFps);
+        boolean accepted = frameRateLimiter.accept(pts, droppable);
+        if (accepted) {
+            long suspendDurationUs = frameRateLimiter.getInputSuspendDurationUs(System.nanoTime() / 1000);
+            if (suspendDurationUs > 0) {
+                inputThrottle.suspend(suspendDurationUs);
+            }
+        }
+        if (frameRateLimiter.getMaxFps() > 0) {
+            String stats = frameRateLimiter.pollStats(SystemClock.uptimeMillis(), FRAME_RATE_STATS_INTERVAL_MS);
+            if (stats != null) {
+                Ln.d("Frame rate limiter: " + stats);
+            }
+        }
+        return accepted;
+    }
+
+    private void logRestartTimings() {
+        String timings = restartTimings;
+        if (timings != null) {
+            restartTimings = null;
+            long now = SystemClock.uptimeMillis();
+            Ln.i("Encoder restarted in " + (now - restartStartTime) + "ms (" + timings + ", start to first frame=" + (now - restartCodecStartTime)
+                    + "ms)");
+        }
+    }
+
+    private static void requestKeyFrame(MediaCodec codec) {
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        codec.setParameters(params);
+    }
+
+    private static void setBitRate(MediaCodec codec, int bitRate) {
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitRate);
+        codec.setParameters(params);
+    }
+
+    /**
+     * Rewrite the SPS of a config packet so that the client decoder does not buffer frames.
+     *
+     * @return the rewritten config packet, or the original one if it could not be rewritten
+     */
+    private static ByteBuffer rewriteSps(ByteBuffer config) {
+        try {
+            ByteBuffer rewritten = SpsRewriter.rewriteConfig(config);
+            if (rewritten != null) {
+                Ln.d("SPS rewritten for minimal decoder buffering");
+                return rewritten;
+            }
+        } catch (IllegalArgumentException e) {
+            Ln.w("Could not rewrite SPS: " + e.getMessage());
+        }
+        return config;
+    }
+
+    /**
+     * Compute the {@code VideoPacket.FLAG_*} flags of a codec output buffer, from the codec flags and the NAL unit types.
+     * <p>
+     * Some encoders do not set {@code BUFFER_FLAG_KEY_FRAME} on every IDR (for example when the parameter sets are repeated in the
+     * same buffer), so both sources are combined.
+     */
+    private int getFlags(ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo) {
+        if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+            return VideoPacket.FLAG_CONFIG;
+        }
+        int flags = videoCodec == VideoCodec.H265 ? AnnexB.scanFrameFlagsHevc(codecBuffer) : AnnexB.scanFrameFlags(codecBuffer);
+        if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0) {
+            flags = VideoPacket.FLAG_KEY_FRAME;
+        }
+        return flags;
+    }
+
+    private static boolean isUnsupportedSize(RuntimeException e) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && e instanceof MediaCodec.CodecException) {
+            // MediaCodec.CodecException.getErrorCode() is available since Android 6
+            return ((MediaCodec.CodecException) e).getErrorCode() == ERROR_UNSUPPORTED_SIZE;
+        }
+        return false;
+    }
+
+    /**
+     * Reduce the max size to the next step of the fallback ladder.
+     *
+     * @return {@code true} if the max size has been reduced, {@code false} if there is no lower step
+     */
+    private static boolean reduceMaxSize(Device device) {
+        Size videoSize = device.getScreenInfo().getVideoSize();
+        int currentMaxSize = Math.max(videoSize.getWidth(), videoSize.getHeight());
+        for (int maxSize : MAX_SIZE_FALLBACKS) {
+            if (maxSize < currentMaxSize) {
+                Ln.w("The encoder does not support " + videoSize.getWidth() + "x" + videoSize.getHeight() + ", retrying with max size "
+                        + maxSize);
+                device.setMaxSize(maxSize);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reduce the max size if the video size does not fit in the size known to work with the encoder (from a previous run).
+     *
+     */
+    private void applyKnownMaxSize(Device device) {
+        EncoderCache.Entry entry = getCacheEntry();
+        if (entry == null) {
+            return;
+        }
+        Size videoSize = device.getScreenInfo().getVideoSize();
+        if (entry.accepts(videoSize)) {
+            return;
+        }
+        int major = Math.max(videoSize.getWidth(), videoSize.getHeight());
+        int minor = Math.min(videoSize.getWidth(), videoSize.getHeight());
+        int entryMajor = Math.max(entry.getMaxWidth(), entry.getMaxHeight());
+        int entryMinor = Math.min(entry.getMaxWidth(), entry.getMaxHeight());
+        // the largest max size for which both dimensions fit, preserving the aspect ratio
+        int maxSize = Math.min(entryMajor, (int) ((long) major * entryMinor / minor)) & ~7;
+        Ln.i("Using max size " + maxSize + " (known to work with the encoder " + entry.getEncoderName() + ")");
+        device.setMaxSize(maxSize);
+    }
+
+    /**
+     * Create the codec for the first session, and adapt the video size and the format settings to it.
+     */
+    private MediaCodec createFirstCodec(Device device) throws IOException {
+        applyKnownMaxSize(device);
+        MediaCodec codec = createCodec(device.getScreenInfo().getVideoSize());
+        MediaCodecInfo info = codec.getCodecInfo();
+        // align the video size on the encoder requirements
+        device.setVideoConstraints(EncoderSelector.getConstraints(info, videoCodec.getMimeType()));
+        if (lowLatency) {
+            lowLatencyProfile = LowLatencyProfile.create(info, videoCodec.getMimeType(), maxFps);
+            if (lowLatencyProfile.isEmpty()) {
+                Ln.w("Low latency settings not supported on this device");
+                lowLatencyProfile = null;
+            }
+        }
+        return codec;
+    }
+
+    private void onVideoSizeChanged(Size videoSize, boolean sizeFallback) {
+        if (videoSizeListener != null) {
+            videoSizeListener.onVideoSizeChanged(videoSize);
+        }
+        if (sizeFallback) {
+            rememberWorkingSize(videoSize);
+        }
+    }
+
+    private void rememberWorkingSize(Size videoSize) {
+        EncoderCache.Entry entry = getCacheEntry();
+        if (entry != null && entry.getEncoderName().equals(selectedEncoderName)) {
+            // remember the size working with this encoder for the next run
+            encoderCache.put(videoCodec.getMimeType(), entry.withMaxSize(videoSize.getWidth(), videoSize.getHeight()));
+            encoderCache.save();
+        }
+    }
+
+    /**
+     * Return the cached entry for the encoder to use, or {@code null} if there is none.
+     */
+    private EncoderCache.Entry getCacheEntry() {
+        if (encoderCache == null) {
+            return null;
+        }
+        EncoderCache.Entry entry = encoderCache.get(videoCodec.getMimeType());
+        if (entry == null || (encoderName != null && !encoderName.equals(entry.getEncoderName()))) {
+            return null;
+        }
+        return entry;
+    }
+
+    private MediaCodec createCodec(Size videoSize) throws IOException {
+        if (selectedEncoderName != null) {
+            return MediaCodec.createByCodecName(selectedEncoderName);
+        }
+        MediaCodec codec = EncoderSelector.createEncoder(videoCodec, encoderName, videoSize, bitRate, encoderCache);
+        selectedEncoderName = codec.getName();
+        return codec;
     }
 
     private static void setCodecOption(MediaFormat format, CodecOption codecOption) {
@@ -171,9 +946,10 @@ public class ScreenEncoder implements Device.RotationListener {
         Ln.d("Codec option set: " + key + " (" + value.getClass().getSimpleName() + ") = " + value);
     }
 
-    private static MediaFormat createFormat(int bitRate, int maxFps, List<CodecOption> codecOptions) {
+    private static MediaFormat createFormat(String mimeType, int bitRate, int maxFps, List<CodecOption> codecOptions,
+            LowLatencyProfile lowLatencyProfile) {
         MediaFormat format = new MediaFormat();
-        format.setString(MediaFormat.KEY_MIME, MediaFormat.MIMETYPE_VIDEO_AVC);
+        format.setString(MediaFormat.KEY_MIME, mimeType);
         format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
         // must be present to configure the encoder, but does not impact the actual frame rate, which is variable
         format.setInteger(MediaFormat.KEY_FRAME_RATE, 60);
@@ -188,6 +964,11 @@ public class ScreenEncoder implements Device.RotationListener {
             format.setFloat(KEY_MAX_FPS_TO_ENCODER, maxFps);
         }
 
+        if (lowLatencyProfile != null) {
+            // before the codec options, so that they may override the profile
+            lowLatencyProfile.apply(format);
+        }
+
         if (codecOptions != null) {
             for (CodecOption option : codecOptions) {
                 setCodecOption(format, option);
@@ -221,6 +1002,15 @@ public class ScreenEncoder implements Device.RotationListener {
         }
     }
 
+    private static void setDisplayProjection(IBinder display, int orientation, Rect deviceRect, Rect displayRect) {
+        SurfaceControl.openTransaction();
+        try {
+            SurfaceControl.setDisplayProjection(display, orientation, deviceRect, displayRect);
+        } finally {
+            SurfaceControl.closeTransaction();
+        }
+    }
+
     private static void destroyDisplay(IBinder display) {
         SurfaceControl.destroyDisplay(display);
     }
@@ -80,6 +80,23 @@ public final class ScreenInfo {
         return new ScreenInfo(newContentRect, newUnlockedVideoSize, newDeviceRotation, lockedVideoOrientation);
     }
 
+    /**
+     * Return the screen info with the video size recomputed (the crop and the rotations are unchanged).
+     *
+     * @param maxSize     the max size (0 for no limit)
+     * @param maxFps      the max frame rate (0 if not limited)
+     * @param constraints the encoder constraints
+     * @return the new screen info
+     */
+    public ScreenInfo withVideoGeometry(int maxSize, int maxFps, VideoGeometry.Constraints constraints) {
+        // the content rect already takes the device rotation into account
+        Size newUnlockedVideoSize = VideoGeometry.computeVideoSize(contentRect.width(), contentRect.height(), maxSize, maxFps, constraints);
+        if (newUnlockedVideoSize.equals(unlockedVideoSize)) {
+            return this;
+        }
+        return new ScreenInfo(contentRect, newUnlockedVideoSize, deviceRotation, lockedVideoOrientation);
+    }
+
     public static ScreenInfo computeScreenInfo(DisplayInfo displayInfo, Rect crop, int maxSize, int lockedVideoOrientation) {
         int rotation = displayInfo.getRotation();
         Size deviceSize = displayInfo.getSize();
@@ -96,7 +113,8 @@ public final class ScreenInfo {
             }
         }
 
-        Size videoSize = computeVideoSize(contentRect.width(), contentRect.height(), maxSize);
+        // the encoder is not known yet
+        Size videoSize = VideoGeometry.computeVideoSize(contentRect.width(), contentRect.height(), maxSize, 0, VideoGeometry.DEFAULT_CONSTRAINTS);
         return new ScreenInfo(contentRect, videoSize, rotation, lockedVideoOrientation);
     }
 
@@ -104,33 +122,6 @@ public final class ScreenInfo {
         return rect.width() + ":" + rect.height() + ":" + rect.left + ":" + rect.top;
     }
 
-    private static Size computeVideoSize(int w, int h, int maxSize) {
-        // Compute the video size and the padding of the content inside this video.
-        // Principle:
-        // - scale down the great side of the screen to maxSize (if necessary);
-        // - scale down the other side so that the aspect ratio is preserved;
-        // - round this value to the nearest multiple of 8 (H.264 only accepts multiples of 8)
-        w &= ~7; // in case it's not a multiple of 8
-        h &= ~7;
-        if (maxSize > 0) {
-            if (BuildConfig.DEBUG && maxSize % 8 != 0) {
-                throw new AssertionError("Max size must be a multiple of 8");
-            }
-            boolean portrait = h > w;
-            int major = portrait ? h : w;
-            int minor = portrait ? w : h;
-            if (major > maxSize) {
-                int minorExact = minor * maxSize / major;
-                // +4 to round the value to the nearest multiple of 8
-                minor = (minorExact + 4) & ~7;
-                major = maxSize;
-            }
-            w = portrait ? minor : major;
-            h = portrait ? major : minor;
-        }
-        return new Size(w, h);
-    }
-
     private static Rect flipRect(Rect crop) {
         return new Rect(crop.top, crop.left, crop.bottom, crop.right);
     }
@@ -7,6 +7,7 @@ import android.media.MediaCodec;
 import android.os.BatteryManager;
 import android.os.Build;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Locale;
@@ -53,11 +54,46 @@ public final class Server {
 
         boolean tunnelForward = options.isTunnelForward();
 
+        EncoderCache encoderCache = EncoderCache.load(new File(EncoderCache.DEFAULT_PATH), Build.FINGERPRINT);
+
         try (DesktopConnection connection = DesktopConnection.open(device, tunnelForward)) {
-            ScreenEncoder screenEncoder = new ScreenEncoder(options.getSendFrameMeta(), options.getBitRate(), options.getMaxFps(), codecOptions);
+            ScreenEncoder screenEncoder = new ScreenEncoder(options.getBitRate(), options.getMaxFps(), codecOptions, options.getVideoCodec(),
+                    options.getEncoderName(), encoderCache, options.getLowLatency());
+            if (options.getIdleTimeout() > 0) {
+                screenEncoder.setIdleDetector(new IdleDetector(options.getIdleTimeout(), IdleDetector.DEFAULT_MAX_REPEAT_FRAME_SIZE));
+            }
+            if (options.getRefine()) {
+                screenEncoder.setRefineDetector(new RefineDetector(RefineDetector.DEFAULT_SETTLE_DELAY_US, RefineDetector.DEFAULT_MIN_INTERVAL_US));
+            }
+            screenEncoder.setTimingSeiEnabled(options.getTimingSei());
+            VideoFanOut fanOut = null;
+            if (options.getMaxSubscribers() > 0) {
+                fanOut = new VideoFanOut(device, screenEncoder, options.getMaxSubscribers(), options.getVideoQueueSize(),
+                        options.getSendFrameMeta(), options.getLateJoinCacheSize());
+                fanOut.start();
+                screenEncoder.addSink(fanOut);
+            }
+            InstantReplay instantReplay = null;
+            if (options.getReplayBufferSize() > 0) {
+                instantReplay = new InstantReplay(screenEncoder, options.getVideoCodec(), options.getReplayBufferSize());
+                screenEncoder.addSink(instantReplay);
+            }
+            FileRecorder recorder = null;
+            if (options.getDeviceRecordPath() != null) {
+                recorder = new FileRecorder(screenEncoder, options.getDeviceRecordPath(), options.getVideoQueueSize());
+                recorder.start();
+                screenEncoder.addSink(recorder);
+            }
+            PacketQueue packetQueue = new PacketQueue(options.getVideoQueueSize(), options.getVideoQueuePolicy());
+            BitRateController bitRateController = null;
+            if (options.getMinBitRate() > 0) {
+                bitRateController = new BitRateController(options.getMinBitRate(), options.getBitRate(), options.getBitRateStep());
+            }
+            PacketWriter packetWriter = new PacketWriter(connection.getVideoFd(), options.getSendFrameMeta(), packetQueue, bitRateController);
 
             if (options.getControl()) {
-                final Controller controller = new Controller(device, connection);
+                final Controller controller = new Controller(device, connection, screenEncoder);
+                controller.setInstantReplay(instantReplay);
 
                 // asynchronous
                 startController(controller);
@@ -69,14 +105,32 @@ public final class Server {
                         controller.getSender().pushClipboardText(text);
                     }
                 });
+
+                screenEncoder.setVideoSizeListener(new ScreenEncoder.VideoSizeListener() {
+                    @Override
+                    public void onVideoSizeChanged(Size size) {
+                        controller.getSender().pushVideoSize(size);
+                    }
+                });
             }
 
+            // asynchronous
+            packetWriter.start();
+
             try {
                 // synchronous
-                screenEncoder.streamScreen(device, connection.getVideoFd());
+                screenEncoder.streamScreen(device, packetWriter);
             } catch (IOException e) {
                 // this is expected on close
                 Ln.d("Screen streaming stopped");
+            } finally {
+                packetWriter.stop();
+                if (fanOut != null) {
+                    fanOut.stop();
+                }
+                if (recorder != null) {
+                    recorder.stop();
+                }
             }
         }
     }
@@ -120,7 +174,7 @@ public final class Server {
                     "The server version (" + BuildConfig.VERSION_NAME + ") does not match the client " + "(" + clientVersion + ")");
         }
 
-        final int expectedParameters = 14;
+        final int expectedParameters = 28;
         if (args.length != expectedParameters) {
             throw new IllegalArgumentException("Expecting " + expectedParameters + " parameters");
         }
@@ -167,6 +221,48 @@ public final class Server {
         String codecOptions = args[13];
         options.setCodecOptions(codecOptions);
 
+        int videoQueueSize = Integer.parseInt(args[14]);
+        options.setVideoQueueSize(videoQueueSize);
+
+        PacketQueue.OverflowPolicy videoQueuePolicy = PacketQueue.OverflowPolicy.parse(args[15]);
+        options.setVideoQueuePolicy(videoQueuePolicy);
+
+        int minBitRate = Integer.parseInt(args[16]);
+        options.setMinBitRate(minBitRate);
+
+        int bitRateStep = Integer.parseInt(args[17]);
+        options.setBitRateStep(bitRateStep);
+
+        VideoCodec videoCodec = VideoCodec.findByName(args[18]);
+        options.setVideoCodec(videoCodec);
+
+        String encoderName = "-".equals(args[19]) ? null : args[19];
+        options.setEncoderName(encoderName);
+
+        boolean lowLatency = Boolean.parseBoolean(args[20]);
+        options.setLowLatency(lowLatency);
+
+        int idleTimeout = Integer.parseInt(args[21]);
+        options.setIdleTimeout(idleTimeout);
+
+        boolean refine = Boolean.parseBoolean(args[22]);
+        options.setRefine(refine);
+
+        boolean timingSei = Boolean.parseBoolean(args[23]);
+        options.setTimingSei(timingSei);
+
+        int maxSubscribers = Integer.parseInt(args[24]);
+        options.setMaxSubscribers(maxSubscribers);
+
+        int lateJoinCacheSize = Integer.parseInt(args[25]);
+        options.setLateJoinCacheSize(lateJoinCacheSize);
+
+        int replayBufferSize = Integer.parseInt(args[26]);
+        options.setReplayBufferSize(replayBufferSize);
+
+        String deviceRecordPath = "-".equals(args[27]) ? null : args[27];
+        options.setDeviceRecordPath(deviceRecordPath);
+
         return options;
     }
 
@@ -191,12 +287,23 @@ public final class Server {
             if (e instanceof MediaCodec.CodecException) {
                 MediaCodec.CodecException mce = (MediaCodec.CodecException) e;
                 if (mce.getErrorCode() == 0xfffffc0e) {
+                    // the encoder already retried with lower definitions, down to the last step of its fallback ladder
                     Ln.e("The hardware encoder is not able to encode at the given definition.");
                     Ln.e("Try with a lower definition:");
                     Ln.e("    scrcpy -m 1024");
                 }
             }
         }
+        if (e instanceof InvalidEncoderException) {
+            InvalidEncoderException iee = (InvalidEncoderException) e;
+            String[] encoders = iee.getAvailableEncoders();
+            if (encoders != null && encoders.length > 0) {
+                Ln.e("Try to use one of the available encoders:");
+                for (String encoder : encoders) {
+                    Ln.e("    scrcpy --encoder '" + encoder + "'");
+                }
+            }
+        }
         if (e instanceof InvalidDisplayIdException) {
             InvalidDisplayIdException idie = (InvalidDisplayIdException) e;
             int[] displayIds = idie.getAvailableDisplayIds();
@@ -0,0 +1,124 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference-counted {@link VideoPacket}, so that a single copy of each encoded packet may be sent to several subscribers.
+ * <p>
+ * Once published, the packet must not be modified: the subscribers read its data concurrently, through {@link #duplicateData()}. When
+ * the last reference is released, the packet returns to its {@link Pool} to be reused.
+ */
+public final class SharedPacket {
+
+    /**
+     * A pool of shared packets, to avoid allocating a new buffer for each packet.
+     */
+    public static final class Pool {
+        private final ConcurrentLinkedQueue<SharedPacket> freePackets = new ConcurrentLinkedQueue<>();
+        private final int maxFreePackets;
+        private final AtomicInteger freeCount = new AtomicInteger();
+
+        /**
+         * @param maxFreePackets the maximum number of unused packets to keep for reuse
+         */
+        public Pool(int maxFreePackets) {
+            this.maxFreePackets = maxFreePackets;
+        }
+
+        /**
+         * Return an unused packet, holding a single reference (owned by the caller).
+         */
+        public SharedPacket obtain() {
+            SharedPacket packet = freePackets.poll();
+            if (packet == null) {
+                packet = new SharedPacket(this);
+            } else {
+                freeCount.decrementAndGet();
+            }
+            packet.refCount.set(1);
+            return packet;
+        }
+
+        private void recycle(SharedPacket packet) {
+            if (freeCount.incrementAndGet() <= maxFreePackets) {
+                freePackets.offer(packet);
+            } else {
+                // let the garbage collector reclaim it
+                freeCount.decrementAndGet();
+            }
+        }
+
+        /**
+         * Return the number of unused packets kept for reuse.
+         */
+        public int getFreeCount() {
+            return freeCount.get();
+        }
+    }
+
+    private final Pool pool;
+    private final VideoPacket packet = new VideoPacket();
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    private SharedPacket(Pool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Copy the remaining bytes of {@code prefix} (if not {@code null}) then the remaining bytes of {@code src} into this packet (called by
+     * the owner, before the packet is published).
+     * <p>
+     * Unlike {@link VideoPacket#set(ByteBuffer, ByteBuffer, long, int)}, the positions of {@code prefix} and {@code src} are not changed.
+     */
+    public void set(ByteBuffer prefix, ByteBuffer src, long pts, int flags) {
+        int prefixPosition = prefix != null ? prefix.position() : 0;
+        int srcPosition = src.position();
+        packet.set(prefix, src, pts, flags);
+        if (prefix != null) {
+            prefix.position(prefixPosition);
+        }
+        src.position(srcPosition);
+    }
+
+    /**
+     * Return the packet (its data must only be read through {@link #duplicateData()}).
+     */
+    public VideoPacket getPacket() {
+        return packet;
+    }
+
+    /**
+     * Return a new buffer sharing the packet data, ready to be read (may be called from any thread holding a reference).
+     */
+    public ByteBuffer duplicateData() {
+        return packet.duplicateData();
+    }
+
+    /**
+     * Add a reference to this packet.
+     */
+    public void retain() {
+        refCount.incrementAndGet();
+    }
+
+    /**
+     * Release a reference to this packet, and return it to its pool if it was the last one.
+     */
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            pool.recycle(this);
+        } else if (count < 0) {
+            throw new IllegalStateException("Shared packet released too many times");
+        }
+    }
+
+    /**
+     * Return the current number of references.
+     */
+    public int getRefCount() {
+        return refCount.get();
+    }
+}
@@ -0,0 +1,337 @@
+package com.genymobile.scrcpy;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Rewrite the H.264 SPS so that the decoder outputs each frame as soon as it is decoded.
+ * <p>
+ * Many encoders do not write the {@code bitstream_restriction} fields in the SPS VUI. In that case, a decoder must assume that the
+ * frames may be reordered, so it may hold several frames before outputting the first one. The SPS is rewritten with
+ * {@code max_num_reorder_frames = 0} and {@code max_dec_frame_buffering = max(1, max_num_ref_frames)}: this is valid for the streams
+ * produced by the device encoders, which never reorder frames (no B-frames).
+ * <p>
+ * All the fields before the bitstream restriction are copied as is.
+ */
+public final class SpsRewriter {
+
+    private static final int NAL_HEADER_SIZE = 1;
+
+    // the bitstream_restriction values inferred when they are not present (H.264 E.2.1)
+    private static final int DEFAULT_MAX_BYTES_PER_PIC_DENOM = 2;
+    private static final int DEFAULT_MAX_BITS_PER_MB_DENOM = 1;
+    private static final int DEFAULT_LOG2_MAX_MV_LENGTH = 16;
+
+    private static final int EXTENDED_SAR = 255;
+
+    private SpsRewriter() {
+        // not instantiable
+    }
+
+    /**
+     * Rewrite the SPS contained in a codec config packet (typically SPS and PPS, separated by start codes).
+     *
+     * @param buffer the config packet, from its position to its limit (its position is not changed)
+     * @return a new buffer containing the rewritten config packet, or {@code null} if it contains no SPS to rewrite
+     * @throws IllegalArgumentException if the SPS is malformed
+     */
+    public static ByteBuffer rewriteConfig(ByteBuffer buffer) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        ByteArrayOutputStream out = null;
+        // the index of the first byte not copied yet
+        int copied = start;
+
+        int index = AnnexB.findNalUnit(buffer, start, limit);
+        while (index != -1) {
+            int next = AnnexB.findNalUnit(buffer, index + 1, limit);
+            int end = next != -1 ? getNalUnitEnd(buffer, index, next) : limit;
+            if (AnnexB.getNalType(buffer.get(index)) == AnnexB.NAL_TYPE_SPS) {
+                byte[] nal = new byte[end - index];
+                for (int i = 0; i < nal.length; ++i) {
+                    nal[i] = buffer.get(index + i);
+                }
+                byte[] sps = rewriteSps(nal);
+                if (sps != null) {
+                    if (out == null) {
+                        out = new ByteArrayOutputStream(limit - start + 16);
+                    }
+                    for (int i = copied; i < index; ++i) {
+                        out.write(buffer.get(i));
+                    }
+                    out.write(sps, 0, sps.length);
+                    copied = end;
+                }
+            }
+            index = next;
+        }
+
+        if (out == null) {
+            return null;
+        }
+        for (int i = copied; i < limit; ++i) {
+            out.write(buffer.get(i));
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    /**
+     * Return the end (exclusive) of the NAL unit starting at {@code index}, given the index of the next NAL unit.
+     */
+    private static int getNalUnitEnd(ByteBuffer buffer, int index, int next) {
+        // skip the start code 00 00 01 (and any trailing zero byte)
+        int end = next - 3;
+        while (end > index && buffer.get(end - 1) == 0) {
+            --end;
+        }
+        return end;
+    }
+
+    /**
+     * Rewrite an SPS NAL unit.
+     *
+     * @param nal the NAL unit (header included, with emulation prevention bytes)
+     * @return the rewritten NAL unit (with emulation prevention bytes), or {@code null} if it already has minimal buffering values
+     * @throws IllegalArgumentException if the SPS is malformed
+     */
+    public static byte[] rewriteSps(byte[] nal) {
+        byte[] rbsp = unescape(nal, NAL_HEADER_SIZE, nal.length - NAL_HEADER_SIZE);
+        BitReader reader = new BitReader(rbsp, 0, rbsp.length);
+        BitWriter writer = new BitWriter();
+        if (!rewriteSpsRbsp(reader, writer)) {
+            return null;
+        }
+        byte[] newRbsp = writer.toByteArray();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(nal.length + 16);
+        out.write(nal, 0, NAL_HEADER_SIZE);
+        escape(newRbsp, out);
+        return out.toByteArray();
+    }
+
+    private static boolean rewriteSpsRbsp(BitReader reader, BitWriter writer) {
+        int profileIdc = (int) copyBits(reader, writer, 8);
+        copyBits(reader, writer, 16); // constraint flags, reserved bits and level_idc
+        copyUe(reader, writer); // seq_parameter_set_id
+        if (hasChromaInfo(profileIdc)) {
+            long chromaFormatIdc = copyUe(reader, writer);
+            if (chromaFormatIdc == 3) {
+                copyBits(reader, writer, 1); // separate_colour_plane_flag
+            }
+            copyUe(reader, writer); // bit_depth_luma_minus8
+            copyUe(reader, writer); // bit_depth_chroma_minus8
+            copyBits(reader, writer, 1); // qpprime_y_zero_transform_bypass_flag
+            if (copyBits(reader, writer, 1) != 0) { // seq_scaling_matrix_present_flag
+                int count = chromaFormatIdc != 3 ? 8 : 12;
+                for (int i = 0; i < count; ++i) {
+                    if (copyBits(reader, writer, 1) != 0) { // seq_scaling_list_present_flag[i]
+                        copyScalingList(reader, writer, i < 6 ? 16 : 64);
+                    }
+                }
+            }
+        }
+        copyUe(reader, writer); // log2_max_frame_num_minus4
+        long picOrderCntType = copyUe(reader, writer);
+        if (picOrderCntType == 0) {
+            copyUe(reader, writer); // log2_max_pic_order_cnt_lsb_minus4
+        } else if (picOrderCntType == 1) {
+            copyBits(reader, writer, 1); // delta_pic_order_always_zero_flag
+            copyUe(reader, writer); // offset_for_non_ref_pic (se)
+            copyUe(reader, writer); // offset_for_top_to_bottom_field (se)
+            long cycle = copyUe(reader, writer); // num_ref_frames_in_pic_order_cnt_cycle
+            for (long i = 0; i < cycle; ++i) {
+                copyUe(reader, writer); // offset_for_ref_frame[i] (se)
+            }
+        }
+        long maxNumRefFrames = copyUe(reader, writer);
+        copyBits(reader, writer, 1); // gaps_in_frame_num_value_allowed_flag
+        copyUe(reader, writer); // pic_width_in_mbs_minus1
+        copyUe(reader, writer); // pic_height_in_map_units_minus1
+        if (copyBits(reader, writer, 1) == 0) { // frame_mbs_only_flag
+            copyBits(reader, writer, 1); // mb_adaptive_frame_field_flag
+        }
+        copyBits(reader, writer, 1); // direct_8x8_inference_flag
+        if (copyBits(reader, writer, 1) != 0) { // frame_cropping_flag
+            for (int i = 0; i < 4; ++i) {
+                copyUe(reader, writer); // frame_crop_{left,right,top,bottom}_offset
+            }
+        }
+
+        long maxDecFrameBuffering = Math.max(1, maxNumRefFrames);
+
+        boolean vuiPresent = reader.readBit() != 0;
+        writer.writeBit(1); // vui_parameters_present_flag
+        if (!vuiPresent) {
+            // aspect_ratio_info, overscan_info, video_signal_type, chroma_loc_info, timing_info, nal_hrd, vcl_hrd and pic_struct not present
+            writer.writeBits(0, 8);
+            writeBitstreamRestriction(writer, maxDecFrameBuffering);
+            writer.writeTrailingBits();
+            return true;
+        }
+
+        if (copyBits(reader, writer, 1) != 0) { // aspect_ratio_info_present_flag
+            if (copyBits(reader, writer, 8) == EXTENDED_SAR) { // aspect_ratio_idc
+                copyBits(reader, writer, 32); // sar_width and sar_height
+            }
+        }
+        if (copyBits(reader, writer, 1) != 0) { // overscan_info_present_flag
+            copyBits(reader, writer, 1); // overscan_appropriate_flag
+        }
+        if (copyBits(reader, writer, 1) != 0) { // video_signal_type_present_flag
+            copyBits(reader, writer, 4); // video_format and video_full_range_flag
+            if (copyBits(reader, writer, 1) != 0) { // colour_description_present_flag
+                copyBits(reader, writer, 24); // colour_primaries, transfer_characteristics and matrix_coefficients
+            }
+        }
+        if (copyBits(reader, writer, 1) != 0) { // chroma_loc_info_present_flag
+            copyUe(reader, writer); // chroma_sample_loc_type_top_field
+            copyUe(reader, writer); // chroma_sample_loc_type_bottom_field
+        }
+        if (copyBits(reader, writer, 1) != 0) { // timing_info_present_flag
+            copyBits(reader, writer, 32); // num_units_in_tick
+            copyBits(reader, writer, 32); // time_scale
+            copyBits(reader, writer, 1); // fixed_frame_rate_flag
+        }
+        boolean nalHrd = copyBits(reader, writer, 1) != 0;
+        if (nalHrd) {
+            copyHrdParameters(reader, writer);
+        }
+        boolean vclHrd = copyBits(reader, writer, 1) != 0;
+        if (vclHrd) {
+            copyHrdParameters(reader, writer);
+        }
+        if (nalHrd || vclHrd) {
+            copyBits(reader, writer, 1); // low_delay_hrd_flag
+        }
+        copyBits(reader, writer, 1); // pic_struct_present_flag
+
+        if (reader.readBit() == 0) { // bitstream_restriction_flag
+            writeBitstreamRestriction(writer, maxDecFrameBuffering);
+        } else {
+            writer.writeBit(1);
+            copyBits(reader, writer, 1); // motion_vectors_over_pic_boundaries_flag
+            copyUe(reader, writer); // max_bytes_per_pic_denom
+            copyUe(reader, writer); // max_bits_per_mb_denom
+            copyUe(reader, writer); // log2_max_mv_length_horizontal
+            copyUe(reader, writer); // log2_max_mv_length_vertical
+            long maxNumReorderFrames = reader.readUe();
+            long currentMaxDecFrameBuffering = reader.readUe();
+            if (maxNumReorderFrames == 0 && currentMaxDecFrameBuffering <= maxDecFrameBuffering) {
+                // nothing to change
+                return false;
+            }
+            writer.writeUe(0); // max_num_reorder_frames
+            writer.writeUe(maxDecFrameBuffering);
+        }
+        writer.writeTrailingBits();
+        return true;
+    }
+
+    private static boolean hasChromaInfo(int profileIdc) {
+        switch (profileIdc) {
+            case 100:
+            case 110:
+            case 122:
+            case 244:
+            case 44:
+            case 83:
+            case 86:
+            case 118:
+            case 128:
+            case 138:
+            case 139:
+            case 134:
+            case 135:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void writeBitstreamRestriction(BitWriter writer, long maxDecFrameBuffering) {
+        writer.writeBit(1); // bitstream_restriction_flag
+        writer.writeBit(1); // motion_vectors_over_pic_boundaries_flag
+        writer.writeUe(DEFAULT_MAX_BYTES_PER_PIC_DENOM);
+        writer.writeUe(DEFAULT_MAX_BITS_PER_MB_DENOM);
+        writer.writeUe(DEFAULT_LOG2_MAX_MV_LENGTH); // horizontal
+        writer.writeUe(DEFAULT_LOG2_MAX_MV_LENGTH); // vertical
+        writer.writeUe(0); // max_num_reorder_frames
+        writer.writeUe(maxDecFrameBuffering);
+    }
+
+    private static void copyHrdParameters(BitReader reader, BitWriter writer) {
+        long cpbCnt = copyUe(reader, writer) + 1; // cpb_cnt_minus1
+        copyBits(reader, writer, 8); // bit_rate_scale and cpb_size_scale
+        for (long i = 0; i < cpbCnt; ++i) {
+            copyUe(reader, writer); // bit_rate_value_minus1
+            copyUe(reader, writer); // cpb_size_value_minus1
+            copyBits(reader, writer, 1); // cbr_flag
+        }
+        // initial_cpb_removal_delay_length_minus1, cpb_removal_delay_length_minus1, dpb_output_delay_length_minus1, time_offset_length
+        copyBits(reader, writer, 20);
+    }
+
+    private static void copyScalingList(BitReader reader, BitWriter writer, int size) {
+        long lastScale = 8;
+        long nextScale = 8;
+        for (int j = 0; j < size; ++j) {
+            if (nextScale != 0) {
+                long deltaScale = BitReader.toSigned(copyUe(reader, writer));
+                nextScale = (lastScale + deltaScale + 256) % 256;
+            }
+            if (nextScale != 0) {
+                lastScale = nextScale;
+            }
+        }
+    }
+
+    private static long copyBits(BitReader reader, BitWriter writer, int count) {
+        long value = reader.readBits(count);
+        writer.writeBits(value, count);
+        return value;
+    }
+
+    /**
+     * Copy an Exp-Golomb code (the code number of a signed code is copied as is).
+     *
+     * @return the code number
+     */
+    private static long copyUe(BitReader reader, BitWriter writer) {
+        long value = reader.readUe();
+        writer.writeUe(value);
+        return value;
+    }
+
+    /**
+     * Remove the emulation prevention bytes (00 00 03 becomes 00 00).
+     */
+    public static byte[] unescape(byte[] data, int offset, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        int zeros = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            byte b = data[i];
+            if (zeros >= 2 && b == 3) {
+                zeros = 0;
+                continue;
+            }
+            out.write(b);
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Insert the emulation prevention bytes, so that the payload never contains 00 00 00, 00 00 01, 00 00 02 nor 00 00 03.
+     */
+    public static void escape(byte[] rbsp, ByteArrayOutputStream out) {
+        int zeros = 0;
+        for (byte b : rbsp) {
+            if (zeros >= 2 && (b & ~3) == 0) {
+                out.write(3);
+                zeros = 0;
+            }
+            out.write(b);
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+    }
+}
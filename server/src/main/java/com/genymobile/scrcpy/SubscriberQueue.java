@@ -0,0 +1,177 @@
+package com.genymobile.scrcpy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded queue of shared packets for a single video subscriber.
+ * <p>
+ * A subscriber may only decode the stream from a key frame preceded by the codec config. Therefore, a new subscriber (or a subscriber
+ * too slow to consume its packets) drops all the packets until the next key frame, and receives the last codec config just before it.
+ * <p>
+ * Alternatively, a late subscriber may first receive the codec config and all the packets since the last key frame (see
+ * {@link GopCache}), so that the following packets may be queued immediately.
+ * <p>
+ * The producer (the encoder) never blocks: a full queue drops the new packet, so that a slow subscriber never stalls the others.
+ */
+public final class SubscriberQueue {
+
+    private final int capacity;
+    private final BlockingQueue<SharedPacket> queue;
+
+    // only accessed by the producer (or under its lock)
+    private boolean waitingKeyFrame = true;
+    private boolean configNeeded = true;
+
+    private volatile boolean closed;
+    private volatile long droppedCount;
+
+    public SubscriberQueue(int capacity) {
+        if (capacity < 2) {
+            // the config and the key frame must fit
+            throw new IllegalArgumentException("Subscriber queue capacity must be at least 2: " + capacity);
+        }
+        this.capacity = capacity;
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Indicate that the subscriber receives the codec config and all the packets since the last key frame before the queued packets, so
+     * that the next packets may be queued without waiting for a key frame (must be called before any packet is queued, by the producer
+     * or under its lock).
+     */
+    public void startFromBacklog() {
+        waitingKeyFrame = false;
+        configNeeded = false;
+    }
+
+    /**
+     * Queue a reference to a packet (called by the producer).
+     * <p>
+     * The caller keeps its own reference: the queue retains the packet if it is queued.
+     *
+     * @param packet the packet
+     * @param config the last codec config packet (to send before the next key frame if needed), or {@code null}
+     * @return {@code true} if the packet has been queued
+     */
+    public boolean offer(SharedPacket packet, SharedPacket config) {
+        if (closed) {
+            return false;
+        }
+
+        VideoPacket videoPacket = packet.getPacket();
+        if (videoPacket.isConfig()) {
+            if (waitingKeyFrame || !enqueue(packet)) {
+                // it will be sent before the next key frame
+                configNeeded = true;
+                return false;
+            }
+            return true;
+        }
+
+        if (waitingKeyFrame) {
+            if (!videoPacket.isKeyFrame() || (configNeeded && config == null)) {
+                // the packet could not be decoded
+                ++droppedCount;
+                return false;
+            }
+            if (configNeeded) {
+                if (!enqueue(config)) {
+                    return false;
+                }
+                configNeeded = false;
+            }
+        }
+
+        if (!enqueue(packet)) {
+            return false;
+        }
+        waitingKeyFrame = false;
+        return true;
+    }
+
+    private boolean enqueue(SharedPacket packet) {
+        packet.retain();
+        if (!queue.offer(packet)) {
+            packet.release();
+            ++droppedCount;
+            // the following packets could not be decoded
+            waitingKeyFrame = true;
+            return false;
+        }
+        if (closed) {
+            // the consumer may have stopped before the packet was queued
+            drain();
+        }
+        return true;
+    }
+
+    /**
+     * Indicate whether the subscriber waits for a key frame while it has room to receive it (called by the producer).
+     * <p>
+     * In that case, the producer should request a key frame to the encoder. A subscriber whose queue is still (almost) full does not
+     * request any key frame, so that a stalled subscriber does not degrade the stream for the others.
+     */
+    public boolean isKeyFrameNeeded() {
+        return waitingKeyFrame && !closed && queue.size() <= capacity / 2;
+    }
+
+    /**
+     * Wait for the next packet (called by the consumer).
+     * <p>
+     * The caller owns the returned reference, and must release it once consumed.
+     *
+     * @return the next packet, or {@code null} if the queue is closed
+     * @throws InterruptedException if the consumer is interrupted (typically on close)
+     */
+    public SharedPacket take() throws InterruptedException {
+        if (closed) {
+            return null;
+        }
+        SharedPacket packet = queue.take();
+        if (closed) {
+            packet.release();
+            return null;
+        }
+        return packet;
+    }
+
+    /**
+     * Close the queue and release all the queued packets.
+     * <p>
+     * A consumer blocked in {@link #take()} must be interrupted by the caller.
+     */
+    public void close() {
+        closed = true;
+        drain();
+    }
+
+    private void drain() {
+        SharedPacket packet;
+        while ((packet = queue.poll()) != null) {
+            packet.release();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Return the current number of queued packets.
+     */
+    public int getSize() {
+        return queue.size();
+    }
+
+    /**
+     * Return the total number of dropped packets so far.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+}
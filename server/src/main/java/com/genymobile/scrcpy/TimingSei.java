@@ -0,0 +1,208 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Build and parse the timing SEI: a "user data unregistered" SEI message inserted before each frame, to measure the latency of each
+ * stage from the stream alone.
+ * <p>
+ * The payload contains 3 timestamps, in microseconds (on the device monotonic clock, like the frame pts):
+ * <ul>
+ * <li>the capture time (the frame pts);</li>
+ * <li>the time the frame was dequeued from the encoder;</li>
+ * <li>the time the write of the packet to the socket started.</li>
+ * </ul>
+ * <p>
+ * Each timestamp is stored on 10 bytes of 7 bits (most significant first), with the high bit always set. Therefore, the SEI never
+ * contains any zero byte: it never needs emulation prevention bytes, and the write time may be set in place just before the write.
+ */
+public final class TimingSei {
+
+    /**
+     * The UUID identifying the timing SEI (it contains no zero byte).
+     */
+    public static final byte[] UUID = {(byte) 0x8b, (byte) 0x1c, (byte) 0x6f, (byte) 0x3e, (byte) 0xd2, (byte) 0x47, (byte) 0x4a, (byte) 0x95,
+            (byte) 0xa1, (byte) 0x5e, (byte) 0x73, (byte) 0xc4, (byte) 0x19, (byte) 0xe8, (byte) 0x26, (byte) 0xb7};
+
+    private static final int VERSION = 1;
+
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+    private static final int NAL_TYPE_SEI = 6;
+    private static final int HEVC_NAL_TYPE_PREFIX_SEI = 39;
+    private static final int PAYLOAD_TYPE_USER_DATA_UNREGISTERED = 5;
+    private static final int RBSP_TRAILING_BITS = 0x80;
+
+    private static final int TIMESTAMP_SIZE = 10;
+    private static final int PAYLOAD_SIZE = UUID.length + 1 + 3 * TIMESTAMP_SIZE;
+
+    // offsets of the timestamps from the SEI message payload
+    private static final int CAPTURE_TIME_OFFSET = UUID.length + 1;
+    private static final int DEQUEUE_TIME_OFFSET = CAPTURE_TIME_OFFSET + TIMESTAMP_SIZE;
+    private static final int WRITE_TIME_OFFSET = DEQUEUE_TIME_OFFSET + TIMESTAMP_SIZE;
+
+    /**
+     * The timestamps carried by a timing SEI.
+     */
+    public static final class Timing {
+        private final long captureTimeUs;
+        private final long dequeueTimeUs;
+        private final long writeTimeUs;
+
+        public Timing(long captureTimeUs, long dequeueTimeUs, long writeTimeUs) {
+            this.captureTimeUs = captureTimeUs;
+            this.dequeueTimeUs = dequeueTimeUs;
+            this.writeTimeUs = writeTimeUs;
+        }
+
+        public long getCaptureTimeUs() {
+            return captureTimeUs;
+        }
+
+        public long getDequeueTimeUs() {
+            return dequeueTimeUs;
+        }
+
+        public long getWriteTimeUs() {
+            return writeTimeUs;
+        }
+    }
+
+    private TimingSei() {
+        // not instantiable
+    }
+
+    private static int getNalHeaderSize(boolean hevc) {
+        return hevc ? 2 : 1;
+    }
+
+    /**
+     * Return the offset of the SEI message payload (the UUID) from the start of the SEI NAL unit (start code included).
+     */
+    private static int getPayloadOffset(boolean hevc) {
+        // start code, NAL header, payload type and payload size
+        return START_CODE.length + getNalHeaderSize(hevc) + 2;
+    }
+
+    /**
+     * Return the size of the timing SEI NAL unit, start code included.
+     *
+     * @param hevc {@code true} for H.265, {@code false} for H.264
+     */
+    public static int getSize(boolean hevc) {
+        return getPayloadOffset(hevc) + PAYLOAD_SIZE + 1;
+    }
+
+    /**
+     * Write a timing SEI NAL unit (start code included) at the buffer position.
+     *
+     * @param buffer        the buffer, having at least {@link #getSize(boolean)} remaining bytes
+     * @param hevc          {@code true} for H.265, {@code false} for H.264
+     * @param captureTimeUs the capture time (the frame pts)
+     * @param dequeueTimeUs the time the frame was dequeued from the encoder
+     * @param writeTimeUs   the time the packet write started (typically 0, set later by {@link #setWriteTime(ByteBuffer, int, long)})
+     */
+    public static void write(ByteBuffer buffer, boolean hevc, long captureTimeUs, long dequeueTimeUs, long writeTimeUs) {
+        buffer.put(START_CODE);
+        if (hevc) {
+            buffer.put((byte) (HEVC_NAL_TYPE_PREFIX_SEI << 1));
+            buffer.put((byte) 1); // nuh_layer_id = 0, nuh_temporal_id_plus1 = 1
+        } else {
+            buffer.put((byte) NAL_TYPE_SEI);
+        }
+        buffer.put((byte) PAYLOAD_TYPE_USER_DATA_UNREGISTERED);
+        buffer.put((byte) PAYLOAD_SIZE);
+        buffer.put(UUID);
+        buffer.put((byte) VERSION);
+        int index = buffer.position();
+        writeTimestamp(buffer, index, captureTimeUs);
+        writeTimestamp(buffer, index + TIMESTAMP_SIZE, dequeueTimeUs);
+        writeTimestamp(buffer, index + 2 * TIMESTAMP_SIZE, writeTimeUs);
+        buffer.position(index + 3 * TIMESTAMP_SIZE);
+        buffer.put((byte) RBSP_TRAILING_BITS);
+    }
+
+    /**
+     * Set the write time of a timing SEI in place.
+     *
+     * @param buffer      the buffer
+     * @param index       the absolute index of the timing SEI NAL unit (start code included), written by
+     *                    {@link #write(ByteBuffer, boolean, long, long, long)}
+     * @param writeTimeUs the time the packet write started
+     */
+    public static void setWriteTime(ByteBuffer buffer, int index, long writeTimeUs) {
+        writeTimestamp(buffer, index + getPayloadOffset(isHevc(buffer, index)) + WRITE_TIME_OFFSET, writeTimeUs);
+    }
+
+    /**
+     * Return the size of a timing SEI NAL unit (start code included) written by {@link #write(ByteBuffer, boolean, long, long, long)}.
+     *
+     * @param buffer the buffer
+     * @param index  the absolute index of the timing SEI NAL unit
+     */
+    public static int getSize(ByteBuffer buffer, int index) {
+        return getSize(isHevc(buffer, index));
+    }
+
+    private static boolean isHevc(ByteBuffer buffer, int index) {
+        return AnnexB.getHevcNalType(buffer.get(index + START_CODE.length)) == HEVC_NAL_TYPE_PREFIX_SEI;
+    }
+
+    private static void writeTimestamp(ByteBuffer buffer, int index, long value) {
+        long remaining = value;
+        for (int i = TIMESTAMP_SIZE - 1; i >= 0; --i) {
+            buffer.put(index + i, (byte) (0x80 | (remaining & 0x7f)));
+            remaining >>>= 7;
+        }
+    }
+
+    private static long readTimestamp(ByteBuffer buffer, int index) {
+        long value = 0;
+        for (int i = 0; i < TIMESTAMP_SIZE; ++i) {
+            value = (value << 7) | (buffer.get(index + i) & 0x7f);
+        }
+        return value;
+    }
+
+    /**
+     * Find and parse the timing SEI in an access unit (H.264 or H.265).
+     *
+     * @param buffer the access unit, from its position to its limit (its position is not changed)
+     * @return the timestamps, or {@code null} if the access unit contains no timing SEI
+     */
+    public static Timing parse(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        int index = AnnexB.findNalUnit(buffer, buffer.position(), limit);
+        while (index != -1) {
+            byte header = buffer.get(index);
+            int sei = -1;
+            if ((header & 0x80) == 0 && AnnexB.getNalType(header) == NAL_TYPE_SEI) {
+                sei = index + getNalHeaderSize(false);
+            } else if (AnnexB.getHevcNalType(header) == HEVC_NAL_TYPE_PREFIX_SEI) {
+                sei = index + getNalHeaderSize(true);
+            }
+            if (sei != -1 && isTimingSei(buffer, sei, limit)) {
+                // skip the payload type and size
+                int payload = sei + 2;
+                return new Timing(readTimestamp(buffer, payload + CAPTURE_TIME_OFFSET), readTimestamp(buffer, payload + DEQUEUE_TIME_OFFSET),
+                        readTimestamp(buffer, payload + WRITE_TIME_OFFSET));
+            }
+            index = AnnexB.findNalUnit(buffer, index + 1, limit);
+        }
+        return null;
+    }
+
+    private static boolean isTimingSei(ByteBuffer buffer, int sei, int limit) {
+        if (sei + 2 + PAYLOAD_SIZE > limit) {
+            return false;
+        }
+        if (buffer.get(sei) != PAYLOAD_TYPE_USER_DATA_UNREGISTERED || buffer.get(sei + 1) != PAYLOAD_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < UUID.length; ++i) {
+            if (buffer.get(sei + 2 + i) != UUID[i]) {
+                return false;
+            }
+        }
+        return buffer.get(sei + 2 + UUID.length) == VERSION;
+    }
+}
@@ -0,0 +1,33 @@
+package com.genymobile.scrcpy;
+
+import android.media.MediaFormat;
+
+public enum VideoCodec {
+    H264("h264", MediaFormat.MIMETYPE_VIDEO_AVC),
+    H265("h265", MediaFormat.MIMETYPE_VIDEO_HEVC);
+
+    private final String name;
+    private final String mimeType;
+
+    VideoCodec(String name, String mimeType) {
+        this.name = name;
+        this.mimeType = mimeType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public static VideoCodec findByName(String name) {
+        for (VideoCodec codec : values()) {
+            if (codec.name.equals(name)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown video codec: " + name);
+    }
+}
@@ -0,0 +1,199 @@
+package com.genymobile.scrcpy;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Share the output of the encoder with additional video-only subscribers, without encoding the stream again.
+ * <p>
+ * Each packet sent to the main client is copied once into a {@link SharedPacket}, referenced by the queues of all the subscribers. Each
+ * subscriber has its own bounded queue and writer thread, so that a slow subscriber never blocks the encoder nor the other clients.
+ * <p>
+ * A new subscriber immediately receives the last codec config and all the packets since the last key frame, kept in a {@link GopCache}.
+ * If the cache is disabled or not valid (the packets since the last key frame did not fit), it receives the last codec config followed
+ * by the next key frame (which is requested to the encoder on connection).
+ */
+public final class VideoFanOut implements PacketSink {
+
+    private final Device device;
+    private final ScreenEncoder screenEncoder;
+    private final int maxSubscribers;
+    private final int queueCapacity;
+    private final boolean sendFrameMeta;
+
+    private final List<VideoSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final SharedPacket.Pool pool;
+    // guard the packets pushed and the new subscribers, so that each new subscriber starts exactly after its backlog
+    private final Object lock = new Object();
+    private SharedPacket config;
+    // null if disabled
+    private final GopCache gopCache;
+
+    private LocalServerSocket serverSocket;
+    private int nextId;
+    private volatile boolean stopped;
+
+    /**
+     * Create a fan-out.
+     *
+     * @param device         the device
+     * @param screenEncoder  the encoder to request key frames to
+     * @param maxSubscribers the maximum number of simultaneous subscribers
+     * @param queueCapacity  the capacity of the queue of each subscriber
+     * @param sendFrameMeta  whether to write a frame meta header before each packet
+     * @param cacheSize      the memory cap of the packets kept for new subscribers, in bytes (0 to disable)
+     */
+    public VideoFanOut(Device device, ScreenEncoder screenEncoder, int maxSubscribers, int queueCapacity, boolean sendFrameMeta,
+            int cacheSize) {
+        this.device = device;
+        this.screenEncoder = screenEncoder;
+        this.maxSubscribers = maxSubscribers;
+        // the config and the key frame must fit
+        this.queueCapacity = Math.max(queueCapacity, 2);
+        this.sendFrameMeta = sendFrameMeta;
+        pool = new SharedPacket.Pool(this.queueCapacity);
+        gopCache = cacheSize > 0 ? new GopCache(cacheSize, GopCache.DEFAULT_MAX_PACKETS, PacketStore.DEFAULT_MAX_CONFIG_SIZE) : null;
+    }
+
+    /**
+     * Start accepting subscribers, asynchronously.
+     */
+    public void start() throws IOException {
+        serverSocket = DesktopConnection.openSubscriberServer();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    acceptLoop();
+                } catch (IOException e) {
+                    // this is expected on close
+                    Ln.d("Video subscribers not accepted anymore");
+                }
+            }
+        }, "scrcpy-fan-out");
+        // on some Android versions, closing the server socket does not unblock accept()
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void acceptLoop() throws IOException {
+        while (true) {
+            LocalSocket socket = DesktopConnection.acceptSubscriber(serverSocket, device);
+            if (subscribers.size() >= maxSubscribers) {
+                Ln.w("Video subscriber rejected: too many subscribers (" + maxSubscribers + ")");
+                socket.close();
+                continue;
+            }
+
+            VideoSubscriber subscriber = new VideoSubscriber(nextId++, socket, sendFrameMeta, queueCapacity);
+            int backlogSize;
+            synchronized (lock) {
+                backlogSize = attachBacklog(subscriber);
+                subscribers.add(subscriber);
+            }
+            subscriber.start();
+            if (stopped) {
+                subscriber.close();
+                return;
+            }
+            Ln.i("Video subscriber " + subscriber.getId() + " connected (" + subscribers.size() + "/" + maxSubscribers + "), backlog: "
+                    + backlogSize + " packets");
+            if (backlogSize == 0) {
+                // the subscriber may only start from a key frame
+                screenEncoder.requestKeyFrame();
+            }
+        }
+    }
+
+    /**
+     * Give the packets since the last key frame to a new subscriber, if available.
+     *
+     * @return the number of packets of the backlog (0 if none)
+     */
+    private int attachBacklog(VideoSubscriber subscriber) {
+        if (gopCache == null) {
+            return 0;
+        }
+        PacketSnapshot backlog = gopCache.snapshot();
+        if (backlog == null) {
+            return 0;
+        }
+        subscriber.setBacklog(backlog);
+        return backlog.getPacketCount();
+    }
+
+    /**
+     * Share a packet with all the subscribers (called by the encoder).
+     */
+    @Override
+    public void push(ByteBuffer prefix, ByteBuffer data, long pts, int flags) {
+        boolean isConfig = (flags & VideoPacket.FLAG_CONFIG) != 0;
+        boolean keyFrameNeeded;
+        synchronized (lock) {
+            if (gopCache != null) {
+                gopCache.append(prefix, data, pts, flags);
+            }
+            if (subscribers.isEmpty() && !isConfig) {
+                // nothing to copy
+                return;
+            }
+            keyFrameNeeded = share(prefix, data, pts, flags, isConfig);
+        }
+
+        if (keyFrameNeeded) {
+            // rate-limited by the encoder
+            screenEncoder.requestKeyFrame();
+        }
+    }
+
+    private boolean share(ByteBuffer prefix, ByteBuffer data, long pts, int flags, boolean isConfig) {
+        SharedPacket packet = pool.obtain();
+        packet.set(prefix, data, pts, flags);
+
+        boolean keyFrameNeeded = false;
+        for (VideoSubscriber subscriber : subscribers) {
+            SubscriberQueue queue = subscriber.getQueue();
+            if (queue.isClosed()) {
+                subscribers.remove(subscriber);
+                Ln.i("Video subscriber " + subscriber.getId() + " disconnected (" + queue.getDroppedCount() + " packets dropped)");
+                continue;
+            }
+            queue.offer(packet, config);
+            keyFrameNeeded |= queue.isKeyFrameNeeded();
+        }
+
+        if (isConfig) {
+            // keep it for the next subscribers
+            if (config != null) {
+                config.release();
+            }
+            config = packet;
+        } else {
+            packet.release();
+        }
+        return keyFrameNeeded;
+    }
+
+    /**
+     * Stop accepting subscribers and disconnect all of them.
+     */
+    public void stop() {
+        stopped = true;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        for (VideoSubscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        subscribers.clear();
+    }
+}
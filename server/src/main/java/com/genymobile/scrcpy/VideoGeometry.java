@@ -0,0 +1,136 @@
+package com.genymobile.scrcpy;
+
+/**
+ * Compute the size of the video to encode, from the size of the content to capture, the max size and the encoder constraints.
+ */
+public final class VideoGeometry {
+
+    /**
+     * The constraints of an encoder on the video size (typically read from its {@code MediaCodecInfo.VideoCapabilities}).
+     */
+    public interface Constraints {
+        int getWidthAlignment();
+
+        int getHeightAlignment();
+
+        /**
+         * Indicate whether the encoder supports the video size at the given frame rate.
+         *
+         * @param maxFps the max frame rate (0 if not limited)
+         */
+        boolean isSupported(int width, int height, int maxFps);
+    }
+
+    // H.264 only accepts multiples of 8, whatever the encoder alignment
+    private static final int MIN_ALIGNMENT = 8;
+
+    /**
+     * The constraints used before the encoder is known: multiples of 8, any size supported.
+     */
+    public static final Constraints DEFAULT_CONSTRAINTS = new Constraints() {
+        @Override
+        public int getWidthAlignment() {
+            return MIN_ALIGNMENT;
+        }
+
+        @Override
+        public int getHeightAlignment() {
+            return MIN_ALIGNMENT;
+        }
+
+        @Override
+        public boolean isSupported(int width, int height, int maxFps) {
+            return true;
+        }
+    };
+
+    private VideoGeometry() {
+        // not instantiable
+    }
+
+    /**
+     * Compute the largest video size supported by the encoder, preserving the aspect ratio of the content.
+     * <p>
+     * Principle:
+     * - scale down the great side of the content to maxSize (if necessary);
+     * - scale down the other side so that the aspect ratio is preserved;
+     * - round both sides to the encoder alignment (at least a multiple of 8);
+     * - while the encoder does not support the resulting size, reduce the great side by one alignment step.
+     * <p>
+     * If the encoder supports no size at all, the first candidate is returned, so that the encoder reports the error.
+     *
+     * @param w           the content width
+     * @param h           the content height
+     * @param maxSize     the max size of the great side (0 for no limit)
+     * @param maxFps      the max frame rate (0 if not limited)
+     * @param constraints the encoder constraints
+     * @return the video size
+     */
+    public static Size computeVideoSize(int w, int h, int maxSize, int maxFps, Constraints constraints) {
+        if (BuildConfig.DEBUG && maxSize % 8 != 0) {
+            throw new AssertionError("Max size must be a multiple of 8");
+        }
+        boolean portrait = h > w;
+        int widthAlignment = lcm(MIN_ALIGNMENT, constraints.getWidthAlignment());
+        int heightAlignment = lcm(MIN_ALIGNMENT, constraints.getHeightAlignment());
+        int majorAlignment = portrait ? heightAlignment : widthAlignment;
+        int minorAlignment = portrait ? widthAlignment : heightAlignment;
+
+        int major = alignDown(portrait ? h : w, majorAlignment);
+        int minor = alignDown(portrait ? w : h, minorAlignment);
+
+        int videoMajor = major;
+        if (maxSize > 0 && videoMajor > maxSize) {
+            videoMajor = alignDown(maxSize, majorAlignment);
+        }
+
+        Size firstCandidate = null;
+        while (videoMajor > 0) {
+            int videoMinor = videoMajor == major ? minor : scale(minor, videoMajor, major, minorAlignment);
+            Size size = portrait ? new Size(videoMinor, videoMajor) : new Size(videoMajor, videoMinor);
+            if (constraints.isSupported(size.getWidth(), size.getHeight(), maxFps)) {
+                return size;
+            }
+            if (firstCandidate == null) {
+                firstCandidate = size;
+            }
+            videoMajor -= majorAlignment;
+        }
+
+        if (firstCandidate != null) {
+            Ln.w("No video size supported by the encoder, using " + firstCandidate.getWidth() + "x" + firstCandidate.getHeight());
+            return firstCandidate;
+        }
+        // empty content
+        return portrait ? new Size(minor, major) : new Size(major, minor);
+    }
+
+    /**
+     * Scale {@code value} by {@code num / den}, rounded to the nearest multiple of {@code alignment} (but not 0).
+     */
+    static int scale(int value, int num, int den, int alignment) {
+        long exact = (long) value * num / den;
+        int aligned = (int) ((exact + alignment / 2) / alignment * alignment);
+        return Math.max(aligned, alignment);
+    }
+
+    static int alignDown(int value, int alignment) {
+        return value / alignment * alignment;
+    }
+
+    static int lcm(int a, int b) {
+        if (b <= 0) {
+            return a;
+        }
+        return a / gcd(a, b) * b;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,144 @@
+package com.genymobile.scrcpy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An encoded video packet, copied from a codec output buffer so that the buffer can be released immediately to the codec.
+ * <p>
+ * Packets are preallocated and reused: the data buffer only grows (rarely) when a larger packet must be stored.
+ * <p>
+ * The buffer reserves {@link #HEADER_SIZE} bytes before the packet data, so that the frame meta header may be written just before
+ * the data, and both sent by a single write.
+ */
+public final class VideoPacket {
+
+    public static final long NO_PTS = -1;
+
+    public static final int FLAG_CONFIG = 1;
+    public static final int FLAG_KEY_FRAME = 1 << 1;
+    /**
+     * The packet is not used as a reference by any other frame, so it may be dropped without corrupting the stream.
+     */
+    public static final int FLAG_NON_REFERENCE = 1 << 2;
+    /**
+     * The packet data starts with a timing SEI, whose write time must be set just before the packet is written.
+     *
+     * @see TimingSei
+     */
+    public static final int FLAG_TIMING_SEI = 1 << 3;
+
+    /**
+     * The size of the frame meta header (pts and packet size).
+     */
+    public static final int HEADER_SIZE = 12;
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private ByteBuffer buffer;
+    private ByteBuffer data;
+    private int size;
+    private long pts;
+    private int flags;
+
+    public VideoPacket() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        buffer = ByteBuffer.allocateDirect(HEADER_SIZE + capacity);
+        buffer.position(HEADER_SIZE);
+        data = buffer.slice();
+    }
+
+    /**
+     * Copy the remaining bytes of {@code src} into this packet.
+     * <p>
+     * The position of {@code src} is advanced to its limit.
+     */
+    public void set(ByteBuffer src, long pts, int flags) {
+        set(null, src, pts, flags);
+    }
+
+    /**
+     * Copy the remaining bytes of {@code prefix} (if not {@code null}) then the remaining bytes of {@code src} into this packet.
+     * <p>
+     * The positions of {@code prefix} and {@code src} are advanced to their limit.
+     */
+    public void set(ByteBuffer prefix, ByteBuffer src, long pts, int flags) {
+        int srcSize = src.remaining();
+        if (prefix != null) {
+            srcSize += prefix.remaining();
+        }
+        if (srcSize > data.capacity()) {
+            allocate(Integer.highestOneBit(srcSize) << 1);
+        }
+        data.clear();
+        if (prefix != null) {
+            data.put(prefix);
+        }
+        data.put(src);
+        size = srcSize;
+        this.pts = pts;
+        this.flags = flags;
+    }
+
+    /**
+     * Return the packet data, ready to be read.
+     * <p>
+     * The caller may consume it (change its position), but must not write into it.
+     */
+    public ByteBuffer getData() {
+        data.limit(size).position(0);
+        return data;
+    }
+
+    /**
+     * Return a new buffer sharing the packet data, ready to be read.
+     * <p>
+     * Unlike {@link #getData()}, this does not change the state of this packet, so that several threads may read the same packet
+     * concurrently (none of them may write into it).
+     */
+    public ByteBuffer duplicateData() {
+        ByteBuffer duplicate = data.duplicate();
+        duplicate.limit(size).position(0);
+        return duplicate;
+    }
+
+    /**
+     * Return the packet data preceded by {@link #HEADER_SIZE} bytes, in which the caller may write the frame meta header.
+     * <p>
+     * The caller may consume it (change its position), but must not write into the packet data.
+     */
+    public ByteBuffer getDataWithHeader() {
+        buffer.limit(HEADER_SIZE + size).position(0);
+        return buffer;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getPts() {
+        return pts;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean isConfig() {
+        return (flags & FLAG_CONFIG) != 0;
+    }
+
+    public boolean isKeyFrame() {
+        return (flags & FLAG_KEY_FRAME) != 0;
+    }
+
+    public boolean isNonReference() {
+        return (flags & FLAG_NON_REFERENCE) != 0;
+    }
+
+    public boolean hasTimingSei() {
+        return (flags & FLAG_TIMING_SEI) != 0;
+    }
+}
@@ -0,0 +1,153 @@
+package com.genymobile.scrcpy;
+
+import android.net.LocalSocket;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A video-only client, receiving the packets shared by {@link VideoFanOut} from its own thread.
+ * <p>
+ * The stream format is the same as for the main client (with or without frame meta headers). Since the packet data are shared, the
+ * frame meta header (and the timing SEI, whose write time is specific to each subscriber) are written from separate buffers, gathered in
+ * a single write with the packet data.
+ * <p>
+ * A late subscriber may first receive a backlog (the codec config and all the packets since the last key frame), before the queued
+ * packets.
+ */
+public final class VideoSubscriber {
+
+    private final int id;
+    private final LocalSocket socket;
+    private final FileDescriptor fd;
+    private final boolean sendFrameMeta;
+    private final SubscriberQueue queue;
+
+    private final ByteBuffer header = ByteBuffer.allocate(VideoPacket.HEADER_SIZE);
+    private final ByteBuffer timingSei = ByteBuffer.allocate(TimingSei.getSize(true));
+    private final ByteBuffer[] buffers = new ByteBuffer[3];
+    private long ptsOrigin;
+
+    // the packets to send before the queued ones (null if none)
+    private PacketSnapshot backlog;
+
+    private Thread thread;
+
+    public VideoSubscriber(int id, LocalSocket socket, boolean sendFrameMeta, int queueCapacity) {
+        this.id = id;
+        this.socket = socket;
+        this.fd = socket.getFileDescriptor();
+        this.sendFrameMeta = sendFrameMeta;
+        queue = new SubscriberQueue(queueCapacity);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public SubscriberQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * Set the packets to send before the queued ones (must be called before {@link #start()}).
+     */
+    public void setBacklog(PacketSnapshot backlog) {
+        this.backlog = backlog;
+        queue.startFromBacklog();
+    }
+
+    public void start() {
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loop();
+                } catch (IOException | InterruptedException e) {
+                    // this is expected on close
+                    Ln.d("Video subscriber " + id + " stopped");
+                } finally {
+                    close();
+                }
+            }
+        }, "scrcpy-subscriber-" + id);
+        thread.start();
+    }
+
+    /**
+     * Stop sending packets and close the connection (may be called from any thread).
+     */
+    public void close() {
+        queue.close();
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+        }
+        try {
+            // unblock a pending write
+            socket.shutdownInput();
+            socket.shutdownOutput();
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void loop() throws IOException, InterruptedException {
+        if (backlog != null) {
+            for (int i = 0; i < backlog.getPacketCount() && !queue.isClosed(); ++i) {
+                write(backlog.getData(i), backlog.getPts(i), backlog.getFlags(i));
+            }
+            // release the memory
+            backlog = null;
+        }
+
+        SharedPacket sharedPacket;
+        while ((sharedPacket = queue.take()) != null) {
+            try {
+                VideoPacket packet = sharedPacket.getPacket();
+                write(sharedPacket.duplicateData(), packet.getPts(), packet.getFlags());
+            } finally {
+                sharedPacket.release();
+            }
+        }
+    }
+
+    /**
+     * Write a packet, whose data must not be modified (it may be shared).
+     */
+    private void write(ByteBuffer data, long pts, int flags) throws IOException {
+        int count = 0;
+
+        if (sendFrameMeta) {
+            if (ptsOrigin == 0 && (flags & VideoPacket.FLAG_CONFIG) == 0) {
+                ptsOrigin = pts;
+            }
+            PacketWriter.putHeader(header, 0, pts, flags, data.remaining(), ptsOrigin);
+            header.clear();
+            buffers[count++] = header;
+        }
+
+        if ((flags & VideoPacket.FLAG_TIMING_SEI) != 0) {
+            // the shared SEI must not be modified, send a copy with the write time of this subscriber
+            int start = data.position();
+            int end = data.limit();
+            data.limit(start + TimingSei.getSize(data, start));
+            timingSei.clear();
+            timingSei.put(data);
+            timingSei.flip();
+            TimingSei.setWriteTime(timingSei, 0, System.nanoTime() / 1000);
+            buffers[count++] = timingSei;
+            data.limit(end);
+        }
+
+        buffers[count++] = data;
+        try {
+            IO.writeFully(fd, buffers, count);
+        } finally {
+            for (int i = 0; i < count; ++i) {
+                buffers[i] = null;
+            }
+        }
+    }
+}
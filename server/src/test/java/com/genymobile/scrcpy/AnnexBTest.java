@@ -0,0 +1,69 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class AnnexBTest {
+
+    private static ByteBuffer wrap(int... bytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        for (int b : bytes) {
+            buffer.put((byte) b);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testFindNalUnit() {
+        ByteBuffer buffer = wrap(0, 0, 0, 1, 0x67, 0x42, 0, 0, 1, 0x68, 0xce);
+
+        int index = AnnexB.findNalUnit(buffer, 0, buffer.limit());
+        Assert.assertEquals(4, index);
+        index = AnnexB.findNalUnit(buffer, index + 1, buffer.limit());
+        Assert.assertEquals(9, index);
+        Assert.assertEquals(-1, AnnexB.findNalUnit(buffer, index + 1, buffer.limit()));
+    }
+
+    @Test
+    public void testScanFrameFlags() {
+        // SPS, PPS and IDR slice (parameter sets repeated before each key frame)
+        Assert.assertEquals(VideoPacket.FLAG_KEY_FRAME,
+                AnnexB.scanFrameFlags(wrap(0, 0, 0, 1, 0x67, 0x42, 0, 0, 1, 0x68, 0xce, 0, 0, 0, 1, 0x65, 0x88)));
+        // non-IDR reference slice
+        Assert.assertEquals(0, AnnexB.scanFrameFlags(wrap(0, 0, 0, 1, 0x41, 0x9a)));
+        // non-reference slice
+        Assert.assertEquals(VideoPacket.FLAG_NON_REFERENCE, AnnexB.scanFrameFlags(wrap(0, 0, 0, 1, 0x01, 0x9a)));
+        // SPS and PPS only
+        Assert.assertEquals(VideoPacket.FLAG_CONFIG, AnnexB.scanFrameFlags(wrap(0, 0, 0, 1, 0x67, 0x42, 0, 0, 1, 0x68, 0xce)));
+        // SEI only
+        Assert.assertEquals(0, AnnexB.scanFrameFlags(wrap(0, 0, 0, 1, 0x06, 0x05)));
+        // SEI (nal_ref_idc = 0) before a reference slice
+        Assert.assertEquals(0, AnnexB.scanFrameFlags(wrap(0, 0, 0, 1, 0x06, 0x05, 0, 0, 1, 0x41, 0x9a)));
+        // SEI before a non-reference slice
+        Assert.assertEquals(VideoPacket.FLAG_NON_REFERENCE, AnnexB.scanFrameFlags(wrap(0, 0, 0, 1, 0x06, 0x05, 0, 0, 1, 0x01, 0x9a)));
+    }
+
+    @Test
+    public void testScanFrameFlagsHevc() {
+        // VPS, SPS, PPS and IDR_W_RADL (19)
+        Assert.assertEquals(VideoPacket.FLAG_KEY_FRAME, AnnexB.scanFrameFlagsHevc(
+                wrap(0, 0, 0, 1, 0x40, 0x01, 0, 0, 1, 0x42, 0x01, 0, 0, 1, 0x44, 0x01, 0, 0, 0, 1, 0x26, 0x01, 0xaf)));
+        // CRA (21)
+        Assert.assertEquals(VideoPacket.FLAG_KEY_FRAME, AnnexB.scanFrameFlagsHevc(wrap(0, 0, 0, 1, 0x2a, 0x01, 0xaf)));
+        // TRAIL_R (1)
+        Assert.assertEquals(0, AnnexB.scanFrameFlagsHevc(wrap(0, 0, 0, 1, 0x02, 0x01, 0xaf)));
+        // TRAIL_N (0)
+        Assert.assertEquals(VideoPacket.FLAG_NON_REFERENCE, AnnexB.scanFrameFlagsHevc(wrap(0, 0, 0, 1, 0x00, 0x01, 0xaf)));
+        // IDR_W_RADL (19) alone
+        Assert.assertEquals(VideoPacket.FLAG_KEY_FRAME, AnnexB.scanFrameFlagsHevc(wrap(0, 0, 0, 1, 0x26, 0x01, 0xaf)));
+        // prefix SEI (39) before a TRAIL_N
+        Assert.assertEquals(VideoPacket.FLAG_NON_REFERENCE,
+                AnnexB.scanFrameFlagsHevc(wrap(0, 0, 0, 1, 0x4e, 0x01, 0x05, 0, 0, 1, 0x00, 0x01, 0xaf)));
+        // VPS, SPS and PPS only
+        Assert.assertEquals(VideoPacket.FLAG_CONFIG,
+                AnnexB.scanFrameFlagsHevc(wrap(0, 0, 0, 1, 0x40, 0x01, 0, 0, 1, 0x42, 0x01, 0, 0, 1, 0x44, 0x01)));
+    }
+}
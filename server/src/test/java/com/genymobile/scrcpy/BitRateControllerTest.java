@@ -0,0 +1,145 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BitRateControllerTest {
+
+    private static final int FPS = 60;
+    private static final long FRAME_INTERVAL_US = 1_000_000 / FPS;
+
+    /**
+     * Simulate a connection with a fixed throughput, on which frames are written at a constant rate.
+     * <p>
+     * Each frame size depends on the current target bit rate. A frame is written as soon as the previous one is written (the writes
+     * block while the connection is busy).
+     */
+    private static final class SimulatedLink {
+        private final BitRateController controller;
+
+        private long frameIndex;
+        private long linkFreeUs;
+
+        SimulatedLink(BitRateController controller) {
+            this.controller = controller;
+        }
+
+        void run(int throughput, long durationUs) {
+            long endFrameIndex = frameIndex + durationUs / FRAME_INTERVAL_US;
+            while (frameIndex < endFrameIndex) {
+                long frameSize = controller.getBitRate() / 8 / FPS;
+                long generatedUs = frameIndex * FRAME_INTERVAL_US;
+                long startUs = Math.max(generatedUs, linkFreeUs);
+                long writeDurationUs = frameSize * 8 * 1_000_000 / throughput;
+                long endUs = startUs + writeDurationUs;
+                linkFreeUs = endUs;
+
+                // the frames generated while this one was written are queued
+                int backlog = (int) Math.max(0, endUs / FRAME_INTERVAL_US - frameIndex);
+                controller.onWrite(endUs / 1000, writeDurationUs, backlog, 0);
+                ++frameIndex;
+            }
+        }
+    }
+
+    @Test
+    public void testStable() {
+        BitRateController controller = new BitRateController(1_000_000, 8_000_000, 500_000);
+        SimulatedLink link = new SimulatedLink(controller);
+
+        link.run(100_000_000, 10_000_000);
+        Assert.assertEquals(8_000_000, controller.getBitRate());
+    }
+
+    @Test
+    public void testDegradedLink() {
+        BitRateController controller = new BitRateController(1_000_000, 8_000_000, 500_000);
+        SimulatedLink link = new SimulatedLink(controller);
+
+        link.run(100_000_000, 2_000_000);
+        Assert.assertEquals(8_000_000, controller.getBitRate());
+
+        // the link degrades
+        link.run(3_000_000, 5_000_000);
+        Assert.assertTrue(controller.getBitRate() < 3_000_000);
+        Assert.assertTrue(controller.getBitRate() >= 1_000_000);
+
+        // it must not exceed the throughput for long
+        for (int i = 0; i < 20; ++i) {
+            link.run(3_000_000, 1_000_000);
+            Assert.assertTrue(controller.getBitRate() <= 3_000_000);
+        }
+
+        // the link recovers
+        link.run(100_000_000, 30_000_000);
+        Assert.assertEquals(8_000_000, controller.getBitRate());
+    }
+
+    @Test
+    public void testFloor() {
+        BitRateController controller = new BitRateController(2_000_000, 8_000_000, 500_000);
+        SimulatedLink link = new SimulatedLink(controller);
+
+        link.run(500_000, 10_000_000);
+        Assert.assertEquals(2_000_000, controller.getBitRate());
+    }
+
+    @Test
+    public void testDroppedPackets() {
+        BitRateController controller = new BitRateController(1_000_000, 8_000_000, 500_000);
+
+        Assert.assertFalse(controller.onWrite(0, 100, 0, 0));
+        Assert.assertFalse(controller.onWrite(250, 100, 0, 1));
+        // end of window
+        Assert.assertTrue(controller.onWrite(500, 100, 0, 1));
+        Assert.assertEquals(6_000_000, controller.getBitRate());
+
+        // no more drops
+        Assert.assertFalse(controller.onWrite(1000, 100, 0, 1));
+        Assert.assertEquals(6_000_000, controller.getBitRate());
+    }
+
+    @Test
+    public void testSetMaxBitRate() {
+        BitRateController controller = new BitRateController(1_000_000, 8_000_000, 500_000);
+        SimulatedLink link = new SimulatedLink(controller);
+
+        // lowered immediately
+        controller.setMaxBitRate(4_000_000);
+        Assert.assertEquals(4_000_000, controller.getBitRate());
+        link.run(100_000_000, 10_000_000);
+        Assert.assertEquals(4_000_000, controller.getBitRate());
+
+        // raised progressively
+        controller.setMaxBitRate(6_000_000);
+        Assert.assertEquals(4_000_000, controller.getBitRate());
+        link.run(100_000_000, 30_000_000);
+        Assert.assertEquals(6_000_000, controller.getBitRate());
+
+        // never below the floor
+        controller.setMaxBitRate(500_000);
+        Assert.assertEquals(1_000_000, controller.getBitRate());
+    }
+
+    @Test
+    public void testIncreaseStep() {
+        BitRateController controller = new BitRateController(1_000_000, 8_000_000, 500_000);
+
+        controller.onWrite(0, 100, 0, 0);
+        Assert.assertTrue(controller.onWrite(500, 100, 5, 0));
+        Assert.assertEquals(6_000_000, controller.getBitRate());
+
+        // the bit rate is not increased immediately after a congestion
+        for (long t = 1000; t < 2500; t += 500) {
+            Assert.assertFalse(controller.onWrite(t, 100, 0, 0));
+        }
+        Assert.assertTrue(controller.onWrite(2500, 100, 0, 0));
+        Assert.assertEquals(6_500_000, controller.getBitRate());
+
+        // then it is increased progressively
+        Assert.assertFalse(controller.onWrite(3000, 100, 0, 0));
+        Assert.assertFalse(controller.onWrite(4000, 100, 0, 0));
+        Assert.assertTrue(controller.onWrite(4500, 100, 0, 0));
+        Assert.assertEquals(7_000_000, controller.getBitRate());
+    }
+}
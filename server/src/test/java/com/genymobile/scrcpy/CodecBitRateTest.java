@@ -0,0 +1,69 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodecBitRateTest {
+
+    @Test
+    public void testFollowTarget() {
+        CodecBitRate codecBitRate = new CodecBitRate(2);
+        codecBitRate.reset(8_000_000);
+
+        // unchanged
+        Assert.assertEquals(0, codecBitRate.update(8_000_000));
+
+        Assert.assertEquals(4_000_000, codecBitRate.update(4_000_000));
+        Assert.assertEquals(0, codecBitRate.update(4_000_000));
+    }
+
+    @Test
+    public void testSetBitRateThenRefine() {
+        CodecBitRate codecBitRate = new CodecBitRate(2);
+        codecBitRate.reset(8_000_000);
+
+        // the client sets the bit rate
+        Assert.assertEquals(4_000_000, codecBitRate.update(4_000_000));
+
+        // the refine boosts the new bit rate, and restores it
+        Assert.assertEquals(8_000_000, codecBitRate.startRefine(4_000_000));
+        Assert.assertTrue(codecBitRate.isRefining());
+        Assert.assertEquals(4_000_000, codecBitRate.endRefine(4_000_000));
+        Assert.assertFalse(codecBitRate.isRefining());
+        Assert.assertEquals(0, codecBitRate.update(4_000_000));
+    }
+
+    @Test
+    public void testSetBitRateDuringRefine() {
+        CodecBitRate codecBitRate = new CodecBitRate(2);
+        codecBitRate.reset(8_000_000);
+
+        Assert.assertEquals(16_000_000, codecBitRate.startRefine(8_000_000));
+
+        // the client sets the bit rate: the refine is not interrupted
+        Assert.assertEquals(0, codecBitRate.update(2_000_000));
+
+        // the new bit rate is applied at the end of the refine
+        Assert.assertEquals(2_000_000, codecBitRate.endRefine(2_000_000));
+        Assert.assertEquals(0, codecBitRate.update(2_000_000));
+    }
+
+    @Test
+    public void testRefineBitRateOverflow() {
+        CodecBitRate codecBitRate = new CodecBitRate(2);
+        codecBitRate.reset(Integer.MAX_VALUE);
+        Assert.assertEquals(Integer.MAX_VALUE, codecBitRate.startRefine(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testResetEndsRefine() {
+        CodecBitRate codecBitRate = new CodecBitRate(2);
+        codecBitRate.reset(8_000_000);
+        codecBitRate.startRefine(8_000_000);
+
+        // the codec is restarted
+        codecBitRate.reset(8_000_000);
+        Assert.assertFalse(codecBitRate.isRefining());
+        Assert.assertEquals(0, codecBitRate.update(8_000_000));
+    }
+}
@@ -0,0 +1,76 @@
+package com.genymobile.scrcpy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class EncoderCacheTest {
+
+    private static final String AVC = "video/avc";
+    private static final String HEVC = "video/hevc";
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("scrcpy-encoders", ".cache");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testEmpty() {
+        EncoderCache cache = EncoderCache.load(file, "fingerprint1");
+        Assert.assertNull(cache.get(AVC));
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        EncoderCache cache = EncoderCache.load(file, "fingerprint1");
+        cache.put(AVC, new EncoderCache.Entry("OMX.vendor.avc", 4096, 2176));
+        Assert.assertTrue(cache.save());
+
+        cache = EncoderCache.load(file, "fingerprint1");
+        EncoderCache.Entry entry = cache.get(AVC);
+        Assert.assertNotNull(entry);
+        Assert.assertEquals("OMX.vendor.avc", entry.getEncoderName());
+        Assert.assertEquals(4096, entry.getMaxWidth());
+        Assert.assertEquals(2176, entry.getMaxHeight());
+        Assert.assertNull(cache.get(HEVC));
+    }
+
+    @Test
+    public void testFingerprintChanged() {
+        EncoderCache cache = EncoderCache.load(file, "fingerprint1");
+        cache.put(AVC, new EncoderCache.Entry("OMX.vendor.avc", 4096, 2176));
+        Assert.assertTrue(cache.save());
+
+        cache = EncoderCache.load(file, "fingerprint2");
+        Assert.assertNull(cache.get(AVC));
+    }
+
+    @Test
+    public void testRemove() {
+        EncoderCache cache = EncoderCache.load(file, "fingerprint1");
+        cache.put(AVC, new EncoderCache.Entry("OMX.vendor.avc", 4096, 2176));
+        cache.remove(AVC);
+        Assert.assertNull(cache.get(AVC));
+    }
+
+    @Test
+    public void testAccepts() {
+        EncoderCache.Entry entry = new EncoderCache.Entry("OMX.vendor.avc", 1920, 1088);
+        Assert.assertTrue(entry.accepts(new Size(1920, 1080)));
+        Assert.assertTrue(entry.accepts(new Size(1080, 1920)));
+        Assert.assertFalse(entry.accepts(new Size(2400, 1080)));
+        Assert.assertFalse(entry.accepts(new Size(1200, 1200)));
+    }
+}
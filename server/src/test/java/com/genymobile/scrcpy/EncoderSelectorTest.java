@@ -0,0 +1,49 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EncoderSelectorTest {
+
+    @Test
+    public void testRank() {
+        List<EncoderSelector.Candidate> candidates = new ArrayList<>();
+        candidates.add(new EncoderSelector.Candidate("OMX.google.h264.encoder", false, true, 60, true));
+        candidates.add(new EncoderSelector.Candidate("OMX.vendor.slow", true, true, 30, true));
+        candidates.add(new EncoderSelector.Candidate("OMX.vendor.small", true, false, 0, true));
+        candidates.add(new EncoderSelector.Candidate("OMX.vendor.fast", true, true, 120, true));
+
+        List<EncoderSelector.Candidate> ranked = EncoderSelector.rank(candidates);
+
+        Assert.assertEquals(3, ranked.size());
+        Assert.assertEquals("OMX.vendor.fast", ranked.get(0).getName());
+        Assert.assertEquals("OMX.vendor.slow", ranked.get(1).getName());
+        Assert.assertEquals("OMX.google.h264.encoder", ranked.get(2).getName());
+    }
+
+    @Test
+    public void testRankKeepsListOrder() {
+        List<EncoderSelector.Candidate> candidates = new ArrayList<>();
+        candidates.add(new EncoderSelector.Candidate("c2.vendor.first", true, true, 60, false));
+        candidates.add(new EncoderSelector.Candidate("c2.vendor.second", true, true, 60, false));
+        candidates.add(new EncoderSelector.Candidate("c2.vendor.third", true, true, 60, true));
+
+        List<EncoderSelector.Candidate> ranked = EncoderSelector.rank(candidates);
+
+        Assert.assertEquals(3, ranked.size());
+        Assert.assertEquals("c2.vendor.third", ranked.get(0).getName());
+        Assert.assertEquals("c2.vendor.first", ranked.get(1).getName());
+        Assert.assertEquals("c2.vendor.second", ranked.get(2).getName());
+    }
+
+    @Test
+    public void testRankNoSupportedSize() {
+        List<EncoderSelector.Candidate> candidates = new ArrayList<>();
+        candidates.add(new EncoderSelector.Candidate("c2.vendor.encoder", true, false, 0, true));
+
+        Assert.assertTrue(EncoderSelector.rank(candidates).isEmpty());
+    }
+}
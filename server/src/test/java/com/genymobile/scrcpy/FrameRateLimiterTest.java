@@ -0,0 +1,108 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameRateLimiterTest {
+
+    private static final long FRAME_INTERVAL_US = 1_000_000 / 60;
+
+    @Test
+    public void testLimitDroppableFrames() {
+        FrameRateLimiter limiter = new FrameRateLimiter(30);
+
+        int accepted = 0;
+        for (int i = 0; i < 60; ++i) {
+            if (limiter.accept(i * FRAME_INTERVAL_US, true)) {
+                ++accepted;
+            }
+        }
+
+        // one frame out of two
+        Assert.assertEquals(30, accepted);
+        Assert.assertEquals(30, limiter.getSentCount());
+        Assert.assertEquals(30, limiter.getDroppedCount());
+        Assert.assertEquals(0, limiter.getOverLimitCount());
+    }
+
+    @Test
+    public void testNeverDropReferenceFrames() {
+        FrameRateLimiter limiter = new FrameRateLimiter(30);
+
+        for (int i = 0; i < 60; ++i) {
+            Assert.assertTrue(limiter.accept(i * FRAME_INTERVAL_US, false));
+        }
+
+        Assert.assertEquals(60, limiter.getSentCount());
+        Assert.assertEquals(0, limiter.getDroppedCount());
+        // all the frames but the first one exceed the limit
+        Assert.assertEquals(59, limiter.getOverLimitCount());
+    }
+
+    @Test
+    public void testTolerateJitter() {
+        FrameRateLimiter limiter = new FrameRateLimiter(30);
+
+        Assert.assertTrue(limiter.accept(0, true));
+        // slightly less than 1/30s after the previous frame
+        Assert.assertTrue(limiter.accept(32_000, true));
+        Assert.assertFalse(limiter.accept(50_000, true));
+    }
+
+    @Test
+    public void testNoLimit() {
+        FrameRateLimiter limiter = new FrameRateLimiter(0);
+
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertTrue(limiter.accept(i, true));
+        }
+        Assert.assertEquals(0, limiter.getDroppedCount());
+    }
+
+    @Test
+    public void testChangeMaxFps() {
+        FrameRateLimiter limiter = new FrameRateLimiter(0);
+        Assert.assertTrue(limiter.accept(0, true));
+        Assert.assertTrue(limiter.accept(FRAME_INTERVAL_US, true));
+
+        limiter.setMaxFps(30);
+        Assert.assertFalse(limiter.accept(2 * FRAME_INTERVAL_US, true));
+        Assert.assertTrue(limiter.accept(3 * FRAME_INTERVAL_US, true));
+    }
+
+    @Test
+    public void testPollStats() {
+        FrameRateLimiter limiter = new FrameRateLimiter(30);
+        Assert.assertNull(limiter.pollStats(0, 1000));
+
+        for (int i = 0; i < 60; ++i) {
+            limiter.accept(i * FRAME_INTERVAL_US, true);
+        }
+
+        Assert.assertNull(limiter.pollStats(500, 1000));
+        String stats = limiter.pollStats(1000, 1000);
+        Assert.assertEquals("max=30, fps=30, sent=30, dropped=30, overLimit=0", stats);
+    }
+
+    @Test
+    public void testInputSuspendDuration() {
+        FrameRateLimiter limiter = new FrameRateLimiter(30);
+        // no frame sent yet
+        Assert.assertEquals(0, limiter.getInputSuspendDurationUs(0));
+
+        Assert.assertTrue(limiter.accept(1_000_000, false));
+        // the frame is output 10ms after its capture, the next one is allowed 30ms later (1/30s minus the jitter tolerance)
+        Assert.assertEquals(20_000, limiter.getInputSuspendDurationUs(1_010_000));
+        // the next frame is already allowed
+        Assert.assertEquals(0, limiter.getInputSuspendDurationUs(1_040_000));
+        // the current time is before the frame timestamp
+        Assert.assertEquals(30_000, limiter.getInputSuspendDurationUs(900_000));
+    }
+
+    @Test
+    public void testNoInputSuspendWithoutLimit() {
+        FrameRateLimiter limiter = new FrameRateLimiter(0);
+        Assert.assertTrue(limiter.accept(1_000_000, false));
+        Assert.assertEquals(0, limiter.getInputSuspendDurationUs(1_000_000));
+    }
+}
@@ -0,0 +1,122 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class GopCacheTest {
+
+    @Test
+    public void testSnapshotFromLastKeyFrame() {
+        GopCache cache = new GopCache(1024, 16, 64);
+        Assert.assertNull(cache.snapshot());
+
+        cache.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        // no key frame yet
+        cache.append(null, TestPackets.data(2, 100), 1000, 0);
+        Assert.assertFalse(cache.isValid());
+
+        cache.append(null, TestPackets.data(3, 200), 2000, VideoPacket.FLAG_KEY_FRAME);
+        cache.append(null, TestPackets.data(4, 50), 3000, 0);
+        cache.append(null, TestPackets.data(5, 50), 4000, VideoPacket.FLAG_NON_REFERENCE);
+        Assert.assertTrue(cache.isValid());
+        Assert.assertEquals(3, cache.getPacketCount());
+        Assert.assertEquals(300, cache.getSize());
+
+        PacketSnapshot snapshot = cache.snapshot();
+        Assert.assertEquals(4, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 0, 1, 8, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        TestPackets.assertPacket(snapshot, 1, 3, 200, 2000, VideoPacket.FLAG_KEY_FRAME);
+        TestPackets.assertPacket(snapshot, 2, 4, 50, 3000, 0);
+        TestPackets.assertPacket(snapshot, 3, 5, 50, 4000, VideoPacket.FLAG_NON_REFERENCE);
+
+        // a new key frame resets the cache
+        cache.append(null, TestPackets.data(6, 100), 5000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertEquals(1, cache.getPacketCount());
+        Assert.assertEquals(100, cache.getSize());
+
+        // the previous snapshot is independent
+        TestPackets.assertPacket(snapshot, 1, 3, 200, 2000, VideoPacket.FLAG_KEY_FRAME);
+
+        snapshot = cache.snapshot();
+        Assert.assertEquals(2, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 0, 1, 8, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        TestPackets.assertPacket(snapshot, 1, 6, 100, 5000, VideoPacket.FLAG_KEY_FRAME);
+    }
+
+    @Test
+    public void testPrefix() {
+        GopCache cache = new GopCache(1024, 16, 64);
+        cache.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+
+        ByteBuffer prefix = TestPackets.data(42, 4);
+        ByteBuffer data = TestPackets.data(43, 4);
+        cache.append(prefix, data, 1000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertEquals(0, prefix.position());
+
+        PacketSnapshot snapshot = cache.snapshot();
+        ByteBuffer packet = snapshot.getData(1);
+        Assert.assertEquals(8, packet.remaining());
+        Assert.assertEquals(42, packet.getInt());
+        Assert.assertEquals(43, packet.getInt());
+    }
+
+    @Test
+    public void testOverflow() {
+        GopCache cache = new GopCache(1000, 16, 64);
+        cache.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        cache.append(null, TestPackets.data(2, 600), 1000, VideoPacket.FLAG_KEY_FRAME);
+        cache.append(null, TestPackets.data(3, 300), 2000, 0);
+        Assert.assertTrue(cache.isValid());
+
+        // does not fit: the cache is not valid until the next key frame
+        cache.append(null, TestPackets.data(4, 300), 3000, 0);
+        Assert.assertFalse(cache.isValid());
+        Assert.assertNull(cache.snapshot());
+        cache.append(null, TestPackets.data(5, 10), 4000, 0);
+        Assert.assertFalse(cache.isValid());
+
+        cache.append(null, TestPackets.data(6, 900), 5000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertTrue(cache.isValid());
+        Assert.assertEquals(2, cache.snapshot().getPacketCount());
+
+        // a key frame larger than the cache
+        cache.append(null, TestPackets.data(7, 2000), 6000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertFalse(cache.isValid());
+    }
+
+    @Test
+    public void testMaxPackets() {
+        GopCache cache = new GopCache(1000, 3, 64);
+        cache.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        cache.append(null, TestPackets.data(2, 10), 1000, VideoPacket.FLAG_KEY_FRAME);
+        cache.append(null, TestPackets.data(3, 10), 2000, 0);
+        cache.append(null, TestPackets.data(4, 10), 3000, 0);
+        Assert.assertTrue(cache.isValid());
+        cache.append(null, TestPackets.data(5, 10), 4000, 0);
+        Assert.assertFalse(cache.isValid());
+    }
+
+    @Test
+    public void testNewConfig() {
+        GopCache cache = new GopCache(1000, 16, 64);
+        cache.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        cache.append(null, TestPackets.data(2, 10), 1000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertTrue(cache.isValid());
+
+        // the codec is restarted: the previous packets could not be decoded with the new config
+        cache.append(null, TestPackets.data(3, 12), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        Assert.assertFalse(cache.isValid());
+
+        cache.append(null, TestPackets.data(4, 10), 2000, VideoPacket.FLAG_KEY_FRAME);
+        PacketSnapshot snapshot = cache.snapshot();
+        TestPackets.assertPacket(snapshot, 0, 3, 12, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        TestPackets.assertPacket(snapshot, 1, 4, 10, 2000, VideoPacket.FLAG_KEY_FRAME);
+
+        // a config too large to be cached
+        cache.append(null, TestPackets.data(5, 100), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        cache.append(null, TestPackets.data(6, 10), 3000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertFalse(cache.isValid());
+    }
+}
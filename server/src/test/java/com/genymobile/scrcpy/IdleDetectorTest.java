@@ -0,0 +1,87 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IdleDetectorTest {
+
+    // pause after 1 second without change
+    private static final int TIMEOUT_MS = 1000;
+    private static final int REPEAT_SIZE = 40;
+    private static final int FRAME_SIZE = 20000;
+    private static final long REPEAT_INTERVAL_US = 100_000;
+
+    @Test
+    public void testPauseOnRepeatedFrames() {
+        IdleDetector detector = new IdleDetector(TIMEOUT_MS, IdleDetector.DEFAULT_MAX_REPEAT_FRAME_SIZE);
+
+        Assert.assertTrue(detector.accept(0, FRAME_SIZE, true));
+        // the repeated frames are sent until the timeout
+        for (int i = 1; i <= 10; ++i) {
+            Assert.assertTrue(detector.accept(i * REPEAT_INTERVAL_US, REPEAT_SIZE, false));
+        }
+        Assert.assertFalse(detector.isPaused());
+
+        Assert.assertFalse(detector.accept(11 * REPEAT_INTERVAL_US, REPEAT_SIZE, false));
+        Assert.assertTrue(detector.isPaused());
+        Assert.assertFalse(detector.isKeyFrameNeeded());
+        Assert.assertFalse(detector.accept(12 * REPEAT_INTERVAL_US, REPEAT_SIZE, false));
+
+        Assert.assertEquals(1, detector.getPauseCount());
+        Assert.assertEquals(2, detector.getDroppedCount());
+    }
+
+    @Test
+    public void testContentChangeResetsTimeout() {
+        IdleDetector detector = new IdleDetector(TIMEOUT_MS, IdleDetector.DEFAULT_MAX_REPEAT_FRAME_SIZE);
+
+        long pts = 0;
+        for (int i = 0; i < 100; ++i) {
+            // a changed frame every 500ms
+            int size = i % 5 == 0 ? FRAME_SIZE : REPEAT_SIZE;
+            Assert.assertTrue(detector.accept(pts, size, false));
+            pts += REPEAT_INTERVAL_US;
+        }
+        Assert.assertFalse(detector.isPaused());
+    }
+
+    @Test
+    public void testResumeOnKeyFrame() {
+        IdleDetector detector = new IdleDetector(TIMEOUT_MS, IdleDetector.DEFAULT_MAX_REPEAT_FRAME_SIZE);
+
+        long pts = 0;
+        while (!detector.isPaused()) {
+            detector.accept(pts, REPEAT_SIZE, false);
+            pts += REPEAT_INTERVAL_US;
+        }
+
+        // the content changes, but the frame depends on the dropped frames
+        Assert.assertFalse(detector.accept(pts, FRAME_SIZE, false));
+        Assert.assertTrue(detector.isKeyFrameNeeded());
+        pts += REPEAT_INTERVAL_US;
+        Assert.assertFalse(detector.accept(pts, REPEAT_SIZE, false));
+        Assert.assertTrue(detector.isKeyFrameNeeded());
+        pts += REPEAT_INTERVAL_US;
+
+        Assert.assertTrue(detector.accept(pts, FRAME_SIZE, true));
+        Assert.assertFalse(detector.isPaused());
+        Assert.assertFalse(detector.isKeyFrameNeeded());
+        pts += REPEAT_INTERVAL_US;
+        Assert.assertTrue(detector.accept(pts, REPEAT_SIZE, false));
+    }
+
+    @Test
+    public void testResumeOnRequestedKeyFrame() {
+        IdleDetector detector = new IdleDetector(TIMEOUT_MS, IdleDetector.DEFAULT_MAX_REPEAT_FRAME_SIZE);
+
+        long pts = 0;
+        while (!detector.isPaused()) {
+            detector.accept(pts, REPEAT_SIZE, false);
+            pts += REPEAT_INTERVAL_US;
+        }
+
+        // a key frame requested on input resumes the stream, even if the content did not change
+        Assert.assertTrue(detector.accept(pts, FRAME_SIZE, true));
+        Assert.assertFalse(detector.isPaused());
+    }
+}
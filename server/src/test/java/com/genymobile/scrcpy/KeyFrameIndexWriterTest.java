@@ -0,0 +1,57 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class KeyFrameIndexWriterTest {
+
+    @Test
+    public void testIndex() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        KeyFrameIndexWriter writer = new KeyFrameIndexWriter(bos);
+
+        writer.add(VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG, 20);
+        writer.add(1000000, VideoPacket.FLAG_KEY_FRAME, 100);
+        writer.add(1016666, 0, 50);
+        writer.add(1033333, VideoPacket.FLAG_NON_REFERENCE, 30);
+        // the codec is restarted
+        writer.add(VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG, 24);
+        writer.add(3000000, VideoPacket.FLAG_KEY_FRAME, 80);
+        writer.add(3016666, 0, 40);
+
+        Assert.assertEquals(4, writer.getEntryCount());
+        Assert.assertEquals(344, writer.getStreamSize());
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(expected);
+        dos.writeLong(0);
+        dos.writeLong(1L << 63); // config
+        dos.writeLong(20);
+        dos.writeLong(1L << 62); // key frame, PTS 0
+        dos.writeLong(200);
+        dos.writeLong(1L << 63);
+        dos.writeLong(224);
+        dos.writeLong((1L << 62) | 2000000);
+
+        Assert.assertArrayEquals(expected.toByteArray(), bos.toByteArray());
+        Assert.assertEquals(4 * KeyFrameIndexWriter.ENTRY_SIZE, bos.size());
+    }
+
+    @Test
+    public void testEntryWrittenImmediately() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        KeyFrameIndexWriter writer = new KeyFrameIndexWriter(bos);
+
+        writer.add(VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG, 20);
+        Assert.assertEquals(KeyFrameIndexWriter.ENTRY_SIZE, bos.size());
+
+        // not indexed
+        writer.add(1000, 0, 50);
+        Assert.assertEquals(KeyFrameIndexWriter.ENTRY_SIZE, bos.size());
+        Assert.assertEquals(70, writer.getStreamSize());
+    }
+}
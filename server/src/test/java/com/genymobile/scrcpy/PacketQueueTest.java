@@ -0,0 +1,230 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class PacketQueueTest {
+
+    private static ByteBuffer data(int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(value);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int takeValue(PacketQueue queue) {
+        VideoPacket packet = queue.take();
+        Assert.assertNotNull(packet);
+        int value = packet.getData().getInt(0);
+        queue.release();
+        return value;
+    }
+
+    @Test
+    public void testFifo() {
+        PacketQueue queue = new PacketQueue(4, PacketQueue.OverflowPolicy.BLOCK);
+
+        Assert.assertTrue(queue.offer(data(1), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG));
+        Assert.assertTrue(queue.offer(data(2), 1000, VideoPacket.FLAG_KEY_FRAME));
+        Assert.assertTrue(queue.offer(data(3), 2000, 0));
+        Assert.assertEquals(3, queue.getSize());
+
+        VideoPacket packet = queue.take();
+        Assert.assertTrue(packet.isConfig());
+        Assert.assertEquals(VideoPacket.NO_PTS, packet.getPts());
+        Assert.assertEquals(4, packet.getSize());
+        Assert.assertEquals(1, packet.getData().getInt(0));
+        queue.release();
+
+        packet = queue.take();
+        Assert.assertTrue(packet.isKeyFrame());
+        Assert.assertEquals(1000, packet.getPts());
+        queue.release();
+
+        Assert.assertEquals(3, takeValue(queue));
+        Assert.assertEquals(0, queue.getSize());
+        Assert.assertEquals(3, queue.getMaxSize());
+        Assert.assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testLargePacket() {
+        PacketQueue queue = new PacketQueue(1, PacketQueue.OverflowPolicy.BLOCK);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        buffer.put(buffer.capacity() - 1, (byte) 42);
+        Assert.assertTrue(queue.offer(buffer, 0, VideoPacket.FLAG_KEY_FRAME));
+
+        VideoPacket packet = queue.take();
+        Assert.assertEquals(1024 * 1024, packet.getSize());
+        Assert.assertEquals(42, packet.getData().get(packet.getSize() - 1));
+        queue.release();
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        final PacketQueue queue = new PacketQueue(2, PacketQueue.OverflowPolicy.BLOCK);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100; ++i) {
+                    queue.offer(data(i), i, 0);
+                }
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertEquals(i, takeValue(queue));
+        }
+
+        producer.join();
+        Assert.assertEquals(0, queue.getDroppedCount());
+        Assert.assertTrue(queue.getMaxSize() <= 2);
+    }
+
+    @Test
+    public void testDropUntilKeyFrame() {
+        PacketQueue queue = new PacketQueue(2, PacketQueue.OverflowPolicy.DROP_UNTIL_KEY_FRAME);
+
+        Assert.assertTrue(queue.offer(data(1), 0, VideoPacket.FLAG_KEY_FRAME));
+        Assert.assertTrue(queue.offer(data(2), 1, 0));
+        // full
+        Assert.assertFalse(queue.offer(data(3), 2, 0));
+        Assert.assertTrue(queue.isWaitingKeyFrame());
+
+        Assert.assertEquals(1, takeValue(queue));
+
+        // not full anymore, but the reference frame of this packet has been dropped
+        Assert.assertFalse(queue.offer(data(4), 3, 0));
+        Assert.assertTrue(queue.isWaitingKeyFrame());
+
+        Assert.assertEquals(2, takeValue(queue));
+
+        Assert.assertTrue(queue.offer(data(5), 4, VideoPacket.FLAG_KEY_FRAME));
+        Assert.assertFalse(queue.isWaitingKeyFrame());
+        Assert.assertTrue(queue.offer(data(6), 5, 0));
+
+        Assert.assertEquals(5, takeValue(queue));
+        Assert.assertEquals(6, takeValue(queue));
+        Assert.assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testDropUntilKeyFrameKeepsConfig() throws InterruptedException {
+        final PacketQueue queue = new PacketQueue(1, PacketQueue.OverflowPolicy.DROP_UNTIL_KEY_FRAME);
+
+        Assert.assertTrue(queue.offer(data(1), 0, VideoPacket.FLAG_KEY_FRAME));
+        Assert.assertFalse(queue.offer(data(2), 1, 0));
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                takeValue(queue);
+            }
+        });
+        consumer.start();
+
+        // a config packet is never dropped, it waits for the consumer
+        Assert.assertTrue(queue.offer(data(3), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG));
+        consumer.join();
+        Assert.assertEquals(3, takeValue(queue));
+    }
+
+    @Test
+    public void testDropOldestNonReference() {
+        PacketQueue queue = new PacketQueue(3, PacketQueue.OverflowPolicy.DROP_OLDEST_NON_REFERENCE);
+
+        Assert.assertTrue(queue.offer(data(1), 0, VideoPacket.FLAG_KEY_FRAME));
+        Assert.assertTrue(queue.offer(data(2), 1, VideoPacket.FLAG_NON_REFERENCE));
+        Assert.assertTrue(queue.offer(data(3), 2, VideoPacket.FLAG_NON_REFERENCE));
+        // full, packet 2 is discarded
+        Assert.assertTrue(queue.offer(data(4), 3, 0));
+        // full, packet 3 is discarded
+        Assert.assertTrue(queue.offer(data(5), 4, 0));
+        // full, no non-reference packet to discard
+        Assert.assertFalse(queue.offer(data(6), 5, VideoPacket.FLAG_NON_REFERENCE));
+        Assert.assertFalse(queue.isWaitingKeyFrame());
+        Assert.assertFalse(queue.offer(data(7), 6, 0));
+        Assert.assertTrue(queue.isWaitingKeyFrame());
+
+        Assert.assertEquals(1, takeValue(queue));
+        Assert.assertEquals(4, takeValue(queue));
+        Assert.assertEquals(5, takeValue(queue));
+        Assert.assertEquals(0, queue.getSize());
+        Assert.assertEquals(4, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testTakeSeveral() {
+        PacketQueue queue = new PacketQueue(4, PacketQueue.OverflowPolicy.DROP_OLDEST_NON_REFERENCE);
+
+        Assert.assertTrue(queue.offer(data(1), 0, VideoPacket.FLAG_KEY_FRAME));
+        Assert.assertTrue(queue.offer(data(2), 1, 0));
+        Assert.assertTrue(queue.offer(data(3), 2, VideoPacket.FLAG_NON_REFERENCE));
+        Assert.assertTrue(queue.offer(data(4), 3, 0));
+
+        VideoPacket packet1 = queue.take();
+        VideoPacket packet2 = queue.poll();
+        Assert.assertEquals(1, packet1.getData().getInt(0));
+        Assert.assertEquals(2, packet2.getData().getInt(0));
+
+        // full, packet 3 is discarded (the taken packets may not be discarded)
+        Assert.assertTrue(queue.offer(data(5), 4, 0));
+
+        Assert.assertEquals(4, queue.poll().getData().getInt(0));
+        Assert.assertEquals(5, queue.poll().getData().getInt(0));
+        Assert.assertNull(queue.poll());
+
+        queue.release();
+        queue.release();
+        queue.release();
+        queue.release();
+        Assert.assertEquals(0, queue.getSize());
+
+        // all the slots are reusable
+        for (int i = 0; i < 8; ++i) {
+            Assert.assertTrue(queue.offer(data(10 + i), 10 + i, 0));
+            Assert.assertEquals(10 + i, takeValue(queue));
+        }
+        Assert.assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testDataWithHeader() {
+        PacketQueue queue = new PacketQueue(1, PacketQueue.OverflowPolicy.BLOCK);
+        Assert.assertTrue(queue.offer(data(42), 0, VideoPacket.FLAG_KEY_FRAME));
+
+        VideoPacket packet = queue.take();
+        ByteBuffer buffer = packet.getDataWithHeader();
+        Assert.assertEquals(VideoPacket.HEADER_SIZE + 4, buffer.remaining());
+        buffer.putLong(0, 1234);
+        buffer.putInt(8, packet.getSize());
+
+        Assert.assertEquals(1234, buffer.getLong(0));
+        Assert.assertEquals(4, buffer.getInt(8));
+        Assert.assertEquals(42, buffer.getInt(VideoPacket.HEADER_SIZE));
+        Assert.assertEquals(42, packet.getData().getInt(0));
+        queue.release();
+    }
+
+    @Test
+    public void testClose() throws InterruptedException {
+        final PacketQueue queue = new PacketQueue(1, PacketQueue.OverflowPolicy.BLOCK);
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Assert.assertNull(queue.take());
+            }
+        });
+        consumer.start();
+
+        queue.close();
+        consumer.join();
+        Assert.assertFalse(queue.offer(data(1), 0, 0));
+    }
+}
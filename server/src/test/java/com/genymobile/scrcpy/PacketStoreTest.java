@@ -0,0 +1,108 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class PacketStoreTest {
+
+    @Test
+    public void testSnapshot() {
+        PacketStore store = new PacketStore(1000, 16, 64);
+        Assert.assertNull(store.snapshot(0));
+
+        ByteBuffer prefix = TestPackets.data(1, 4);
+        ByteBuffer config = TestPackets.data(2, 8);
+        Assert.assertTrue(store.setConfig(prefix, config, VideoPacket.FLAG_CONFIG));
+        // not consumed
+        Assert.assertEquals(0, prefix.position());
+        Assert.assertEquals(0, config.position());
+        // no packets
+        Assert.assertNull(store.snapshot(0));
+
+        ByteBuffer data = TestPackets.data(3, 100);
+        Assert.assertTrue(store.add(null, data, 1000, VideoPacket.FLAG_KEY_FRAME));
+        Assert.assertEquals(0, data.position());
+        Assert.assertTrue(store.add(null, TestPackets.data(4, 50), 2000, 0));
+        Assert.assertEquals(2, store.getPacketCount());
+        Assert.assertEquals(150, store.getSize());
+        Assert.assertEquals(2000, store.getPts(1));
+        Assert.assertEquals(0, store.getFlags(1));
+
+        PacketSnapshot snapshot = store.snapshot(0);
+        Assert.assertEquals(3, snapshot.getPacketCount());
+        // the config is stored with its prefix
+        TestPackets.assertPacket(snapshot, 0, 1, 12, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        TestPackets.assertPacket(snapshot, 1, 3, 100, 1000, VideoPacket.FLAG_KEY_FRAME);
+        TestPackets.assertPacket(snapshot, 2, 4, 50, 2000, 0);
+
+        snapshot = store.snapshot(1);
+        Assert.assertEquals(2, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 0, 1, 12, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        TestPackets.assertPacket(snapshot, 1, 4, 50, 2000, 0);
+    }
+
+    @Test
+    public void testWrapAround() {
+        PacketStore store = new PacketStore(100, 16, 64);
+        store.setConfig(null, TestPackets.data(1, 8), VideoPacket.FLAG_CONFIG);
+        Assert.assertTrue(store.add(null, TestPackets.data(2, 40), 1000, 0));
+        Assert.assertTrue(store.add(null, TestPackets.data(3, 40), 2000, 0));
+
+        // a packet is never split
+        Assert.assertFalse(store.fits(30));
+        Assert.assertFalse(store.add(null, TestPackets.data(4, 30), 3000, 0));
+
+        store.removeOldest();
+        Assert.assertEquals(1, store.getPacketCount());
+        Assert.assertEquals(40, store.getSize());
+        // written at the start of the buffer
+        Assert.assertTrue(store.add(null, TestPackets.data(4, 30), 3000, 0));
+        // the free space between the newest and the oldest packets is too small
+        Assert.assertFalse(store.fits(20));
+        Assert.assertTrue(store.fits(10));
+
+        PacketSnapshot snapshot = store.snapshot(0);
+        Assert.assertEquals(3, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 1, 3, 40, 2000, 0);
+        TestPackets.assertPacket(snapshot, 2, 4, 30, 3000, 0);
+    }
+
+    @Test
+    public void testMaxPackets() {
+        PacketStore store = new PacketStore(1000, 2, 64);
+        store.setConfig(null, TestPackets.data(1, 8), VideoPacket.FLAG_CONFIG);
+        Assert.assertTrue(store.add(null, TestPackets.data(2, 10), 1000, 0));
+        Assert.assertTrue(store.add(null, TestPackets.data(3, 10), 2000, 0));
+        Assert.assertFalse(store.fits(10));
+        Assert.assertFalse(store.add(null, TestPackets.data(4, 10), 3000, 0));
+    }
+
+    @Test
+    public void testNewConfig() {
+        PacketStore store = new PacketStore(1000, 16, 64);
+        store.setConfig(null, TestPackets.data(1, 8), VideoPacket.FLAG_CONFIG);
+        store.add(null, TestPackets.data(2, 10), 1000, VideoPacket.FLAG_KEY_FRAME);
+
+        // the packets are removed
+        Assert.assertTrue(store.setConfig(null, TestPackets.data(3, 12), VideoPacket.FLAG_CONFIG));
+        Assert.assertEquals(0, store.getPacketCount());
+        Assert.assertEquals(0, store.getSize());
+
+        // a config too large to be stored
+        Assert.assertFalse(store.setConfig(null, TestPackets.data(4, 100), VideoPacket.FLAG_CONFIG));
+        Assert.assertFalse(store.hasConfig());
+        store.add(null, TestPackets.data(5, 10), 2000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertNull(store.snapshot(0));
+    }
+
+    @Test
+    public void testPacketLargerThanBuffer() {
+        PacketStore store = new PacketStore(100, 16, 64);
+        store.setConfig(null, TestPackets.data(1, 8), VideoPacket.FLAG_CONFIG);
+        Assert.assertFalse(store.fits(200));
+        Assert.assertFalse(store.add(null, TestPackets.data(2, 200), 1000, 0));
+        Assert.assertEquals(0, store.getPacketCount());
+    }
+}
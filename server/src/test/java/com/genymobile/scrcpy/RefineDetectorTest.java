@@ -0,0 +1,93 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RefineDetectorTest {
+
+    private static final int FRAME_BUDGET = 16000;
+    private static final int MOTION_SIZE = 15000;
+    private static final int STATIC_SIZE = 40;
+    private static final long FRAME_INTERVAL_US = 1_000_000 / 60;
+    private static final long REPEAT_INTERVAL_US = 100_000;
+
+    private long pts;
+
+    private boolean motion(RefineDetector detector, int frames) {
+        boolean refine = false;
+        for (int i = 0; i < frames; ++i) {
+            refine |= detector.onFrame(pts, MOTION_SIZE, false, FRAME_BUDGET);
+            pts += FRAME_INTERVAL_US;
+        }
+        return refine;
+    }
+
+    private boolean still(RefineDetector detector, int frames) {
+        boolean refine = false;
+        for (int i = 0; i < frames; ++i) {
+            refine |= detector.onFrame(pts, STATIC_SIZE, false, FRAME_BUDGET);
+            pts += REPEAT_INTERVAL_US;
+        }
+        return refine;
+    }
+
+    @Test
+    public void testRefineAfterMotion() {
+        RefineDetector detector = new RefineDetector(RefineDetector.DEFAULT_SETTLE_DELAY_US, RefineDetector.DEFAULT_MIN_INTERVAL_US);
+
+        Assert.assertFalse(motion(detector, 30));
+        // the first static frames are within the settle delay
+        Assert.assertFalse(still(detector, 2));
+        Assert.assertTrue(still(detector, 1));
+        // only once
+        Assert.assertFalse(still(detector, 50));
+        Assert.assertEquals(1, detector.getRefineCount());
+    }
+
+    @Test
+    public void testNoRefineDuringSustainedMotion() {
+        RefineDetector detector = new RefineDetector(RefineDetector.DEFAULT_SETTLE_DELAY_US, RefineDetector.DEFAULT_MIN_INTERVAL_US);
+
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertFalse(motion(detector, 5));
+            // short pauses within the settle delay
+            Assert.assertFalse(detector.onFrame(pts, STATIC_SIZE, false, FRAME_BUDGET));
+            pts += FRAME_INTERVAL_US;
+        }
+        Assert.assertEquals(0, detector.getRefineCount());
+    }
+
+    @Test
+    public void testNoRefineAfterShortChange() {
+        RefineDetector detector = new RefineDetector(RefineDetector.DEFAULT_SETTLE_DELAY_US, RefineDetector.DEFAULT_MIN_INTERVAL_US);
+
+        Assert.assertFalse(motion(detector, 2));
+        Assert.assertFalse(still(detector, 20));
+    }
+
+    @Test
+    public void testNoRefineAfterKeyFrame() {
+        RefineDetector detector = new RefineDetector(RefineDetector.DEFAULT_SETTLE_DELAY_US, RefineDetector.DEFAULT_MIN_INTERVAL_US);
+
+        Assert.assertFalse(motion(detector, 30));
+        Assert.assertFalse(detector.onFrame(pts, MOTION_SIZE * 4, true, FRAME_BUDGET));
+        pts += FRAME_INTERVAL_US;
+        Assert.assertFalse(still(detector, 20));
+    }
+
+    @Test
+    public void testRateLimit() {
+        RefineDetector detector = new RefineDetector(RefineDetector.DEFAULT_SETTLE_DELAY_US, RefineDetector.DEFAULT_MIN_INTERVAL_US);
+
+        Assert.assertFalse(motion(detector, 30));
+        Assert.assertTrue(still(detector, 3));
+
+        // settled again 1 second later
+        Assert.assertFalse(motion(detector, 30));
+        Assert.assertFalse(still(detector, 10));
+
+        // refined once the min interval has elapsed
+        Assert.assertTrue(still(detector, 20));
+        Assert.assertEquals(2, detector.getRefineCount());
+    }
+}
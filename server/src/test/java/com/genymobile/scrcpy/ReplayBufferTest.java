@@ -0,0 +1,171 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReplayBufferTest {
+
+    @Test
+    public void testSeveralGops() {
+        ReplayBuffer replayBuffer = new ReplayBuffer(1024, 16, 64);
+        Assert.assertNull(replayBuffer.snapshot(0));
+
+        replayBuffer.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        // no key frame yet
+        replayBuffer.append(null, TestPackets.data(2, 100), 1000, 0);
+        Assert.assertEquals(0, replayBuffer.getPacketCount());
+
+        replayBuffer.append(null, TestPackets.data(3, 200), 2000, VideoPacket.FLAG_KEY_FRAME);
+        replayBuffer.append(null, TestPackets.data(4, 50), 3000, 0);
+        replayBuffer.append(null, TestPackets.data(5, 200), 4000, VideoPacket.FLAG_KEY_FRAME);
+        replayBuffer.append(null, TestPackets.data(6, 50), 5000, VideoPacket.FLAG_NON_REFERENCE);
+        Assert.assertEquals(4, replayBuffer.getPacketCount());
+        Assert.assertEquals(500, replayBuffer.getSize());
+        Assert.assertEquals(3000, replayBuffer.getDurationUs());
+
+        PacketSnapshot snapshot = replayBuffer.snapshot(0);
+        Assert.assertEquals(5, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 0, 1, 8, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        TestPackets.assertPacket(snapshot, 1, 3, 200, 2000, VideoPacket.FLAG_KEY_FRAME);
+        TestPackets.assertPacket(snapshot, 2, 4, 50, 3000, 0);
+        TestPackets.assertPacket(snapshot, 3, 5, 200, 4000, VideoPacket.FLAG_KEY_FRAME);
+        TestPackets.assertPacket(snapshot, 4, 6, 50, 5000, VideoPacket.FLAG_NON_REFERENCE);
+    }
+
+    @Test
+    public void testSnapshotDuration() {
+        ReplayBuffer replayBuffer = new ReplayBuffer(1024, 16, 64);
+        replayBuffer.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        replayBuffer.append(null, TestPackets.data(2, 10), 1000, VideoPacket.FLAG_KEY_FRAME);
+        replayBuffer.append(null, TestPackets.data(3, 10), 2000, 0);
+        replayBuffer.append(null, TestPackets.data(4, 10), 3000, VideoPacket.FLAG_KEY_FRAME);
+        replayBuffer.append(null, TestPackets.data(5, 10), 4000, 0);
+        replayBuffer.append(null, TestPackets.data(6, 10), 5000, VideoPacket.FLAG_KEY_FRAME);
+        replayBuffer.append(null, TestPackets.data(7, 10), 6000, 0);
+
+        // starts from the last key frame at least 2500 µs before the newest packet
+        PacketSnapshot snapshot = replayBuffer.snapshot(2500);
+        Assert.assertEquals(5, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 0, 1, 8, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        TestPackets.assertPacket(snapshot, 1, 4, 10, 3000, VideoPacket.FLAG_KEY_FRAME);
+
+        snapshot = replayBuffer.snapshot(1000);
+        Assert.assertEquals(3, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 1, 6, 10, 5000, VideoPacket.FLAG_KEY_FRAME);
+
+        // longer than the buffered duration
+        snapshot = replayBuffer.snapshot(60000);
+        Assert.assertEquals(7, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 1, 2, 10, 1000, VideoPacket.FLAG_KEY_FRAME);
+    }
+
+    @Test
+    public void testEvictOldestGop() {
+        ReplayBuffer replayBuffer = new ReplayBuffer(1000, 16, 64);
+        replayBuffer.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        replayBuffer.append(null, TestPackets.data(2, 300), 1000, VideoPacket.FLAG_KEY_FRAME);
+        replayBuffer.append(null, TestPackets.data(3, 100), 2000, 0);
+        replayBuffer.append(null, TestPackets.data(4, 300), 3000, VideoPacket.FLAG_KEY_FRAME);
+        replayBuffer.append(null, TestPackets.data(5, 100), 4000, 0);
+        Assert.assertEquals(800, replayBuffer.getSize());
+
+        // does not fit: the whole first GOP is evicted, the packet is written at the start of the buffer
+        replayBuffer.append(null, TestPackets.data(6, 250), 5000, 0);
+        Assert.assertEquals(3, replayBuffer.getPacketCount());
+        Assert.assertEquals(650, replayBuffer.getSize());
+
+        PacketSnapshot snapshot = replayBuffer.snapshot(0);
+        Assert.assertEquals(4, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 1, 4, 300, 3000, VideoPacket.FLAG_KEY_FRAME);
+        TestPackets.assertPacket(snapshot, 2, 5, 100, 4000, 0);
+        TestPackets.assertPacket(snapshot, 3, 6, 250, 5000, 0);
+
+        // the free space between the newest and the oldest packets is too small: the last GOP is evicted, the packet is dropped
+        replayBuffer.append(null, TestPackets.data(7, 200), 6000, 0);
+        Assert.assertEquals(0, replayBuffer.getPacketCount());
+        Assert.assertNull(replayBuffer.snapshot(0));
+
+        replayBuffer.append(null, TestPackets.data(8, 200), 7000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertEquals(1, replayBuffer.getPacketCount());
+        TestPackets.assertPacket(replayBuffer.snapshot(0), 1, 8, 200, 7000, VideoPacket.FLAG_KEY_FRAME);
+    }
+
+    @Test
+    public void testWrapAround() {
+        ReplayBuffer replayBuffer = new ReplayBuffer(100, 16, 64);
+        replayBuffer.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        for (int i = 0; i < 20; ++i) {
+            // a GOP of 2 packets
+            replayBuffer.append(null, TestPackets.data(2 * i, 30), 1000 * 2 * i, VideoPacket.FLAG_KEY_FRAME);
+            replayBuffer.append(null, TestPackets.data(2 * i + 1, 10), 1000 * (2 * i + 1), 0);
+        }
+
+        // at most 2 GOPs of 40 bytes fit in the buffer
+        PacketSnapshot snapshot = replayBuffer.snapshot(0);
+        Assert.assertEquals(5, snapshot.getPacketCount());
+        TestPackets.assertPacket(snapshot, 1, 36, 30, 36000, VideoPacket.FLAG_KEY_FRAME);
+        TestPackets.assertPacket(snapshot, 2, 37, 10, 37000, 0);
+        TestPackets.assertPacket(snapshot, 3, 38, 30, 38000, VideoPacket.FLAG_KEY_FRAME);
+        TestPackets.assertPacket(snapshot, 4, 39, 10, 39000, 0);
+    }
+
+    @Test
+    public void testMaxPackets() {
+        ReplayBuffer replayBuffer = new ReplayBuffer(1000, 3, 64);
+        replayBuffer.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        replayBuffer.append(null, TestPackets.data(2, 10), 1000, VideoPacket.FLAG_KEY_FRAME);
+        replayBuffer.append(null, TestPackets.data(3, 10), 2000, VideoPacket.FLAG_KEY_FRAME);
+        replayBuffer.append(null, TestPackets.data(4, 10), 3000, 0);
+        Assert.assertEquals(3, replayBuffer.getPacketCount());
+
+        // the first GOP is evicted
+        replayBuffer.append(null, TestPackets.data(5, 10), 4000, 0);
+        Assert.assertEquals(3, replayBuffer.getPacketCount());
+        TestPackets.assertPacket(replayBuffer.snapshot(0), 1, 3, 10, 2000, VideoPacket.FLAG_KEY_FRAME);
+    }
+
+    @Test
+    public void testNewConfig() {
+        ReplayBuffer replayBuffer = new ReplayBuffer(1000, 16, 64);
+        replayBuffer.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        replayBuffer.append(null, TestPackets.data(2, 10), 1000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertEquals(1, replayBuffer.getPacketCount());
+
+        // the codec is restarted: the previous packets could not be decoded with the new config
+        replayBuffer.append(null, TestPackets.data(3, 12), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        Assert.assertEquals(0, replayBuffer.getPacketCount());
+
+        replayBuffer.append(null, TestPackets.data(4, 10), 2000, VideoPacket.FLAG_KEY_FRAME);
+        PacketSnapshot snapshot = replayBuffer.snapshot(0);
+        TestPackets.assertPacket(snapshot, 0, 3, 12, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        TestPackets.assertPacket(snapshot, 1, 4, 10, 2000, VideoPacket.FLAG_KEY_FRAME);
+
+        // a packet larger than the buffer
+        replayBuffer.append(null, TestPackets.data(5, 2000), 3000, 0);
+        Assert.assertEquals(0, replayBuffer.getPacketCount());
+
+        // a config too large to be buffered
+        replayBuffer.append(null, TestPackets.data(6, 100), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        replayBuffer.append(null, TestPackets.data(7, 10), 4000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertEquals(0, replayBuffer.getPacketCount());
+    }
+
+    @Test
+    public void testConfigVideoSize() {
+        ReplayBuffer replayBuffer = new ReplayBuffer(1000, 16, 64);
+        Assert.assertNull(replayBuffer.getConfigVideoSize());
+
+        replayBuffer.append(null, TestPackets.data(1, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG, new Size(1080, 2400));
+        replayBuffer.append(null, TestPackets.data(2, 10), 1000, VideoPacket.FLAG_KEY_FRAME, new Size(2400, 1080));
+        // the size is only stored with the config
+        Assert.assertEquals(new Size(1080, 2400), replayBuffer.getConfigVideoSize());
+
+        // the device is rotated, the codec is restarted
+        replayBuffer.append(null, TestPackets.data(3, 8), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG, new Size(2400, 1080));
+        Assert.assertEquals(new Size(2400, 1080), replayBuffer.getConfigVideoSize());
+
+        // a config too large to be buffered
+        replayBuffer.append(null, TestPackets.data(4, 100), VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG, new Size(1080, 2400));
+        Assert.assertNull(replayBuffer.getConfigVideoSize());
+    }
+}
@@ -0,0 +1,36 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ScreenEncoderTest {
+
+    @Test
+    public void testEventLoopListenerRestartRequest() {
+        ScreenEncoder screenEncoder = new ScreenEncoder(8000000, 0, Collections.<CodecOption>emptyList(), VideoCodec.H264, null, null, false);
+        CodecEventLoop.Listener listener = screenEncoder.createEventLoopListener(null, null);
+
+        Assert.assertFalse(listener.consumeRestartRequest());
+
+        screenEncoder.setMaxSize(800);
+        Assert.assertTrue(listener.consumeRestartRequest());
+        // consumed
+        Assert.assertFalse(listener.consumeRestartRequest());
+    }
+
+    @Test
+    public void testEventLoopListenerPaused() {
+        ScreenEncoder screenEncoder = new ScreenEncoder(8000000, 0, Collections.<CodecOption>emptyList(), VideoCodec.H264, null, null, false);
+        CodecEventLoop.Listener listener = screenEncoder.createEventLoopListener(null, null);
+
+        screenEncoder.setPaused(true);
+        // the session must be stopped as long as the stream is paused
+        Assert.assertTrue(listener.consumeRestartRequest());
+        Assert.assertTrue(listener.consumeRestartRequest());
+
+        screenEncoder.setPaused(false);
+        Assert.assertFalse(listener.consumeRestartRequest());
+    }
+}
@@ -0,0 +1,115 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+public class SpsRewriterTest {
+
+    // Baseline 3.1, 1080x2340 (cropped), no VUI
+    private static final byte[] SPS_BASELINE_NO_VUI = bytes(0x67, 0x42, 0xc0, 0x1f, 0x99, 0xa0, 0x11, 0x00, 0x49, 0xf9, 0x67, 0x40);
+    private static final byte[] SPS_BASELINE_NO_VUI_REWRITTEN = bytes(0x67, 0x42, 0xc0, 0x1f, 0x99, 0xa0, 0x11, 0x00, 0x49, 0xf9, 0x67,
+            0x80, 0x6d, 0x04, 0x42, 0x35);
+
+    // High 4.0, 1920x1080 (cropped), VUI with video signal type and timing info (containing emulation prevention bytes), without
+    // bitstream restriction
+    private static final byte[] SPS_HIGH_TIMING = bytes(0x67, 0x64, 0x00, 0x28, 0xac, 0xda, 0x01, 0xe0, 0x08, 0x9f, 0x96, 0x6a, 0x02, 0x02,
+            0x02, 0x80, 0x00, 0x00, 0x03, 0x00, 0x80, 0x00, 0x00, 0x3c, 0x02);
+    private static final byte[] SPS_HIGH_TIMING_REWRITTEN = bytes(0x67, 0x64, 0x00, 0x28, 0xac, 0xda, 0x01, 0xe0, 0x08, 0x9f, 0x96, 0x6a,
+            0x02, 0x02, 0x02, 0x80, 0x00, 0x00, 0x03, 0x00, 0x80, 0x00, 0x00, 0x3c, 0x06, 0xd0, 0x44, 0x23, 0x50);
+
+    // Main 4.1, 1280x720, 2 reference frames, bitstream restriction with max_num_reorder_frames = 2 and max_dec_frame_buffering = 4
+    private static final byte[] SPS_MAIN_REORDER = bytes(0x67, 0x4d, 0x40, 0x29, 0x96, 0x56, 0x02, 0x80, 0x2d, 0xd0, 0x0d, 0xa0, 0x88, 0x45,
+            0x96);
+    // max_num_reorder_frames = 0 and max_dec_frame_buffering = 2 (the number of reference frames)
+    private static final byte[] SPS_MAIN_REORDER_REWRITTEN = bytes(0x67, 0x4d, 0x40, 0x29, 0x96, 0x56, 0x02, 0x80, 0x2d, 0xd0, 0x0d, 0xa0,
+            0x88, 0x46, 0xe0);
+
+    private static final byte[] PPS = bytes(0x68, 0xce, 0x38, 0x80);
+
+    private static byte[] bytes(int... values) {
+        byte[] array = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            array[i] = (byte) values[i];
+        }
+        return array;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+
+    @Test
+    public void testRewriteSpsWithoutVui() {
+        byte[] sps = SpsRewriter.rewriteSps(SPS_BASELINE_NO_VUI);
+        Assert.assertArrayEquals(SPS_BASELINE_NO_VUI_REWRITTEN, sps);
+    }
+
+    @Test
+    public void testRewriteSpsWithEmulationPrevention() {
+        byte[] sps = SpsRewriter.rewriteSps(SPS_HIGH_TIMING);
+        Assert.assertArrayEquals(SPS_HIGH_TIMING_REWRITTEN, sps);
+    }
+
+    @Test
+    public void testRewriteSpsWithBitstreamRestriction() {
+        byte[] sps = SpsRewriter.rewriteSps(SPS_MAIN_REORDER);
+        Assert.assertArrayEquals(SPS_MAIN_REORDER_REWRITTEN, sps);
+    }
+
+    @Test
+    public void testRewriteSpsAlreadyMinimal() {
+        Assert.assertNull(SpsRewriter.rewriteSps(SPS_BASELINE_NO_VUI_REWRITTEN));
+        Assert.assertNull(SpsRewriter.rewriteSps(SPS_HIGH_TIMING_REWRITTEN));
+        Assert.assertNull(SpsRewriter.rewriteSps(SPS_MAIN_REORDER_REWRITTEN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRewriteTruncatedSps() {
+        SpsRewriter.rewriteSps(bytes(0x67, 0x42, 0xc0, 0x1f, 0x99));
+    }
+
+    @Test
+    public void testRewriteConfig() {
+        byte[] startCode = bytes(0, 0, 0, 1);
+        byte[] config = concat(startCode, SPS_HIGH_TIMING, startCode, PPS);
+        ByteBuffer buffer = ByteBuffer.allocate(config.length + 2);
+        buffer.put((byte) 0xff).put(config).put((byte) 0xff);
+        buffer.position(1).limit(1 + config.length);
+
+        ByteBuffer rewritten = SpsRewriter.rewriteConfig(buffer);
+        Assert.assertNotNull(rewritten);
+        Assert.assertArrayEquals(concat(startCode, SPS_HIGH_TIMING_REWRITTEN, startCode, PPS), toArray(rewritten));
+
+        // the source buffer is not consumed
+        Assert.assertEquals(1, buffer.position());
+    }
+
+    @Test
+    public void testRewriteConfigWithoutSps() {
+        Assert.assertNull(SpsRewriter.rewriteConfig(ByteBuffer.wrap(concat(bytes(0, 0, 0, 1), PPS))));
+    }
+
+    @Test
+    public void testEscape() {
+        byte[] rbsp = bytes(0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x04);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SpsRewriter.escape(rbsp, out);
+        byte[] escaped = out.toByteArray();
+        Assert.assertArrayEquals(bytes(0x00, 0x00, 0x03, 0x00, 0x00, 0x03, 0x00, 0x01, 0x00, 0x00, 0x04), escaped);
+
+        Assert.assertArrayEquals(rbsp, SpsRewriter.unescape(escaped, 0, escaped.length));
+    }
+}
@@ -0,0 +1,181 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class SubscriberQueueTest {
+
+    private final SharedPacket.Pool pool = new SharedPacket.Pool(16);
+
+    private SharedPacket packet(int value, long pts, int flags) {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(value);
+        buffer.flip();
+        SharedPacket packet = pool.obtain();
+        packet.set(null, buffer, pts, flags);
+        return packet;
+    }
+
+    private static int takeValue(SubscriberQueue queue) throws InterruptedException {
+        SharedPacket packet = queue.take();
+        Assert.assertNotNull(packet);
+        int value = packet.duplicateData().getInt(0);
+        packet.release();
+        return value;
+    }
+
+    @Test
+    public void testSharedPacket() {
+        ByteBuffer prefix = ByteBuffer.wrap(new byte[] {1, 2});
+        ByteBuffer data = ByteBuffer.wrap(new byte[] {3, 4, 5});
+        SharedPacket packet = pool.obtain();
+        packet.set(prefix, data, 1000, VideoPacket.FLAG_KEY_FRAME);
+
+        // the sources are not consumed
+        Assert.assertEquals(0, prefix.position());
+        Assert.assertEquals(0, data.position());
+
+        Assert.assertEquals(5, packet.getPacket().getSize());
+        ByteBuffer d1 = packet.duplicateData();
+        ByteBuffer d2 = packet.duplicateData();
+        Assert.assertEquals(1, d1.get());
+        // the readers are independent
+        Assert.assertEquals(0, d2.position());
+        Assert.assertEquals(5, d2.remaining());
+
+        packet.retain();
+        Assert.assertEquals(2, packet.getRefCount());
+        packet.release();
+        Assert.assertEquals(0, pool.getFreeCount());
+        packet.release();
+        Assert.assertEquals(1, pool.getFreeCount());
+
+        // reused
+        Assert.assertSame(packet, pool.obtain());
+        Assert.assertEquals(1, packet.getRefCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseTooManyTimes() {
+        SharedPacket packet = pool.obtain();
+        packet.release();
+        packet.release();
+    }
+
+    @Test
+    public void testStartFromKeyFrame() throws InterruptedException {
+        SubscriberQueue queue = new SubscriberQueue(4);
+        SharedPacket config = packet(1, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+
+        // joined in the middle of the stream: the frames before the next key frame could not be decoded
+        Assert.assertTrue(queue.isKeyFrameNeeded());
+        Assert.assertFalse(queue.offer(packet(2, 1000, 0), config));
+        Assert.assertTrue(queue.isKeyFrameNeeded());
+        Assert.assertEquals(1, queue.getDroppedCount());
+
+        // the last config is sent before the key frame
+        Assert.assertTrue(queue.offer(packet(3, 2000, VideoPacket.FLAG_KEY_FRAME), config));
+        Assert.assertFalse(queue.isKeyFrameNeeded());
+        Assert.assertTrue(queue.offer(packet(4, 3000, 0), config));
+        Assert.assertEquals(3, queue.getSize());
+
+        // referenced by the queue
+        Assert.assertEquals(2, config.getRefCount());
+
+        Assert.assertEquals(1, takeValue(queue));
+        Assert.assertEquals(3, takeValue(queue));
+        Assert.assertEquals(4, takeValue(queue));
+        Assert.assertEquals(1, config.getRefCount());
+    }
+
+    @Test
+    public void testStartFromBacklog() throws InterruptedException {
+        SubscriberQueue queue = new SubscriberQueue(4);
+        SharedPacket config = packet(1, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+
+        // the config and the packets since the last key frame are sent separately
+        queue.startFromBacklog();
+        Assert.assertFalse(queue.isKeyFrameNeeded());
+        Assert.assertTrue(queue.offer(packet(2, 1000, 0), config));
+        Assert.assertEquals(2, takeValue(queue));
+        Assert.assertEquals(1, config.getRefCount());
+    }
+
+    @Test
+    public void testNoConfigYet() {
+        SubscriberQueue queue = new SubscriberQueue(4);
+        Assert.assertFalse(queue.offer(packet(1, 1000, VideoPacket.FLAG_KEY_FRAME), null));
+        Assert.assertTrue(queue.isKeyFrameNeeded());
+    }
+
+    @Test
+    public void testOverflow() throws InterruptedException {
+        SubscriberQueue queue = new SubscriberQueue(4);
+        SharedPacket config = packet(1, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+
+        Assert.assertTrue(queue.offer(packet(2, 1000, VideoPacket.FLAG_KEY_FRAME), config));
+        Assert.assertTrue(queue.offer(packet(3, 2000, 0), config));
+        Assert.assertTrue(queue.offer(packet(4, 3000, 0), config));
+
+        // full
+        SharedPacket dropped = packet(5, 4000, 0);
+        Assert.assertFalse(queue.offer(dropped, config));
+        Assert.assertEquals(1, dropped.getRefCount()); // not retained
+        // a stalled subscriber does not request key frames
+        Assert.assertFalse(queue.isKeyFrameNeeded());
+
+        Assert.assertEquals(1, takeValue(queue));
+        Assert.assertEquals(2, takeValue(queue));
+        Assert.assertTrue(queue.isKeyFrameNeeded());
+
+        // the stream only resumes from a key frame, without the config (already received)
+        Assert.assertFalse(queue.offer(packet(6, 5000, 0), config));
+        Assert.assertTrue(queue.offer(packet(7, 6000, VideoPacket.FLAG_KEY_FRAME), config));
+        Assert.assertEquals(3, takeValue(queue));
+        Assert.assertEquals(4, takeValue(queue));
+        Assert.assertEquals(7, takeValue(queue));
+        Assert.assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testNewConfigWhileWaitingKeyFrame() throws InterruptedException {
+        SubscriberQueue queue = new SubscriberQueue(2);
+        SharedPacket config = packet(1, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+
+        Assert.assertTrue(queue.offer(packet(2, 1000, VideoPacket.FLAG_KEY_FRAME), config));
+        Assert.assertEquals(1, takeValue(queue));
+        Assert.assertEquals(2, takeValue(queue));
+
+        // the codec is restarted while the subscriber is waiting for a key frame
+        Assert.assertTrue(queue.offer(packet(3, 2000, 0), config));
+        Assert.assertTrue(queue.offer(packet(4, 3000, 0), config));
+        Assert.assertFalse(queue.offer(packet(5, 4000, 0), config));
+        SharedPacket newConfig = packet(6, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        Assert.assertFalse(queue.offer(newConfig, config));
+        Assert.assertEquals(3, takeValue(queue));
+        Assert.assertEquals(4, takeValue(queue));
+
+        // the new config is sent before the key frame
+        Assert.assertTrue(queue.offer(packet(7, 5000, VideoPacket.FLAG_KEY_FRAME), newConfig));
+        Assert.assertEquals(6, takeValue(queue));
+        Assert.assertEquals(7, takeValue(queue));
+    }
+
+    @Test
+    public void testClose() throws InterruptedException {
+        SubscriberQueue queue = new SubscriberQueue(4);
+        SharedPacket config = packet(1, VideoPacket.NO_PTS, VideoPacket.FLAG_CONFIG);
+        SharedPacket keyFrame = packet(2, 1000, VideoPacket.FLAG_KEY_FRAME);
+        Assert.assertTrue(queue.offer(keyFrame, config));
+
+        queue.close();
+        // the queued references are released
+        Assert.assertEquals(1, config.getRefCount());
+        Assert.assertEquals(1, keyFrame.getRefCount());
+        Assert.assertNull(queue.take());
+        Assert.assertFalse(queue.offer(packet(3, 2000, 0), config));
+        Assert.assertFalse(queue.isKeyFrameNeeded());
+    }
+}
@@ -0,0 +1,29 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Test packets for the packet caches: each packet starts with a value identifying it.
+ */
+final class TestPackets {
+
+    private TestPackets() {
+        // not instantiable
+    }
+
+    static ByteBuffer data(int value, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(0, value);
+        return buffer;
+    }
+
+    static void assertPacket(PacketSnapshot snapshot, int index, int value, int size, long pts, int flags) {
+        ByteBuffer data = snapshot.getData(index);
+        Assert.assertEquals(size, data.remaining());
+        Assert.assertEquals(value, data.getInt(data.position()));
+        Assert.assertEquals(pts, snapshot.getPts(index));
+        Assert.assertEquals(flags, snapshot.getFlags(index));
+    }
+}
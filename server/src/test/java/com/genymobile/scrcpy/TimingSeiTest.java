@@ -0,0 +1,101 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class TimingSeiTest {
+
+    private static final byte[] SLICE = {0, 0, 0, 1, 0x65, (byte) 0x88, (byte) 0x84, 0x00, 0x21};
+    private static final byte[] HEVC_SLICE = {0, 0, 0, 1, 0x26, 0x01, (byte) 0xaf, 0x00, 0x12};
+
+    private static ByteBuffer createSei(boolean hevc, long captureTimeUs, long dequeueTimeUs, long writeTimeUs) {
+        ByteBuffer buffer = ByteBuffer.allocate(TimingSei.getSize(hevc));
+        TimingSei.write(buffer, hevc, captureTimeUs, dequeueTimeUs, writeTimeUs);
+        Assert.assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void assertTiming(TimingSei.Timing timing, long captureTimeUs, long dequeueTimeUs, long writeTimeUs) {
+        Assert.assertNotNull(timing);
+        Assert.assertEquals(captureTimeUs, timing.getCaptureTimeUs());
+        Assert.assertEquals(dequeueTimeUs, timing.getDequeueTimeUs());
+        Assert.assertEquals(writeTimeUs, timing.getWriteTimeUs());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ByteBuffer sei = createSei(false, 123_456_789L, 123_460_000L, 123_461_234L);
+        Assert.assertEquals(0, sei.get(0));
+        Assert.assertEquals(1, sei.get(3));
+        Assert.assertEquals(6, sei.get(4)); // SEI NAL unit
+        assertTiming(TimingSei.parse(sei), 123_456_789L, 123_460_000L, 123_461_234L);
+    }
+
+    @Test
+    public void testRoundTripHevc() {
+        ByteBuffer sei = createSei(true, 1L, Long.MAX_VALUE, 0);
+        Assert.assertEquals(39, AnnexB.getHevcNalType(sei.get(4))); // prefix SEI NAL unit
+        assertTiming(TimingSei.parse(sei), 1L, Long.MAX_VALUE, 0);
+    }
+
+    @Test
+    public void testNoEmulationPrevention() {
+        for (boolean hevc : new boolean[] {false, true}) {
+            ByteBuffer sei = createSei(hevc, 0, 0, 0);
+            // no zero byte after the start code, so no 0x000000, 0x000001, 0x000002 or 0x000003 sequence
+            for (int i = 4; i < sei.limit(); ++i) {
+                Assert.assertNotEquals(0, sei.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSetWriteTime() {
+        for (boolean hevc : new boolean[] {false, true}) {
+            byte[] slice = hevc ? HEVC_SLICE : SLICE;
+            ByteBuffer buffer = ByteBuffer.allocate(2 + TimingSei.getSize(hevc) + slice.length);
+            buffer.position(2);
+            TimingSei.write(buffer, hevc, 1000, 2000, 0);
+            buffer.put(slice);
+            buffer.flip();
+
+            TimingSei.setWriteTime(buffer, 2, 3000);
+            buffer.position(2);
+            assertTiming(TimingSei.parse(buffer), 1000, 2000, 3000);
+
+            // the slice is not modified
+            buffer.position(2 + TimingSei.getSize(hevc));
+            byte[] data = new byte[slice.length];
+            buffer.get(data);
+            Assert.assertArrayEquals(slice, data);
+        }
+    }
+
+    @Test
+    public void testParseAfterOtherNalUnits() {
+        ByteBuffer sei = createSei(false, 10, 20, 30);
+        ByteBuffer buffer = ByteBuffer.allocate(SLICE.length + sei.remaining());
+        buffer.put(SLICE).put(sei);
+        buffer.flip();
+        assertTiming(TimingSei.parse(buffer), 10, 20, 30);
+    }
+
+    @Test
+    public void testParseWithoutTimingSei() {
+        Assert.assertNull(TimingSei.parse(ByteBuffer.wrap(SLICE)));
+        Assert.assertNull(TimingSei.parse(ByteBuffer.wrap(HEVC_SLICE)));
+
+        // another user data unregistered SEI
+        ByteBuffer sei = createSei(false, 10, 20, 30);
+        sei.put(8, (byte) ~sei.get(8)); // alter the UUID
+        Assert.assertNull(TimingSei.parse(sei));
+
+        // truncated
+        sei = createSei(false, 10, 20, 30);
+        sei.limit(sei.limit() - 10);
+        Assert.assertNull(TimingSei.parse(sei));
+    }
+}
@@ -0,0 +1,116 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VideoGeometryTest {
+
+    /**
+     * Stubbed capabilities of an encoder.
+     */
+    private static final class StubConstraints implements VideoGeometry.Constraints {
+        private final int widthAlignment;
+        private final int heightAlignment;
+        private final int maxWidth;
+        private final int maxHeight;
+        // max number of pixels per second (0 if not limited)
+        private final long maxPixelRate;
+
+        StubConstraints(int widthAlignment, int heightAlignment, int maxWidth, int maxHeight, long maxPixelRate) {
+            this.widthAlignment = widthAlignment;
+            this.heightAlignment = heightAlignment;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.maxPixelRate = maxPixelRate;
+        }
+
+        @Override
+        public int getWidthAlignment() {
+            return widthAlignment;
+        }
+
+        @Override
+        public int getHeightAlignment() {
+            return heightAlignment;
+        }
+
+        @Override
+        public boolean isSupported(int width, int height, int maxFps) {
+            if (width % widthAlignment != 0 || height % heightAlignment != 0) {
+                return false;
+            }
+            if (width > maxWidth || height > maxHeight) {
+                return false;
+            }
+            return maxPixelRate == 0 || maxFps == 0 || (long) width * height * maxFps <= maxPixelRate;
+        }
+    }
+
+    private static Size compute(int w, int h, int maxSize, int maxFps, VideoGeometry.Constraints constraints) {
+        return VideoGeometry.computeVideoSize(w, h, maxSize, maxFps, constraints);
+    }
+
+    @Test
+    public void testDefaultConstraints() {
+        VideoGeometry.Constraints constraints = VideoGeometry.DEFAULT_CONSTRAINTS;
+        Assert.assertEquals(new Size(1920, 1080), compute(1920, 1080, 0, 0, constraints));
+        Assert.assertEquals(new Size(1024, 576), compute(1920, 1080, 1024, 0, constraints));
+        Assert.assertEquals(new Size(576, 1024), compute(1080, 1920, 1024, 0, constraints));
+        // not multiples of 8
+        Assert.assertEquals(new Size(1080, 2336), compute(1083, 2340, 0, 0, constraints));
+        Assert.assertEquals(new Size(368, 800), compute(1080, 2340, 800, 0, constraints));
+        // max size greater than the content
+        Assert.assertEquals(new Size(720, 1280), compute(720, 1280, 1920, 0, constraints));
+    }
+
+    @Test
+    public void testEmptyContent() {
+        Assert.assertEquals(new Size(0, 0), compute(0, 0, 1024, 0, VideoGeometry.DEFAULT_CONSTRAINTS));
+    }
+
+    @Test
+    public void testMacroblockAlignment() {
+        StubConstraints constraints = new StubConstraints(16, 16, 4096, 4096, 0);
+        Assert.assertEquals(new Size(1072, 2400), compute(1080, 2400, 0, 0, constraints));
+        // 1072 * 1024 / 2400 = 457.4, rounded to 464
+        Assert.assertEquals(new Size(464, 1024), compute(1080, 2400, 1024, 0, constraints));
+    }
+
+    @Test
+    public void testSmallEncoderAlignment() {
+        // an alignment lower than 8 does not break the multiple of 8
+        StubConstraints constraints = new StubConstraints(2, 2, 4096, 4096, 0);
+        Assert.assertEquals(new Size(1024, 576), compute(1920, 1080, 1024, 0, constraints));
+    }
+
+    @Test
+    public void testUnsupportedSize() {
+        // typical AVC encoder limits, not symmetric
+        StubConstraints constraints = new StubConstraints(16, 16, 1920, 1088, 0);
+        // 1072 * 1920 / 2400 = 857.6, rounded to 864
+        Assert.assertEquals(new Size(1920, 864), compute(2400, 1080, 0, 0, constraints));
+        // in portrait, the height is limited to 1088: 1072 * 1088 / 2400 = 485.9, rounded to 480
+        Assert.assertEquals(new Size(480, 1088), compute(1080, 2400, 0, 0, constraints));
+    }
+
+    @Test
+    public void testUnsupportedFrameRate() {
+        // 1920x1088 at 30 fps
+        StubConstraints constraints = new StubConstraints(16, 16, 4096, 4096, 1920 * 1088 * 30);
+        Assert.assertEquals(new Size(1920, 1072), compute(1920, 1080, 0, 30, constraints));
+        Size size = compute(1920, 1080, 0, 60, constraints);
+        Assert.assertTrue((long) size.getWidth() * size.getHeight() * 60 <= 1920 * 1088 * 30);
+        Assert.assertEquals(0, size.getWidth() % 16);
+        Assert.assertEquals(0, size.getHeight() % 16);
+        // the aspect ratio is preserved
+        Assert.assertEquals(16f / 9, (float) size.getWidth() / size.getHeight(), 0.05f);
+    }
+
+    @Test
+    public void testLcm() {
+        Assert.assertEquals(8, VideoGeometry.lcm(8, 2));
+        Assert.assertEquals(16, VideoGeometry.lcm(8, 16));
+        Assert.assertEquals(24, VideoGeometry.lcm(8, 3));
+        Assert.assertEquals(8, VideoGeometry.lcm(8, 0));
+    }
+}